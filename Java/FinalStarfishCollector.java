@@ -1,6 +1,8 @@
 import bagel.FinalGame;
 import bagel.Texture;
 import bagel.FinalSprite;
+import bagel.GroupHandle;
+import bagel.Prefab;
 
 public class FinalStarfishCollector extends FinalGame
 {
@@ -15,12 +17,13 @@ public class FinalStarfishCollector extends FinalGame
     // variables referenced in both methods
     FinalSprite turtle;
     FinalSprite winMessage;
+    GroupHandle starfishGroup;
 
     public void initialize() 
     {
         // create groups to organize sprites
         createGroup("main");
-        createGroup("starfish");
+        starfishGroup = createGroup("starfish").getHandle();
 
         // water background (must be added first)
         Texture waterTex = new Texture("./assets/starfish-collector/water.png");
@@ -38,16 +41,14 @@ public class FinalStarfishCollector extends FinalGame
         
         // starfish (collectible objects)
         int starfishCount = 20;
-        // only need to load texture once; all sprites share it
-        Texture starfishTex = new Texture("./assets/starfish-collector/starfish.png");
+        // only need to load texture once; all sprites created by the prefab share it
+        Prefab starfishPrefab = new Prefab("starfish")
+            .setTexture( new Texture("./assets/starfish-collector/starfish.png") );
         for (int i = 0; i < starfishCount; i++)
         {
-            FinalSprite starfish = new FinalSprite();
             double x = 700 * Math.random() + 50;
             double y = 500 * Math.random() + 50;
-            starfish.setPosition(x, y);
-            starfish.setTexture(starfishTex);
-            addFinalSpriteToGroup(starfish, "starfish");
+            starfishPrefab.spawn( getGroup(starfishGroup), x, y );
         }
 
         // win message to display when game is over (all starfish collected)
@@ -78,17 +79,17 @@ public class FinalStarfishCollector extends FinalGame
         if ( input.isKeyPressing("Space") )
             turtle.rotateBy(1);
 
-        // remove starfish when turtle overlaps (collects) them
-        for (FinalSprite starfish : getGroupFinalSpriteList("starfish"))
-        {
+        // remove starfish when turtle overlaps (collects) them;
+        //   removals are applied once every starfish has been checked
+        getGroup(starfishGroup).forEachFinalSprite( starfish -> {
             if ( turtle.isOverlapping(starfish) )
             {
-                removeSpriteFromGroup(starfish, "starfish");
+                removeSpriteFromGroup(starfish, starfishGroup);
             }
-        }
+        });
 
         // check for win condition (all starfish collected)
-        if ( !winMessage.visible && getGroupSpriteCount("starfish") == 0 )
+        if ( !winMessage.visible && getGroupSpriteCount(starfishGroup) == 0 )
             winMessage.visible = true;
     }
 }
@@ -1,6 +1,7 @@
 import bagel.Game;
 import bagel.Texture;
 import bagel.Sprite;
+import bagel.GroupHandle;
 
 public class StarfishCollector extends Game
 {
@@ -15,12 +16,13 @@ public class StarfishCollector extends Game
     // variables referenced in both methods
     Sprite turtle;
     Sprite winMessage;
+    GroupHandle starfishGroup;
 
     public void initialize() 
     {
         // create groups to organize sprites
         createGroup("main");
-        createGroup("starfish");
+        starfishGroup = createGroup("starfish").getHandle();
 
         // water background (must be added first)
         Texture waterTex = new Texture("./assets/starfish-collector/water.png");
@@ -78,17 +80,17 @@ public class StarfishCollector extends Game
         if ( input.isKeyPressing("Space") )
             turtle.rotateBy(1);
 
-        // remove starfish when turtle overlaps (collects) them
-        for (Sprite starfish : getGroupSpriteList("starfish"))
-        {
+        // remove starfish when turtle overlaps (collects) them;
+        //   removals are applied once every starfish has been checked
+        getGroup(starfishGroup).forEach( starfish -> {
             if ( turtle.isOverlapping(starfish) )
             {
-                removeSpriteFromGroup(starfish, "starfish");
+                removeSpriteFromGroup(starfish, starfishGroup);
             }
-        }
+        });
 
         // check for win condition (all starfish collected)
-        if ( !winMessage.visible && getGroupSpriteCount("starfish") == 0 )
+        if ( !winMessage.visible && getGroupSpriteCount(starfishGroup) == 0 )
             winMessage.visible = true;
     }
 }
@@ -0,0 +1,82 @@
+package bagel;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Runs {@link FinalSprite#act(double)} for a range of sprites in a {@link Group}
+ *  on a ForkJoinPool; ranges larger than a threshold are split in half
+ *  and run in parallel. Used by {@link Game#actGroups(double)}.
+ */
+class ActTask extends RecursiveAction
+{
+    private static final long serialVersionUID = 1L;
+
+    // numbers each call to Game.actGroups, so that sprites can record the last call that updated them
+    private static final AtomicLong phaseCounter = new AtomicLong();
+
+    Group group;
+    int start;
+    int end;
+    int threshold;
+    double deltaTime;
+    long phase;
+
+    // overlap checks made by this task (see Rectangle.overlapChecks), once it is complete
+    long overlapChecks;
+
+    /**
+     * @param group group containing the sprites
+     * @param start index of first sprite (inclusive)
+     * @param end index of last sprite (exclusive)
+     * @param threshold largest number of sprites to act on without splitting
+     * @param deltaTime amount of time that has passed since the last iteration of the game loop
+     * @param phase number of the current update (see {@link #nextPhase()});
+     *   sprites already updated in this phase (from another group) are skipped
+     */
+    ActTask(Group group, int start, int end, int threshold, double deltaTime, long phase)
+    {
+        this.group = group;
+        this.start = start;
+        this.end = end;
+        this.threshold = threshold;
+        this.deltaTime = deltaTime;
+        this.phase = phase;
+    }
+
+    /**
+     * @return a new phase number, for one call to {@link Game#actGroups(double)}
+     */
+    static long nextPhase()
+    {
+        return phaseCounter.incrementAndGet();
+    }
+
+    @Override
+    protected void compute()
+    {
+        if (end - start <= threshold)
+        {
+            long[] threadChecks = Rectangle.overlapChecks.get();
+            long startChecks = threadChecks[0];
+            for (int i = start; i < end; i++)
+            {
+                Sprite sprite = group.getSprite(i);
+                if (sprite instanceof FinalSprite && sprite.claimAct(phase))
+                    ((FinalSprite)sprite).act(deltaTime, group);
+            }
+            // move the checks from the thread's count to this task, so that they are counted
+            //   for this game (the thread may be a worker shared by several games)
+            overlapChecks = threadChecks[0] - startChecks;
+            threadChecks[0] = startChecks;
+        }
+        else
+        {
+            int middle = (start + end) / 2;
+            ActTask first = new ActTask(group, start, middle, threshold, deltaTime, phase);
+            ActTask second = new ActTask(group, middle, end, threshold, deltaTime, phase);
+            invokeAll(first, second);
+            overlapChecks = first.overlapChecks + second.overlapChecks;
+        }
+    }
+}
@@ -43,6 +43,17 @@ public class Action
      * Encapsulates the method that will be applied to the Sprite this Action is attached to.
      */
     Function function;
+
+    /**
+     * Kind of action, reported by {@link Profiler}: the name of the {@link ActionFactory} method
+     * that created this Action, or "custom". Actions that perform other actions
+     * (sequence, repeat, forever) are reported with the kinds of those actions, such as "forever(rotateBy)".
+     */
+    public String name;
+
+    // name reported by Profiler, including the kinds of the actions this action performs;
+    //   built when first needed, so that actions created while not profiling do not build it
+    private String label;
     
     /**
      * 
@@ -51,6 +62,7 @@ public class Action
     Action()
     {
         this.totalTime = 0;
+        this.name      = "custom";
     }
     
     /**
@@ -62,6 +74,49 @@ public class Action
     {
         this.totalTime = 0;
         this.function  = f;
+        this.name      = "custom";
+    }
+
+    /**
+     * Set the kind of this action, reported by {@link Profiler}.
+     * @param name kind of action
+     * @return this Action, so that the call can be chained after the constructor
+     */
+    public Action setName(String name)
+    {
+        this.name = name;
+        this.label = null;
+        return this;
+    }
+
+    // actions performed by this action, or null for none;
+    //   overridden by ActionFactory.sequence, repeat and forever
+    Action[] getChildren()
+    {
+        return null;
+    }
+
+    // name of this action followed by the labels of its children, such as "sequence(moveBy,fadeOut)"
+    String getLabel()
+    {
+        if (label == null)
+        {
+            Action[] children = getChildren();
+            if (children == null)
+                label = name;
+            else
+            {
+                StringBuilder text = new StringBuilder(name).append("(");
+                for (int i = 0; i < children.length; i++)
+                {
+                    if (i > 0)
+                        text.append(",");
+                    text.append( children[i].getLabel() );
+                }
+                label = text.append(")").toString();
+            }
+        }
+        return label;
     }
     
     /**
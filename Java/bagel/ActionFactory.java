@@ -24,7 +24,7 @@ public class ActionFactory
                 target.moveBy( deltaX/duration * deltaTime, deltaY/duration * deltaTime );
                 return (totalTime >= duration);
             }
-        );
+        ).setName("moveBy");
     }
 
     /**
@@ -42,7 +42,7 @@ public class ActionFactory
                 target.rotateBy( deltaAngle/duration * deltaTime );
                 return (totalTime >= duration);
             }
-        );
+        ).setName("rotateBy");
     }
 
     /**
@@ -63,7 +63,7 @@ public class ActionFactory
                     target.opacity = 0;
                 return (target.opacity <= 0);
             }
-        );
+        ).setName("fadeOut");
     }
 
     /**
@@ -82,7 +82,7 @@ public class ActionFactory
                     target.opacity = 1;
                 return (target.opacity >= 1);
             }
-        );
+        ).setName("fadeIn");
     }
 
     /**
@@ -119,7 +119,13 @@ public class ActionFactory
 
                 currentIndex = 0;
             }
-        };
+
+            @Override
+            Action[] getChildren()
+            {
+                return actionList.toArray( new Action[actionList.size()] );
+            }
+        }.setName("sequence");
     }
 
     /**
@@ -147,7 +153,13 @@ public class ActionFactory
                 }
                 return (finishedTimes == totalTimes);
             }
-        };
+
+            @Override
+            Action[] getChildren()
+            {
+                return new Action[] { action };
+            }
+        }.setName("repeat");
     }
 
     /**
@@ -168,7 +180,13 @@ public class ActionFactory
                     action.reset();
                 return false;
             }
-        };
+
+            @Override
+            Action[] getChildren()
+            {
+                return new Action[] { action };
+            }
+        }.setName("forever");
     }
 
     /**
@@ -185,7 +203,7 @@ public class ActionFactory
             {
                 return (totalTime >= duration);
             }
-        );
+        ).setName("delay");
     }
 
     /**
@@ -201,7 +219,7 @@ public class ActionFactory
                 target.remove();
                 return true;
             }
-        );
+        ).setName("remove");
     }
     
     /**
@@ -217,7 +235,7 @@ public class ActionFactory
             {
                 return target.animation.isFinished();
             }
-        );
+        ).setName("isAnimationFinished");
     }
 
     /**
@@ -235,7 +253,7 @@ public class ActionFactory
                 target.boundToScreen(screenWidth, screenHeight);
                 return false;
             }
-        );
+        ).setName("boundToScreen");
     }
 
     /**
@@ -253,7 +271,7 @@ public class ActionFactory
                 target.wrapToScreen(screenWidth, screenHeight);
                 return false;
             }
-        );
+        ).setName("wrapToScreen");
     }
 
     /**
@@ -280,7 +298,7 @@ public class ActionFactory
                     return false;
                 }
             }
-        );
+        ).setName("destroyOutsideScreen");
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package bagel;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+
+/**
+ *  Measures how many bytes are allocated (objects created) during each frame
+ *  and each phase of a frame, and which frames were interrupted by garbage collection.
+ *  Enabled with {@link FrameMetrics#setAllocationTracking(long)}.
+ *  <br><br>
+ *  Allocation is measured per thread, so each phase counts only the objects
+ *  created by the thread running it. Frames that allocate more than
+ *  {@link #allocationBudget} bytes are counted and the most recent ones are stored
+ *  (see {@link #getFlaggedFrames()}), along with any garbage collection pause time
+ *  that occurred during the same frame.
+ */
+public class AllocationTracker
+{
+    // used to read the number of bytes allocated by a thread
+    static final ThreadMXBean threadBean = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    /**
+     * largest number of bytes that a frame may allocate before it is flagged; 0 for no limit
+     */
+    public long allocationBudget;
+
+    // bytes allocated per frame, and per phase
+    Histogram frameBytes;
+    Histogram[] phaseBytes;
+
+    // allocation at the start of the current frame and of each phase (loop thread only)
+    long frameStartBytes;
+    long[] phaseStartBytes;
+    long[] phaseTotalBytes;
+    boolean[] phaseUsed;
+
+    /**
+     * number of bytes allocated by the game loop thread during the most recent frame
+     */
+    public long lastFrameBytes;
+
+    /**
+     * number of frames that allocated more than {@link #allocationBudget} bytes
+     */
+    public long overBudgetFrameCount;
+
+    /**
+     * number of frames during which garbage collection occurred
+     */
+    public long gcFrameCount;
+
+    // garbage collection pause time and count reported since the end of the previous frame
+    AtomicLong pendingGcNanos;
+    AtomicLong pendingGcCount;
+
+    // total garbage collection pause time reported while tracking
+    long totalGcNanos;
+
+    // most recent flagged frames: frame number, bytes allocated, gc pause time;
+    //   stored in a ring buffer
+    long[] flaggedFrameNumber;
+    long[] flaggedBytes;
+    long[] flaggedGcNanos;
+    int flaggedCount;
+    int flaggedNext;
+
+    // listeners registered with garbage collectors
+    ArrayList<NotificationEmitter> emitterList;
+    NotificationListener gcListener;
+
+    /**
+     * Start tracking allocation and listening for garbage collection.
+     * @param allocationBudget largest number of bytes a frame may allocate before it is flagged; 0 for no limit
+     * @param phaseCount number of phases to track (see {@link FrameMetrics})
+     */
+    public AllocationTracker(long allocationBudget, int phaseCount)
+    {
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        this.allocationBudget = allocationBudget;
+        this.frameBytes = new Histogram();
+        this.phaseBytes = new Histogram[phaseCount];
+        for (int i = 0; i < phaseCount; i++)
+            this.phaseBytes[i] = new Histogram();
+        this.phaseStartBytes = new long[phaseCount];
+        this.phaseTotalBytes = new long[phaseCount];
+        this.phaseUsed = new boolean[phaseCount];
+        this.frameStartBytes = -1;
+
+        this.pendingGcNanos = new AtomicLong();
+        this.pendingGcCount = new AtomicLong();
+
+        int flaggedCapacity = 64;
+        this.flaggedFrameNumber = new long[flaggedCapacity];
+        this.flaggedBytes = new long[flaggedCapacity];
+        this.flaggedGcNanos = new long[flaggedCapacity];
+
+        // garbage collection notifications arrive on a separate thread
+        this.gcListener = (Notification notification, Object handback) ->
+        {
+            if ( !notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION) )
+                return;
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from( (CompositeData)notification.getUserData() );
+            pendingGcNanos.addAndGet( info.getGcInfo().getDuration() * 1_000_000L );
+            pendingGcCount.incrementAndGet();
+        };
+        this.emitterList = new ArrayList<NotificationEmitter>();
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            if (gcBean instanceof NotificationEmitter)
+            {
+                NotificationEmitter emitter = (NotificationEmitter)gcBean;
+                emitter.addNotificationListener(gcListener, null, null);
+                emitterList.add(emitter);
+            }
+        }
+    }
+
+    /**
+     * Get the total number of bytes allocated by the current thread since it started.
+     * @return number of bytes allocated
+     */
+    public static long getThreadAllocatedBytes()
+    {
+        return threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Stop listening for garbage collection.
+     */
+    public void close()
+    {
+        for (NotificationEmitter emitter : emitterList)
+        {
+            try
+            {
+                emitter.removeNotificationListener(gcListener);
+            }
+            catch (Exception e)
+            {
+                // listener already removed
+            }
+        }
+        emitterList.clear();
+    }
+
+    // called by FrameMetrics at the start of each frame (after the previous frame ends)
+    void beginFrame()
+    {
+        frameStartBytes = getThreadAllocatedBytes();
+    }
+
+    // called by FrameMetrics at the end of each frame
+    void endFrame(long frameNumber)
+    {
+        if (frameStartBytes < 0)
+            return;
+
+        long bytes = getThreadAllocatedBytes() - frameStartBytes;
+        lastFrameBytes = bytes;
+        frameBytes.record(bytes);
+
+        for (int i = 0; i < phaseUsed.length; i++)
+        {
+            if (phaseUsed[i])
+            {
+                phaseBytes[i].record(phaseTotalBytes[i]);
+                phaseTotalBytes[i] = 0;
+                phaseUsed[i] = false;
+            }
+        }
+
+        long gcNanos = pendingGcNanos.getAndSet(0);
+        if (pendingGcCount.getAndSet(0) > 0)
+        {
+            gcFrameCount++;
+            totalGcNanos += gcNanos;
+        }
+
+        if (allocationBudget > 0 && bytes > allocationBudget)
+        {
+            overBudgetFrameCount++;
+            flaggedFrameNumber[flaggedNext] = frameNumber;
+            flaggedBytes[flaggedNext] = bytes;
+            flaggedGcNanos[flaggedNext] = gcNanos;
+            flaggedNext = (flaggedNext + 1) % flaggedFrameNumber.length;
+            if (flaggedCount < flaggedFrameNumber.length)
+                flaggedCount++;
+        }
+    }
+
+    // called by FrameMetrics at the start of a phase on the loop thread
+    void beginPhase(int phase)
+    {
+        phaseStartBytes[phase] = getThreadAllocatedBytes();
+    }
+
+    // called by FrameMetrics at the end of a phase on the loop thread
+    void endPhase(int phase)
+    {
+        phaseTotalBytes[phase] += getThreadAllocatedBytes() - phaseStartBytes[phase];
+        phaseUsed[phase] = true;
+    }
+
+    /**
+     * Record the number of bytes allocated by a phase directly;
+     *   used when a phase runs on a different thread than the game loop.
+     * @param phase the phase
+     * @param bytes number of bytes allocated
+     */
+    public void record(int phase, long bytes)
+    {
+        phaseBytes[phase].record(bytes);
+    }
+
+    /**
+     * Get the histogram of bytes allocated per frame (by the game loop thread).
+     * @return histogram of bytes allocated per frame
+     */
+    public Histogram getFrameHistogram()
+    {
+        return frameBytes;
+    }
+
+    /**
+     * Get the histogram of bytes allocated during a phase.
+     * @param phase the phase (see {@link FrameMetrics})
+     * @return histogram of bytes allocated per run of the phase
+     */
+    public Histogram getPhaseHistogram(int phase)
+    {
+        return phaseBytes[phase];
+    }
+
+    /**
+     * Get the total garbage collection pause time reported while tracking.
+     * @return pause time (in nanoseconds; reported with millisecond precision)
+     */
+    public long getTotalGcNanos()
+    {
+        return totalGcNanos;
+    }
+
+    /**
+     * Get the most recent frames that allocated more than {@link #allocationBudget} bytes,
+     *   oldest first. Each entry contains: frame number, bytes allocated,
+     *   and garbage collection pause time (in nanoseconds) during that frame.
+     * @return array of flagged frames
+     */
+    public long[][] getFlaggedFrames()
+    {
+        long[][] frames = new long[flaggedCount][];
+        int capacity = flaggedFrameNumber.length;
+        int first = (flaggedNext - flaggedCount + capacity) % capacity;
+        for (int i = 0; i < flaggedCount; i++)
+        {
+            int index = (first + i) % capacity;
+            frames[i] = new long[] { flaggedFrameNumber[index], flaggedBytes[index], flaggedGcNanos[index] };
+        }
+        return frames;
+    }
+
+    /**
+     * Remove all recorded data.
+     */
+    public void reset()
+    {
+        frameBytes.reset();
+        for (Histogram h : phaseBytes)
+            h.reset();
+        overBudgetFrameCount = 0;
+        gcFrameCount = 0;
+        totalGcNanos = 0;
+        flaggedCount = 0;
+        flaggedNext = 0;
+    }
+}
@@ -1,10 +1,8 @@
 package bagel;
 
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 
 /**
@@ -122,10 +120,9 @@ public class Animation
     public static Animation load(String imageFileName, int rows, int cols, double frameDuration, boolean loop)
     {
         Animation anim = new Animation();
-        String fileName = new File(imageFileName).toURI().toString();
         try 
 		{
-            BufferedImage image = ImageIO.read(new File(imageFileName));
+            BufferedImage image = Texture.readImage(imageFileName, "animation");
 			double frameWidth  = image.getWidth() / cols;
             double frameHeight = image.getHeight() / rows;
 
@@ -133,9 +130,7 @@ public class Animation
             {
                 for (int x = 0; x < cols; x++)
                 {
-                    Texture texture = new Texture(fileName);
-                    texture.image = image;
-                    texture.region = new Rectangle(x*frameWidth, y*frameHeight, frameWidth, frameHeight);
+                    Texture texture = new Texture(image, new Rectangle(x*frameWidth, y*frameHeight, frameWidth, frameHeight));
                     anim.textureList.add( texture );
                 }
             }
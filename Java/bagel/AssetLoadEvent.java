@@ -0,0 +1,69 @@
+package bagel;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  Java Flight Recorder event recorded when an image file is read and decoded
+ *  by {@link Texture}, {@link Animation#load(String, int, int, double, boolean)},
+ *  or {@link TileMap#loadTilesetImage(String)}.
+ *  The duration of the event is the time spent reading and decoding the file.
+ *  <br><br>
+ *  Disabled by default (see {@link FrameEvent}); the event name is "bagel.AssetLoad".
+ */
+@Name("bagel.AssetLoad")
+@Label("Asset Load")
+@Category({"Bagel", "Assets"})
+@Description("Image file read and decoded")
+@Enabled(false)
+public class AssetLoadEvent extends Event
+{
+    // checked before creating an event, so that nothing is created when disabled
+    static final EventType type = EventType.getEventType(AssetLoadEvent.class);
+
+    /**
+     * name of the file that was loaded
+     */
+    @Label("File")
+    public String fileName;
+
+    /**
+     * kind of asset: "texture", "animation", or "tileset"
+     */
+    @Label("Asset Type")
+    public String assetType;
+
+    /**
+     * size of the file
+     */
+    @Label("File Size")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * width of the decoded image (in pixels); 0 if the file could not be read
+     */
+    @Label("Width")
+    public int width;
+
+    /**
+     * height of the decoded image (in pixels); 0 if the file could not be read
+     */
+    @Label("Height")
+    public int height;
+
+    /**
+     * Determine if asset load events are being recorded.
+     * @return true if asset load events are enabled
+     */
+    public static boolean isTypeEnabled()
+    {
+        return type.isEnabled();
+    }
+}
@@ -0,0 +1,55 @@
+package bagel;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  Java Flight Recorder event recorded when a {@link TileMap} checks a sprite
+ *  for overlap with its tiles
+ *  ({@link TileMap#checkSpriteOverlap(FinalSprite)} or {@link TileMap#preventSpriteOverlap(FinalSprite)}).
+ *  The duration of the event is the time spent on the query.
+ *  <br><br>
+ *  Disabled by default (see {@link FrameEvent}); the event name is "bagel.CollisionQuery".
+ */
+@Name("bagel.CollisionQuery")
+@Label("Collision Query")
+@Category({"Bagel", "Collision"})
+@Description("Sprite checked for overlap with tiles")
+@Enabled(false)
+public class CollisionQueryEvent extends Event
+{
+    // checked before creating an event, so that nothing is created when disabled
+    static final EventType type = EventType.getEventType(CollisionQueryEvent.class);
+
+    /**
+     * name of the query method
+     */
+    @Label("Query")
+    public String query;
+
+    /**
+     * number of tiles checked for overlap
+     */
+    @Label("Candidates")
+    public int candidates;
+
+    /**
+     * number of tiles overlapping the sprite
+     */
+    @Label("Hits")
+    public int hits;
+
+    /**
+     * Determine if collision query events are being recorded.
+     * @return true if collision query events are enabled
+     */
+    public static boolean isTypeEnabled()
+    {
+        return type.isEnabled();
+    }
+}
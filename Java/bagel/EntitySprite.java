@@ -0,0 +1,319 @@
+package bagel;
+
+/**
+ *  Refers to one entity in an {@link EntityStore}, providing methods similar to those of
+ *  {@link FinalSprite}, so that game code written for FinalSprite can be moved to an entity store
+ *  with few changes. The data is stored in the entity store; this object only stores the entity id,
+ *  so any number of these objects may refer to the same entity.
+ *  <br><br>
+ *  Each method finds the entity's position in the store; for updating many entities,
+ *  the systems of {@link EntityStore} (or loops over its arrays) are faster.
+ */
+public class EntitySprite
+{
+    /**
+     * the store containing the entity
+     */
+    public final EntityStore store;
+
+    /**
+     * id of the entity
+     */
+    public final int id;
+
+    /**
+     * Refer to an entity; see {@link EntityStore#createSprite()} and {@link EntityStore#getSprite(int)}.
+     * @param store the store containing the entity
+     * @param id id of the entity
+     */
+    EntitySprite(EntityStore store, int id)
+    {
+        this.store = store;
+        this.id = id;
+    }
+
+    // basic methods
+
+    /**
+     * Destroy the entity (see {@link EntityStore#destroy(int)}).
+     */
+    public void remove()
+    {
+        if ( store.isAlive(id) )
+            store.destroy(id);
+    }
+
+    /**
+     * Check if the entity has been removed.
+     * @return true if the entity no longer exists
+     */
+    public boolean isRemoved()
+    {
+        return !store.isAlive(id);
+    }
+
+    /**
+     * Set the coordinates of the center of this sprite.
+     * @param x x-coordinate of center of sprite
+     * @param y y-coordinate of center of sprite
+     */
+    public void setPosition(double x, double y)
+    {
+        store.setPosition(id, x, y);
+    }
+
+    /**
+     * Move this sprite by the specified amounts.
+     * @param deltaX amount to move sprite along x direction
+     * @param deltaY amount to move sprite along y direction
+     */
+    public void moveBy(double deltaX, double deltaY)
+    {
+        int i = store.getIndex(id);
+        store.x[i] += deltaX;
+        store.y[i] += deltaY;
+    }
+
+    /**
+     * @return x-coordinate of center of sprite
+     */
+    public double getX()
+    {
+        return store.x[ store.getIndex(id) ];
+    }
+
+    /**
+     * @return y-coordinate of center of sprite
+     */
+    public double getY()
+    {
+        return store.y[ store.getIndex(id) ];
+    }
+
+    /**
+     * Set the texture displayed when drawing this sprite, and set the size to the size of the texture.
+     * @param tex texture to display
+     */
+    public void setTexture(Texture tex)
+    {
+        store.setTexture(id, tex);
+    }
+
+    /**
+     * Set size to use for boundary and when drawing this sprite.
+     * @param width width of sprite
+     * @param height height of sprite
+     */
+    public void setSize(double width, double height)
+    {
+        store.setSize(id, width, height);
+    }
+
+    /**
+     * @return width of sprite
+     */
+    public double getWidth()
+    {
+        return store.width[ store.getIndex(id) ];
+    }
+
+    /**
+     * @return height of sprite
+     */
+    public double getHeight()
+    {
+        return store.height[ store.getIndex(id) ];
+    }
+
+    /**
+     * Set whether this sprite is drawn.
+     * @param visible true to draw this sprite
+     */
+    public void setVisible(boolean visible)
+    {
+        store.visible[ store.getIndex(id) ] = visible;
+    }
+
+    /**
+     * @return true if this sprite is drawn
+     */
+    public boolean isVisible()
+    {
+        return store.visible[ store.getIndex(id) ];
+    }
+
+    /**
+     * Set the opacity of this sprite.
+     * @param opacity value from 0.0 (fully transparent) to 1.0 (fully opaque)
+     */
+    public void setOpacity(double opacity)
+    {
+        store.opacity[ store.getIndex(id) ] = opacity;
+    }
+
+    /**
+     * @return opacity of this sprite
+     */
+    public double getOpacity()
+    {
+        return store.opacity[ store.getIndex(id) ];
+    }
+
+    /**
+     * Set whether the texture is reversed along the x and y directions.
+     * @param mirrored reverse along the x direction
+     * @param flipped reverse along the y direction
+     */
+    public void setOrientation(boolean mirrored, boolean flipped)
+    {
+        int i = store.getIndex(id);
+        store.mirrored[i] = mirrored;
+        store.flipped[i] = flipped;
+    }
+
+    // collision methods
+
+    /**
+     * Check if this sprite is overlapping another sprite in the same store.
+     * @param other sprite to check for overlap with
+     * @return true if this sprite overlaps other sprite
+     */
+    public boolean isOverlapping(EntitySprite other)
+    {
+        if (other.store != store)
+            throw new IllegalArgumentException("Sprites are stored in different entity stores");
+        return store.isOverlapping(id, other.id);
+    }
+
+    /**
+     * Check if this sprite is overlapping a final sprite.
+     * @param other sprite to check for overlap with
+     * @return true if this sprite overlaps other sprite
+     */
+    public boolean isOverlapping(FinalSprite other)
+    {
+        Rectangle b = other.getBoundary();
+        return store.overlaps( store.getIndex(id), b.left, b.top, b.right, b.bottom );
+    }
+
+    // angle methods
+
+    /**
+     * @return angle (in degrees) of texture rotation
+     */
+    public double getAngle()
+    {
+        return store.angle[ store.getIndex(id) ];
+    }
+
+    /**
+     * Set angle of texture rotation.
+     * @param angleDegrees the angle (in degrees)
+     */
+    public void setAngle(double angleDegrees)
+    {
+        store.angle[ store.getIndex(id) ] = angleDegrees;
+    }
+
+    /**
+     * Rotate sprite by the specified angle.
+     * @param deltaAngle the angle (in degrees) to rotate this sprite
+     */
+    public void rotateBy(double deltaAngle)
+    {
+        store.angle[ store.getIndex(id) ] += deltaAngle;
+    }
+
+    /**
+     * Move sprite by the specified distance at the specified angle.
+     * @param distance the distance to move this sprite
+     * @param angleDegrees the angle (in degrees) along which to move this sprite
+     */
+    public void moveAtAngle(double distance, double angleDegrees)
+    {
+        moveBy( distance * Math.cos(angleDegrees * Math.PI/180),
+                distance * Math.sin(angleDegrees * Math.PI/180) );
+    }
+
+    /**
+     * Move sprite forward by the specified distance at current angle.
+     * @param distance the distance to move this sprite
+     */
+    public void moveForward(double distance)
+    {
+        moveAtAngle(distance, getAngle());
+    }
+
+    // screen methods
+
+    /**
+     * Check if sprite (boundary rectangle) remains on screen
+     * @param screenWidth width of screen
+     * @param screenHeight height of screen
+     * @return true, if part of sprite (boundary rectangle) remains on screen
+     */
+    public boolean isOnScreen(double screenWidth, double screenHeight)
+    {
+        return store.overlaps( store.getIndex(id), 0, 0, screenWidth, screenHeight );
+    }
+
+    // physics
+
+    /**
+     * Enable physics for this sprite, with the given values (see {@link Physics}).
+     * @param accValue acceleration value
+     * @param maxSpeed maximum speed
+     * @param decValue deceleration value
+     */
+    public void setPhysics(double accValue, double maxSpeed, double decValue)
+    {
+        store.setPhysics(id, accValue, maxSpeed, decValue);
+    }
+
+    /**
+     * @return speed of sprite
+     */
+    public double getSpeed()
+    {
+        int i = store.getIndex(id);
+        return Math.sqrt( store.velocityX[i] * store.velocityX[i] + store.velocityY[i] * store.velocityY[i] );
+    }
+
+    /**
+     * Set speed of sprite, keeping the angle of motion.
+     * @param speed speed of sprite
+     */
+    public void setSpeed(double speed)
+    {
+        store.setVelocity(id, speed, getMotionAngle());
+    }
+
+    /**
+     * @return angle of motion (in degrees), from -180 to +180; 0 if the speed is 0
+     */
+    public double getMotionAngle()
+    {
+        int i = store.getIndex(id);
+        if (store.velocityX[i] == 0 && store.velocityY[i] == 0)
+            return 0;
+        return Math.atan2(store.velocityY[i], store.velocityX[i]) * 180/Math.PI;
+    }
+
+    /**
+     * Set angle of motion of sprite, keeping the speed.
+     * @param angleDegrees angle of motion (in degrees)
+     */
+    public void setMotionAngle(double angleDegrees)
+    {
+        store.setVelocity(id, getSpeed(), angleDegrees);
+    }
+
+    /**
+     * Accelerate sprite in the given direction by its acceleration value.
+     * @param angleDegrees direction of acceleration
+     */
+    public void accelerateAtAngle(double angleDegrees)
+    {
+        store.accelerateAtAngle(id, angleDegrees);
+    }
+}
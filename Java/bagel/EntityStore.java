@@ -0,0 +1,644 @@
+package bagel;
+
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+
+/**
+ *  Stores many simple sprites ("entities") as parallel arrays of numbers
+ *  (position, size, angle, opacity, velocity, acceleration, ...) instead of one object per sprite,
+ *  and updates them with loops over those arrays ("systems"): physics, screen bounds, and culling.
+ *  Useful for large numbers of similar sprites (particles, bullets, crowds), which are
+ *  updated and drawn several times faster than the same number of {@link FinalSprite}s.
+ *  <br><br>
+ *  Each entity is identified by an int id, returned by {@link #create()}; ids stay the same
+ *  until the entity is destroyed (after which the id may be reused). Internally, the data of the
+ *  living entities is packed into positions 0 to {@link #getCount()} - 1 of each array
+ *  (destroying an entity moves the last entity into its position); {@link #getIndex(int)}
+ *  finds the position of an entity. Systems and custom loops work directly on positions:
+ * <pre>{@code
+ * EntityStore bullets = createEntityStore();
+ * int id = bullets.create();
+ * bullets.setTexture(id, bulletTexture);
+ * ...
+ * // in update:
+ * bullets.updatePhysics(dt);
+ * for (int i = 0; i < bullets.getCount(); i++)
+ *     bullets.angle[i] += 90 * dt;
+ * }</pre>
+ *  Entities are drawn after all groups (see {@link Game#createEntityStore()}).
+ *  For game code written for FinalSprite, {@link EntitySprite} provides similar methods
+ *  for a single entity. Entities do not support actions or animations.
+ *  <br><br>
+ *  Arrays are replaced by larger arrays when the store is full; do not keep references to them.
+ */
+public class EntityStore
+{
+    // position of each entity id in the data arrays, or -1 if the id is not in use
+    int[] sparse;
+
+    // ids that have been destroyed and can be reused
+    int[] freeIds;
+    int freeCount;
+
+    // next id never used before
+    int nextId;
+
+    // number of living entities
+    int count;
+
+    /**
+     * id of the entity stored at each position
+     */
+    public int[] id;
+
+    /**
+     * x-coordinate of the center of each entity
+     */
+    public double[] x;
+
+    /**
+     * y-coordinate of the center of each entity
+     */
+    public double[] y;
+
+    /**
+     * width of each entity (boundary rectangle and drawn image)
+     */
+    public double[] width;
+
+    /**
+     * height of each entity (boundary rectangle and drawn image)
+     */
+    public double[] height;
+
+    /**
+     * angle (in degrees) of texture rotation of each entity
+     */
+    public double[] angle;
+
+    /**
+     * opacity of each entity, from 0.0 (fully transparent) to 1.0 (fully opaque)
+     */
+    public double[] opacity;
+
+    /**
+     * velocity of each entity (x and y components)
+     */
+    public double[] velocityX, velocityY;
+
+    /**
+     * acceleration of each entity (x and y components); reset to 0 by {@link #updatePhysics(double)}
+     */
+    public double[] accelerationX, accelerationY;
+
+    /**
+     * acceleration used by {@link #accelerateAtAngle(int, double)}, maximum speed,
+     *   and rate of speed reduction when not accelerating, of each entity (see {@link Physics})
+     */
+    public double[] accelerationValue, maximumSpeed, decelerationValue;
+
+    /**
+     * determines if each entity is moved by {@link #updatePhysics(double)}
+     */
+    public boolean[] hasPhysics;
+
+    /**
+     * determines if each entity is drawn
+     */
+    public boolean[] visible;
+
+    /**
+     * determines if the texture of each entity is reversed along the x or y direction
+     */
+    public boolean[] mirrored, flipped;
+
+    /**
+     * image displayed for each entity
+     */
+    public Texture[] texture;
+
+    // positions of entities found by cull(), in draw order
+    int[] culledIndex;
+    int culledCount;
+
+    // reused when drawing
+    AffineTransform transform;
+
+    /**
+     * Create an empty store.
+     * @param initialCapacity number of entities that can be stored before arrays need to grow
+     */
+    public EntityStore(int initialCapacity)
+    {
+        int capacity = Math.max(initialCapacity, 16);
+        this.sparse = new int[capacity];
+        Arrays.fill(this.sparse, -1);
+        this.freeIds = new int[16];
+        this.freeCount = 0;
+        this.nextId = 0;
+        this.count = 0;
+        this.transform = new AffineTransform();
+        this.resize(capacity);
+    }
+
+    // change the capacity of the data arrays, keeping existing data
+    private void resize(int capacity)
+    {
+        id                = (id == null) ? new int[capacity] : Arrays.copyOf(id, capacity);
+        x                 = (x == null) ? new double[capacity] : Arrays.copyOf(x, capacity);
+        y                 = (y == null) ? new double[capacity] : Arrays.copyOf(y, capacity);
+        width             = (width == null) ? new double[capacity] : Arrays.copyOf(width, capacity);
+        height            = (height == null) ? new double[capacity] : Arrays.copyOf(height, capacity);
+        angle             = (angle == null) ? new double[capacity] : Arrays.copyOf(angle, capacity);
+        opacity           = (opacity == null) ? new double[capacity] : Arrays.copyOf(opacity, capacity);
+        velocityX         = (velocityX == null) ? new double[capacity] : Arrays.copyOf(velocityX, capacity);
+        velocityY         = (velocityY == null) ? new double[capacity] : Arrays.copyOf(velocityY, capacity);
+        accelerationX     = (accelerationX == null) ? new double[capacity] : Arrays.copyOf(accelerationX, capacity);
+        accelerationY     = (accelerationY == null) ? new double[capacity] : Arrays.copyOf(accelerationY, capacity);
+        accelerationValue = (accelerationValue == null) ? new double[capacity] : Arrays.copyOf(accelerationValue, capacity);
+        maximumSpeed      = (maximumSpeed == null) ? new double[capacity] : Arrays.copyOf(maximumSpeed, capacity);
+        decelerationValue = (decelerationValue == null) ? new double[capacity] : Arrays.copyOf(decelerationValue, capacity);
+        hasPhysics        = (hasPhysics == null) ? new boolean[capacity] : Arrays.copyOf(hasPhysics, capacity);
+        visible           = (visible == null) ? new boolean[capacity] : Arrays.copyOf(visible, capacity);
+        mirrored          = (mirrored == null) ? new boolean[capacity] : Arrays.copyOf(mirrored, capacity);
+        flipped           = (flipped == null) ? new boolean[capacity] : Arrays.copyOf(flipped, capacity);
+        texture           = (texture == null) ? new Texture[capacity] : Arrays.copyOf(texture, capacity);
+        culledIndex       = new int[capacity];
+    }
+
+    // entity lifetime
+
+    /**
+     * Create an entity at (0,0), with no size, texture, or physics; visible and fully opaque.
+     * @return id of the new entity
+     */
+    public int create()
+    {
+        int newId;
+        if (freeCount > 0)
+        {
+            freeCount--;
+            newId = freeIds[freeCount];
+        }
+        else
+        {
+            newId = nextId;
+            nextId++;
+            if (newId == sparse.length)
+            {
+                int oldLength = sparse.length;
+                sparse = Arrays.copyOf(sparse, oldLength * 2);
+                Arrays.fill(sparse, oldLength, sparse.length, -1);
+            }
+        }
+
+        if (count == x.length)
+            resize(count * 2);
+
+        int i = count;
+        count++;
+        sparse[newId] = i;
+        id[i] = newId;
+        x[i] = 0;
+        y[i] = 0;
+        width[i] = 0;
+        height[i] = 0;
+        angle[i] = 0;
+        opacity[i] = 1.0;
+        velocityX[i] = 0;
+        velocityY[i] = 0;
+        accelerationX[i] = 0;
+        accelerationY[i] = 0;
+        accelerationValue[i] = 0;
+        maximumSpeed[i] = 0;
+        decelerationValue[i] = 0;
+        hasPhysics[i] = false;
+        visible[i] = true;
+        mirrored[i] = false;
+        flipped[i] = false;
+        texture[i] = null;
+        return newId;
+    }
+
+    /**
+     * Destroy an entity; its id may be returned by a later call to {@link #create()}.
+     * The last entity is moved into the position of the destroyed entity.
+     * Must not be called during a loop over positions, unless the loop runs backwards.
+     * @param entityId id of the entity to destroy
+     */
+    public void destroy(int entityId)
+    {
+        int i = getIndex(entityId);
+        int last = count - 1;
+        if (i != last)
+            copy(last, i);
+        texture[last] = null;
+        count--;
+        sparse[entityId] = -1;
+
+        if (freeCount == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount] = entityId;
+        freeCount++;
+    }
+
+    // copy all data of the entity at one position to another position
+    private void copy(int from, int to)
+    {
+        id[to] = id[from];
+        sparse[id[to]] = to;
+        x[to] = x[from];
+        y[to] = y[from];
+        width[to] = width[from];
+        height[to] = height[from];
+        angle[to] = angle[from];
+        opacity[to] = opacity[from];
+        velocityX[to] = velocityX[from];
+        velocityY[to] = velocityY[from];
+        accelerationX[to] = accelerationX[from];
+        accelerationY[to] = accelerationY[from];
+        accelerationValue[to] = accelerationValue[from];
+        maximumSpeed[to] = maximumSpeed[from];
+        decelerationValue[to] = decelerationValue[from];
+        hasPhysics[to] = hasPhysics[from];
+        visible[to] = visible[from];
+        mirrored[to] = mirrored[from];
+        flipped[to] = flipped[from];
+        texture[to] = texture[from];
+    }
+
+    /**
+     * Destroy all entities.
+     */
+    public void clear()
+    {
+        Arrays.fill(texture, 0, count, null);
+        Arrays.fill(sparse, -1);
+        count = 0;
+        nextId = 0;
+        freeCount = 0;
+    }
+
+    /**
+     * Check if an id belongs to a living entity.
+     * @param entityId id to check
+     * @return true if the entity exists
+     */
+    public boolean isAlive(int entityId)
+    {
+        return entityId >= 0 && entityId < nextId && sparse[entityId] >= 0;
+    }
+
+    /**
+     * Get the position in the data arrays of an entity.
+     * Positions change when other entities are destroyed.
+     * @param entityId id of the entity
+     * @return position of the entity (from 0 to {@link #getCount()} - 1)
+     */
+    public int getIndex(int entityId)
+    {
+        if ( !isAlive(entityId) )
+            throw new IllegalArgumentException("There is no entity with the id: " + entityId);
+        return sparse[entityId];
+    }
+
+    /**
+     * Return the number of living entities.
+     * @return the number of entities
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    // single-entity methods (by id)
+
+    /**
+     * Set the coordinates of the center of an entity.
+     * @param entityId id of the entity
+     * @param x x-coordinate of center
+     * @param y y-coordinate of center
+     */
+    public void setPosition(int entityId, double x, double y)
+    {
+        int i = getIndex(entityId);
+        this.x[i] = x;
+        this.y[i] = y;
+    }
+
+    /**
+     * Set the texture of an entity, and its size to the size of the texture.
+     * @param entityId id of the entity
+     * @param tex texture to display
+     */
+    public void setTexture(int entityId, Texture tex)
+    {
+        int i = getIndex(entityId);
+        texture[i] = tex;
+        width[i] = tex.region.width;
+        height[i] = tex.region.height;
+    }
+
+    /**
+     * Set the size of an entity.
+     * @param entityId id of the entity
+     * @param width width of entity
+     * @param height height of entity
+     */
+    public void setSize(int entityId, double width, double height)
+    {
+        int i = getIndex(entityId);
+        this.width[i] = width;
+        this.height[i] = height;
+    }
+
+    /**
+     * Enable physics for an entity, with the given values (see {@link Physics}).
+     * @param entityId id of the entity
+     * @param accValue acceleration value
+     * @param maxSpeed maximum speed
+     * @param decValue deceleration value
+     */
+    public void setPhysics(int entityId, double accValue, double maxSpeed, double decValue)
+    {
+        int i = getIndex(entityId);
+        hasPhysics[i] = true;
+        accelerationValue[i] = accValue;
+        maximumSpeed[i] = maxSpeed;
+        decelerationValue[i] = decValue;
+    }
+
+    /**
+     * Set the velocity of an entity from a speed and an angle of motion.
+     * @param entityId id of the entity
+     * @param speed speed of entity
+     * @param angleDegrees angle of motion (in degrees)
+     */
+    public void setVelocity(int entityId, double speed, double angleDegrees)
+    {
+        int i = getIndex(entityId);
+        velocityX[i] = speed * Math.cos(angleDegrees * Math.PI/180);
+        velocityY[i] = speed * Math.sin(angleDegrees * Math.PI/180);
+    }
+
+    /**
+     * Accelerate an entity in the direction angleDegrees by its acceleration value
+     *   (see {@link Physics#accelerateAtAngle(double)}).
+     * @param entityId id of the entity
+     * @param angleDegrees direction of acceleration
+     */
+    public void accelerateAtAngle(int entityId, double angleDegrees)
+    {
+        int i = getIndex(entityId);
+        accelerationX[i] += accelerationValue[i] * Math.cos(angleDegrees * Math.PI/180);
+        accelerationY[i] += accelerationValue[i] * Math.sin(angleDegrees * Math.PI/180);
+    }
+
+    /**
+     * Check if the boundary rectangles of two entities overlap.
+     * Angle of rotation has no effect on the boundary.
+     * @param entityA id of the first entity
+     * @param entityB id of the second entity
+     * @return true if the entities overlap
+     */
+    public boolean isOverlapping(int entityA, int entityB)
+    {
+        int a = getIndex(entityA);
+        int b = getIndex(entityB);
+        return overlaps(a, x[b] - width[b]/2, y[b] - height[b]/2, x[b] + width[b]/2, y[b] + height[b]/2);
+    }
+
+    // check if the entity at a position overlaps a rectangle (same rule as Rectangle.isOverlapping)
+    boolean overlaps(int i, double left, double top, double right, double bottom)
+    {
+        double halfWidth = width[i] / 2;
+        double halfHeight = height[i] / 2;
+        boolean noOverlap = (right <= x[i] - halfWidth)
+            || (x[i] + halfWidth <= left)
+            || (bottom <= y[i] - halfHeight)
+            || (y[i] + halfHeight <= top);
+        return !noOverlap;
+    }
+
+    // systems: loops over all entities
+
+    /**
+     * Update the velocity and position of every entity with physics enabled,
+     *   in the same way as {@link Physics#update(double)}: apply acceleration,
+     *   decelerate when not accelerating, limit speed, move, then reset acceleration.
+     * @param dt elapsed time (seconds) since previous iteration of game loop
+     */
+    public void updatePhysics(double dt)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (!hasPhysics[i])
+                continue;
+
+            double ax = accelerationX[i];
+            double ay = accelerationY[i];
+            double vx = velocityX[i] + ax * dt;
+            double vy = velocityY[i] + ay * dt;
+
+            double length = Math.sqrt(vx * vx + vy * vy);
+            double speed = length;
+            if (ax * ax + ay * ay < 0.001 * 0.001)
+                speed -= decelerationValue[i] * dt;
+            if (speed < 0)
+                speed = 0;
+            if (speed > maximumSpeed[i])
+                speed = maximumSpeed[i];
+
+            // change length, keeping direction (a zero velocity points along the x-axis)
+            if (length > 0)
+            {
+                vx *= speed / length;
+                vy *= speed / length;
+            }
+            else
+            {
+                vx = speed;
+                vy = 0;
+            }
+
+            velocityX[i] = vx;
+            velocityY[i] = vy;
+            x[i] += vx * dt;
+            y[i] += vy * dt;
+            accelerationX[i] = 0;
+            accelerationY[i] = 0;
+        }
+    }
+
+    /**
+     * Move every entity that has moved completely beyond one edge of the screen,
+     *   so that it reappears by the opposite edge (see {@link FinalSprite#wrapToScreen(double, double)}).
+     * @param screenWidth width of screen
+     * @param screenHeight height of screen
+     */
+    public void wrapToScreen(double screenWidth, double screenHeight)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            double halfWidth = width[i] / 2;
+            double halfHeight = height[i] / 2;
+            if (x[i] + halfWidth < 0)
+                x[i] = screenWidth + halfWidth;
+            if (x[i] - halfWidth > screenWidth)
+                x[i] = -halfWidth;
+            if (y[i] + halfHeight < 0)
+                y[i] = screenHeight + halfHeight;
+            if (y[i] - halfHeight > screenHeight)
+                y[i] = -halfHeight;
+        }
+    }
+
+    /**
+     * Keep every entity completely within the screen, by adjusting positions if necessary
+     *   (see {@link FinalSprite#boundToScreen(double, double)}).
+     * @param screenWidth width of screen
+     * @param screenHeight height of screen
+     */
+    public void boundToScreen(double screenWidth, double screenHeight)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            double halfWidth = width[i] / 2;
+            double halfHeight = height[i] / 2;
+            if (x[i] - halfWidth < 0)
+                x[i] = halfWidth;
+            if (x[i] + halfWidth > screenWidth)
+                x[i] = screenWidth - halfWidth;
+            if (y[i] - halfHeight < 0)
+                y[i] = halfHeight;
+            if (y[i] + halfHeight > screenHeight)
+                y[i] = screenHeight - halfHeight;
+        }
+    }
+
+    /**
+     * Destroy every entity that has moved completely off the screen
+     *   (see {@link ActionFactory#destroyOutsideScreen(double, double)}).
+     * @param screenWidth width of screen
+     * @param screenHeight height of screen
+     * @return number of entities destroyed
+     */
+    public int destroyOutsideScreen(double screenWidth, double screenHeight)
+    {
+        int destroyed = 0;
+        // backwards, so that entities moved by destroy() have already been checked
+        for (int i = count - 1; i >= 0; i--)
+        {
+            if ( !overlaps(i, 0, 0, screenWidth, screenHeight) )
+            {
+                destroy( id[i] );
+                destroyed++;
+            }
+        }
+        return destroyed;
+    }
+
+    /**
+     * Find the visible entities (with a texture) that overlap a rectangle, such as the screen;
+     *   {@link #draw(Graphics2D)} draws only these entities.
+     * @param left left edge of rectangle
+     * @param top top edge of rectangle
+     * @param right right edge of rectangle
+     * @param bottom bottom edge of rectangle
+     * @return number of entities found
+     */
+    public int cull(double left, double top, double right, double bottom)
+    {
+        int found = 0;
+        for (int i = 0; i < count; i++)
+        {
+            // a rotated entity may extend up to half its diagonal from its center,
+            //   beyond its boundary rectangle (along each axis, by half the diagonal minus half that side)
+            double marginX = 0;
+            double marginY = 0;
+            if (angle[i] != 0)
+            {
+                double halfDiagonal = Math.sqrt(width[i] * width[i] + height[i] * height[i]) / 2;
+                marginX = halfDiagonal - width[i] / 2;
+                marginY = halfDiagonal - height[i] / 2;
+            }
+            if ( visible[i] && texture[i] != null
+                && overlaps(i, left - marginX, top - marginY, right + marginX, bottom + marginY) )
+            {
+                culledIndex[found] = i;
+                found++;
+            }
+        }
+        culledCount = found;
+        return found;
+    }
+
+    /**
+     * Draw the entities found by the most recent call to {@link #cull(double, double, double, double)}.
+     * @param g graphics context to draw on
+     * @return number of entities drawn
+     */
+    public int draw(Graphics2D g)
+    {
+        AffineTransform base = g.getTransform();
+        Composite baseComposite = g.getComposite();
+        Object baseInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        // entities may be destroyed (and arrays replaced) by another thread while drawing
+        int[] index = culledIndex;
+        Texture[] tex = texture;
+        int drawn = 0;
+        for (int n = 0; n < culledCount && n < index.length; n++)
+        {
+            int i = index[n];
+            if (i >= tex.length || tex[i] == null)
+                continue;
+            RenderSnapshot.drawTexture(g, base, transform, tex[i], x[i], y[i], width[i], height[i],
+                angle[i], (float)opacity[i], mirrored[i], flipped[i]);
+            drawn++;
+        }
+
+        g.setTransform(base);
+        g.setComposite(baseComposite);
+        if (baseInterpolation != null)
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, baseInterpolation);
+        return drawn;
+    }
+
+    /**
+     * Find the visible entities that overlap the rectangle from (0,0) to (width, height), then draw them.
+     * @param g graphics context to draw on
+     * @param screenWidth width of screen
+     * @param screenHeight height of screen
+     * @return number of entities drawn
+     */
+    public int draw(Graphics2D g, double screenWidth, double screenHeight)
+    {
+        cull(0, 0, screenWidth, screenHeight);
+        return draw(g);
+    }
+
+    /**
+     * Create an object for working with an existing entity using methods similar to {@link FinalSprite}.
+     * @param entityId id of the entity
+     * @return an object referring to the entity
+     */
+    public EntitySprite getSprite(int entityId)
+    {
+        getIndex(entityId);
+        return new EntitySprite(this, entityId);
+    }
+
+    /**
+     * Create an entity, and an object for working with it using methods similar to {@link FinalSprite}.
+     * @return an object referring to the new entity
+     */
+    public EntitySprite createSprite()
+    {
+        return new EntitySprite(this, create());
+    }
+}
@@ -5,7 +5,6 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.image.BufferStrategy;
-import java.util.ArrayList;
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
@@ -16,35 +15,21 @@ import javax.swing.SwingUtilities;
  */
 public abstract class FinalGame extends Game
 {
-	/**
-	 * default width of game canvas. may change if desired.
-	 */
-	public static int windowWidth  = 800;
-	
-	/**
-	 * default height of game canvas. may change if desired.
-	 */
-	public static int windowHeight = 600;
-	
     /**
      * area where game graphics are displayed
      */
     Canvas canvas;
 
 	/**
-	 * Used to store and update the state of the keyboard and mouse.
+	 * Controls the timing of each frame and records presentation statistics.
+	 * May be replaced (before calling {@link #start()}) to change the pacing strategy.
 	 */
-	public Input input;
-
-    /**
-     * timestamp for start of previous game loop; used to calculate {@link #deltaTime}
-     */
-	long previousTime;
+	public FramePacer framePacer = new FramePacer(60);
 
 	/**
-	 * amount of time that has passed since the last iteration of the game loop
+	 * Number of buffers used for rendering: 2 (double buffering) or 3 (triple buffering).
 	 */
-	public double deltaTime; 
+	public int bufferCount = 2;
 
     /**
      * Initialize objects used in this game.
@@ -61,6 +46,15 @@ public abstract class FinalGame extends Game
 	 */
 	public void update(double dt)
     {    }
+
+    /**
+     * Calls {@link #create()}; used by {@link HeadlessRunner}.
+     */
+    @Override
+    void initializeGame()
+    {
+        create();
+    }
     
         /**
      * Add a sprite to the group with the given name.
@@ -72,6 +66,109 @@ public abstract class FinalGame extends Game
         getGroup( groupName ).addFinalSprite( finalSprite );
     }
 
+    /**
+     * Set the number of frames per second the game loop should run.
+     * @param fps number of frames per second (e.g. 60, 120, 144)
+     */
+    public void setTargetFPS(int fps)
+    {
+        this.targetFPS = fps;
+        this.framePacer.setTargetFPS(fps);
+    }
+
+    /**
+     * Set the number of buffers used for rendering.
+     * Triple buffering allows rendering of the next frame to begin
+     *  before the previous frame has been shown, at the cost of latency.
+     * @param count 2 (double buffering) or 3 (triple buffering)
+     */
+    public void setBufferCount(int count)
+    {
+        if (count != 2 && count != 3)
+            throw new IllegalArgumentException("Buffer count must be 2 or 3: " + count);
+        this.bufferCount = count;
+    }
+
+    /**
+     * Draw the background and all sprites, in all groups, in the group list.
+     * @param g2 graphics context to draw on
+     */
+    public void render(Graphics2D g2)
+    {
+        g2.setColor(Color.GRAY);
+        g2.fillRect(0, 0, this.windowWidth, this.windowHeight);
+
+        int drawCount = 0;
+        for (Group gObj : groupList) {
+            Sprite[] sprites = gObj.getSpriteArray();
+            int count = gObj.getSpriteCount();
+            for (int i = 0; i < count; i++) {
+                Sprite s = sprites[i];
+                s.draw(g2);
+                if (s.visible)
+                    drawCount++;
+            }
+        }
+        for (EntityStore store : entityStoreList)
+            drawCount += store.draw(g2, this.windowWidth, this.windowHeight);
+        metrics.drawCount = drawCount;
+    }
+
+    /**
+     * Draw a frame and show it on screen;
+     *   repeat if the contents of the buffers were lost in the meantime.
+     * @param bs buffer strategy of the canvas
+     * @param snapshot snapshot to draw; if <code>null</code>, groups are drawn directly
+     * @param pacer records presentation statistics
+     */
+    void present(BufferStrategy bs, RenderSnapshot snapshot, FramePacer pacer)
+    {
+        AllocationTracker tracker = metrics.allocationTracker;
+        long startBytes = (tracker != null) ? AllocationTracker.getThreadAllocatedBytes() : 0;
+        int contentsLost = 0;
+        long renderTime = 0;
+        long presentTime;
+        String previousSection = HitchDetector.enterSection("render");
+        do {
+            do {
+                HitchDetector.enterSection("render");
+                long renderStart = System.nanoTime();
+                Graphics g = bs.getDrawGraphics();
+                try {
+                    if (snapshot == null) {
+                        render((Graphics2D) g);
+                        overlay.draw((Graphics2D) g, metrics, groupList);
+                    } else {
+                        g.setColor(Color.GRAY);
+                        g.fillRect(0, 0, this.windowWidth, this.windowHeight);
+                        snapshot.draw((Graphics2D) g);
+                        metrics.drawCount = snapshot.spriteCount;
+                        overlay.draw((Graphics2D) g, metrics, snapshot);
+                    }
+                } finally {
+                    g.dispose();
+                }
+                renderTime += System.nanoTime() - renderStart;
+            } while (bs.contentsRestored());
+
+            HitchDetector.enterSection("present");
+            presentTime = System.nanoTime();
+            bs.show();
+            if (bs.contentsLost())
+                contentsLost++;
+        } while (bs.contentsLost());
+
+        long presentDuration = System.nanoTime() - presentTime;
+        HitchDetector.exitSection(previousSection);
+        pacer.recordPresent(presentDuration, contentsLost);
+
+        // recorded directly, since rendering may run on its own thread
+        metrics.record(FrameMetrics.RENDER, renderTime);
+        metrics.record(FrameMetrics.PRESENT, presentDuration);
+        if (tracker != null)
+            tracker.record(FrameMetrics.RENDER, AllocationTracker.getThreadAllocatedBytes() - startBytes);
+    }
+
 	/**
 	 *  Initializes the window, Input and Group objects, 
 	 *  and manages the life cycle of the game (initialization and game loop).
@@ -87,7 +184,7 @@ public abstract class FinalGame extends Game
             frame.setResizable(false);
 
             this.canvas = new Canvas();
-            this.canvas.setSize(FinalGame.windowWidth, FinalGame.windowHeight);
+            this.canvas.setSize(this.windowWidth, this.windowHeight);
 
             frame.add(this.canvas);
             frame.pack();
@@ -97,7 +194,7 @@ public abstract class FinalGame extends Game
             this.input = new Input(frame);
 
             // initialize the group list used by Game
-            this.groupList = new ArrayList<Group>();
+            this.resetGroups();
 
             this.create();
 
@@ -105,49 +202,59 @@ public abstract class FinalGame extends Game
             this.previousTime = System.nanoTime();
 
             // create buffer strategy for smooth rendering
-            this.canvas.createBufferStrategy(2);
+            this.canvas.createBufferStrategy(this.bufferCount);
             final BufferStrategy bs = this.canvas.getBufferStrategy();
 
+            if (threadedRendering)
+                snapshotBuffer = new SnapshotBuffer();
+
             Thread loop = new Thread(() -> {
-                while (true) {
+                while (!Thread.currentThread().isInterrupted()) {
+                    // wait until the deadline for the next frame
+                    metrics.endFrameWork();
+                    framePacer.waitForNextFrame();
+                    metrics.beginFrame();
+
                     long currentTime = System.nanoTime();
                     self.deltaTime = (currentTime - self.previousTime) / 1_000_000_000.0;
                     self.previousTime = currentTime;
 
                     // process input
+                    metrics.beginPhase(FrameMetrics.INPUT);
                     self.input.update();
+                    overlay.checkToggle(self.input);
+                    metrics.endPhase(FrameMetrics.INPUT);
 
                     // update game state (user-defined)
+                    metrics.beginPhase(FrameMetrics.UPDATE);
                     update(self.deltaTime);
+                    reapRemovedSprites();
+                    metrics.endPhase(FrameMetrics.UPDATE);
 
-                    // render: draw all sprites in all groups
-                    Graphics g = bs.getDrawGraphics();
-                    try {
-                        Graphics2D g2 = (Graphics2D) g;
-                        g2.setColor(Color.GRAY);
-                        g2.fillRect(0, 0, FinalGame.windowWidth, FinalGame.windowHeight);
-
-                        for (Group gObj : groupList) {
-                            for ( FinalSprite s : gObj.getFinalSpriteList() ) {
-                                s.draw(g2);
-                            }
-                        }
-                    } finally {
-                        g.dispose();
-                    }
-                    if (!bs.contentsLost()) {
-                        bs.show();
-                    }
-
-                    // sleep to cap frame rate ~60 FPS
-                    try {
-                        Thread.sleep(16);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
+                    // render: draw all sprites in all groups,
+                    //   or pass a snapshot of them to the render thread
+                    if (threadedRendering)
+                        publishSnapshot();
+                    else
+                        present(bs, null, framePacer);
                 }
             }, "Game-Loop");
+
+            if (threadedRendering) {
+                // render the latest snapshot while the next update runs
+                FramePacer renderPacer = new FramePacer(targetFPS);
+                Thread renderLoop = new Thread(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        renderPacer.waitForNextFrame();
+                        RenderSnapshot snapshot = snapshotBuffer.acquireLatest();
+                        if (snapshot != null)
+                            present(bs, snapshot, renderPacer);
+                    }
+                }, "Game-Render");
+                renderLoop.setDaemon(true);
+                renderLoop.start();
+            }
+
             loop.setDaemon(true);
             loop.start();
         });
@@ -1,75 +1,14 @@
 package bagel;
 
 import java.util.ArrayList;
-import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
 
 
 /**
  * Sprites represent game world entities: characters, environment, items, obstacles, etc.
+ * Adds physics, actions and animation to the properties of {@link Sprite}.
  */
 public class FinalSprite extends Sprite
 {
-	
-	// core properties
-	
-	/**
-	 * x-coordinate of center of sprite
-	 */
-	public double x;
-	
-	/**
-	 * y-coordinate of center of sprite
-	 */
-	public double y;
-	
-	/**
-	 * image displayed when rendering this sprite
-	 */
-	Texture texture;
-	
-	/**
-	 * width of sprite
-	 */
-	public double width;
-	
-	/**
-	 * height of sprite
-	 */
-	public double height;
-	
-	/**
-	 * determines if sprite will be visible
-	 */
-	public boolean visible;
-
-	/**
-	 * shape used for collision
-	 */
-	Rectangle boundary;
-
-	// graphics properties
-	
-	/**
-	 * angle of rotation of the texture
-	 */
-	public double angle;
-	
-	/**
-	 * amount of transparency; value from 0.0 (fully transparent) to 1.0 (fully opaque)
-	 */
-	public double opacity; 
-	
-	/**
-	 *  determines whether texture is reversed along the x direction
-	 */
-	public boolean mirrored;
-	
-	/**
-	 *  determines whether texture is reversed along the y direction
-	 */
-	public boolean flipped;
-
 	// physics
 	
 	/**
@@ -91,23 +30,15 @@ public class FinalSprite extends Sprite
 	 */
 	public Animation animation;
 
+	// physics object kept when a pooled sprite is removed, and reused by setPhysics (see SpritePool)
+	Physics sparePhysics;
+
 	/**
 	 * initialize default values of sprite properties
 	 */
 	public FinalSprite()
 	{  
-		this.x = 0;
-		this.y = 0;
-		this.visible  = true;
-
-		// collision
-		this.boundary = new Rectangle();
-
-		// graphics
-		this.opacity  = 1.00;
-		this.angle = 0;
-		this.mirrored = false;
-		this.flipped  = false;
+		super();
 
 		this.physics   = null;
 		this.animation = null;
@@ -116,160 +47,61 @@ public class FinalSprite extends Sprite
 		this.actionList = new ArrayList<Action>();
 	}
 
+	// create a sprite whose action list has room for the given number of actions
+	//   (used by Prefab, which knows how many actions each sprite is given)
+	FinalSprite(int actionCapacity)
+	{
+		super();
+
+		this.physics   = null;
+		this.animation = null;
+		this.actionList = new ArrayList<Action>(actionCapacity);
+	}
+
 	// basic methods
 
 	/**
 	 * Remove this sprite from the game.
 	 * (In practice, this means removing all references to it,
 	 *  so that it can be garbage collected.)
+	 * The sprite stops being drawn and updated immediately, and is taken out of
+	 *  every group created by the game at the end of the current frame.
+	 * A sprite acquired from a {@link SpritePool} is then returned to the pool,
+	 *  and must not be used again.
 	 */
 	public void remove()
 	{
+		if (this.pool != null && this.physics != null && this.physics.getClass() == Physics.class)
+			this.sparePhysics = this.physics;
 		this.visible = false;
 		this.texture = null;
 		this.physics = null;
 		this.animation = null;
 		this.actionList.clear();
-		this.actionList = null;
+		markRemoved();
 	}
 
-	/**
-	 * Set the coordinates of the center of this sprite.
-	 * @param x x-coordinate of center of sprite
-	 * @param y y-coordinate of center of sprite
-	 */
-	public void setPosition(double x, double y)
-	{
-		this.x = x;
-		this.y = y;
-	}
-
-	/**
-	 * Move this sprite by the specified amounts.
-	 * @param deltaX amount to move sprite along x direction
-	 * @param deltaY amount to move sprite along y direction
-	 */
-	public void moveBy(double deltaX, double deltaY)
-	{
-		this.x += deltaX;
-		this.y += deltaY;
-	}   
-
-	/**
-	 * Set the texture to be displayed when rendering this sprite.
-	 * Also sets width and height of this sprite.
-	 * @param tex texture to use for this sprite
-	 */
-	public void setTexture(Texture tex)
-	{
-		this.texture = tex;
-		this.width   = tex.region.width;
-		this.height  = tex.region.height;
-	}
-
-	/**
-	 * Set size to use when for boundary and when drawing this sprite
-	 * @param width width of sprite
-	 * @param height height of sprite
-	 */
-	public void setSize(double width, double height)
+	// restore the default values of sprite properties, keeping the objects this sprite owns
+	//   (boundary, action list, spare physics); used by SpritePool.acquire
+	void reset()
 	{
-		this.width = width;
-		this.height = height;
-	}
-	
-	/**
-     * Render this sprite to a canvas using specified parameters
-     */
-	public void draw(Graphics2D context)
-	{
-		if ( !this.visible )
-			return;
-
-		double A = this.angle * Math.PI/180;
-		double scaleX = 1;
-		double scaleY = 1;
-		if (this.mirrored)
-			scaleX *= -1;
-		if (this.flipped)
-			scaleY *= -1;
-		//double cosA = Math.cos(A);
-		//double sinA = Math.sin(A);
-		AffineTransform transformation = AffineTransform.getRotateInstance(A, this.x, this.y);
-		transformation.concatenate(AffineTransform.getScaleInstance(scaleX, scaleY));
-		transformation.concatenate(AffineTransform.getTranslateInstance(this.x, this.y));
-		context.setTransform(transformation);
-		context.setComposite(java.awt.AlphaComposite.getInstance(java.awt.AlphaComposite.SRC_OVER, (float)this.opacity));
-		
-		// image, 4 source parameters, 4 destination parameters
-		context.drawImage(this.texture.image, transformation, null);
-	}
-
-	// collision methods
-
-	/**
-	 * Get boundary shape for this sprite, adjusted according to current position.
-	 * Angle of rotation has no effect on the boundary.
-	 * @return boundary shape for this sprite
-	 */
-	Rectangle getBoundary()
-	{
-		this.boundary.setValues(this.x - this.width/2, this.y - this.height/2, this.width, this.height);
-		return this.boundary;
-	}
-
-	/**
-	 * Check if this sprite is overlapping another sprite.
-	 * @param other sprite to check for overlap with
-	 * @return true if this sprite overlaps other sprite
-	 */
-	public boolean isOverlapping(FinalSprite other)
-	{
-		return this.getBoundary().isOverlapping( other.getBoundary() );
-	}
-
-	/**
-	 * Prevent this sprite from overlapping another sprite.
-	 * @param other sprite to prevent overlap with
-	 */
-	public void preventOverlap(FinalSprite other)
-	{
-		if ( this.isOverlapping(other) )
-		{
-			Vector mtv = this.getBoundary().getMinTranslationVector( other.getBoundary() );
-			this.moveBy(mtv.x, mtv.y);
-		}
-	}
-
-	// angle methods
-
-	/**
-	 * Rotate sprite by the specified angle.
-	 * @param deltaAngle the angle (in degrees) to rotate this sprite
-	 */
-	public void rotateBy(double deltaAngle)
-	{
-		this.angle += deltaAngle;
-	}
+		this.x = 0;
+		this.y = 0;
+		this.width = 0;
+		this.height = 0;
+		this.visible = true;
+		this.removed = false;
+		this.hasPreviousState = false;
 
-	/** 
-	 * Move sprite by the specified distance at the specified angle.
-	 * @param distance the distance to move this sprite
-	 * @param angleDegrees the angle (in degrees) along which to move this sprite
-	 */
-	public void moveAtAngle(double distance, double angleDegrees)
-	{
-		this.x += distance * Math.cos(angleDegrees * Math.PI/180);
-		this.y += distance * Math.sin(angleDegrees * Math.PI/180);
-	}
+		this.texture = null;
+		this.opacity = 1.00;
+		this.angle = 0;
+		this.mirrored = false;
+		this.flipped = false;
 
-	/**
-	 * Move sprite forward by the specified distance at current angle.
-	 * @param distance the distance to move this sprite
-	 */
-	public void moveForward(double distance)
-	{
-		this.moveAtAngle(distance, this.angle);
+		this.physics = null;
+		this.animation = null;
+		this.actionList.clear();
 	}
 
 	// screen methods
@@ -282,6 +114,8 @@ public class FinalSprite extends Sprite
 	 */
 	public void boundToScreen(double screenWidth, double screenHeight)
 	{
+		double startX = this.x;
+		double startY = this.y;
 		if (this.x - this.width/2 < 0)
 			this.x = this.width/2;
 		if (this.x + this.width/2 > screenWidth)
@@ -290,6 +124,8 @@ public class FinalSprite extends Sprite
 			this.y = this.height/2;
 		if (this.y + this.height/2 > screenHeight)
 			this.y = screenHeight - this.height/2;
+		if (this.x != startX || this.y != startY)
+			this.snapPreviousPosition();
 	}
 
 	/**
@@ -300,6 +136,8 @@ public class FinalSprite extends Sprite
 	 */
 	public void wrapToScreen(double screenWidth, double screenHeight)
 	{
+		double startX = this.x;
+		double startY = this.y;
 		if (this.x + this.width/2 < 0)
 			this.x = screenWidth + this.width/2;
 		if (this.x - this.width/2 > screenWidth)
@@ -308,6 +146,9 @@ public class FinalSprite extends Sprite
 			this.y = screenHeight + this.height/2;
 		if (this.y - this.height/2 > screenHeight)
 			this.y = -this.height/2;
+		// drawn at the opposite edge at once, rather than moving across the screen
+		if (this.x != startX || this.y != startY)
+			this.snapPreviousPosition();
 	}
 
 	/**
@@ -336,7 +177,14 @@ public class FinalSprite extends Sprite
      */
 	public void setPhysics(double accValue, double maxSpeed, double decValue)
 	{
-		this.physics = new Physics(accValue, maxSpeed, decValue);
+		if (this.sparePhysics != null)
+		{
+			this.physics = this.sparePhysics;
+			this.sparePhysics = null;
+			this.physics.reset(accValue, maxSpeed, decValue);
+		}
+		else
+			this.physics = new Physics(accValue, maxSpeed, decValue);
 	}
 
 	/**
@@ -394,6 +242,34 @@ public class FinalSprite extends Sprite
 	 */
 
 	public void act(double deltaTime)
+	{
+		act(deltaTime, null);
+	}
+
+	/**
+	 *  Update this sprite, measuring the cost if a {@link Profiler} is running.
+	 *  @param deltaTime amount of time that has passed since the last iteration of the game loop
+	 *  @param group group being updated (reported by the profiler); <code>null</code> if unknown
+	 */
+	void act(double deltaTime, Group group)
+	{
+		// removed sprites stay in their groups until the end of the frame
+		if (this.removed)
+			return;
+
+		Profiler profiler = Profiler.active;
+		if (profiler != null && profiler.isSampled())
+			profiler.profileAct(this, group, deltaTime);
+		else
+			performAct(deltaTime, null);
+	}
+
+	/**
+	 *  Update physics, animation, and actions.
+	 *  @param deltaTime amount of time that has passed since the last iteration of the game loop
+	 *  @param profiler measures each action if not <code>null</code>
+	 */
+	void performAct(double deltaTime, Profiler profiler)
 	{
 		// update physics, position (based on velocity and acceleration)
 		//   if it has been initialized for this sprite
@@ -419,11 +295,25 @@ public class FinalSprite extends Sprite
 		
 		// update all actions (in parallel, by default)
 		ArrayList<Action> actionListCopy = new ArrayList<Action>(this.actionList);
+		// when profiling, the end of one action is the start of the next
+		long markTime  = (profiler == null) ? 0 : System.nanoTime();
+		long markBytes = (profiler == null) ? 0 : AllocationTracker.getThreadAllocatedBytes();
 		for (Action a : actionListCopy)
 		{
 			boolean finished = a.apply(this, deltaTime);
+			if (profiler != null)
+			{
+				long time  = System.nanoTime();
+				long bytes = AllocationTracker.getThreadAllocatedBytes();
+				profiler.recordAction(a, time - markTime, bytes - markBytes);
+				markTime  = time;
+				markBytes = bytes;
+			}
 			if (finished)
 				this.actionList.remove(a);
+			// an action removed this sprite; the remaining actions no longer apply
+			if (this.removed)
+				break;
 		}
 	}
 
@@ -0,0 +1,88 @@
+package bagel;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ *  Java Flight Recorder event recorded once per frame by {@link FrameMetrics},
+ *  containing the time spent in each phase of the frame.
+ *  The duration of the event is the whole frame.
+ *  <br><br>
+ *  Disabled by default; enable it in a recording setting, for example:
+ * <pre>{@code
+ * java -XX:StartFlightRecording:filename=game.jfr,+bagel.Frame#enabled=true MyGame
+ * }</pre>
+ */
+@Name("bagel.Frame")
+@Label("Frame")
+@Category({"Bagel", "Game Loop"})
+@Description("Time spent in each phase of a frame")
+@Enabled(false)
+public class FrameEvent extends Event
+{
+    // checked before creating an event, so that nothing is created when disabled
+    static final EventType type = EventType.getEventType(FrameEvent.class);
+
+    /**
+     * number of the frame
+     */
+    @Label("Frame Number")
+    public long frameNumber;
+
+    /**
+     * time spent processing input
+     */
+    @Label("Input")
+    @Timespan(Timespan.NANOSECONDS)
+    public long inputTime;
+
+    /**
+     * time spent updating game state
+     */
+    @Label("Update")
+    @Timespan(Timespan.NANOSECONDS)
+    public long updateTime;
+
+    /**
+     * time spent drawing sprites (most recent render, which may run on another thread)
+     */
+    @Label("Render")
+    @Timespan(Timespan.NANOSECONDS)
+    public long renderTime;
+
+    /**
+     * time spent showing the drawn image on screen (most recent present)
+     */
+    @Label("Present")
+    @Timespan(Timespan.NANOSECONDS)
+    public long presentTime;
+
+    /**
+     * number of sprites drawn in the most recently rendered frame
+     */
+    @Label("Draw Count")
+    public int drawCount;
+
+    /**
+     * bytes allocated by the game loop thread during the frame; 0 unless allocation tracking is enabled
+     */
+    @Label("Allocated")
+    @DataAmount
+    public long allocatedBytes;
+
+    /**
+     * Determine if frame events are being recorded.
+     * @return true if frame events are enabled
+     */
+    public static boolean isTypeEnabled()
+    {
+        return type.isEnabled();
+    }
+}
@@ -0,0 +1,446 @@
+package bagel;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ *  Records how long each phase of each frame takes
+ *  (input, update, render, present, and the whole frame)
+ *  in a {@link Histogram} per phase, so that occasional slow frames
+ *  can be found instead of being hidden in an average.
+ *  <br><br>
+ *  Recording does not create any objects. Statistics can be read at any time,
+ *  for example:
+ * <pre>{@code
+ * long p99 = metrics.getPercentile(FrameMetrics.UPDATE, 99);
+ * }</pre>
+ *  or written to a file periodically using {@link #setDumpFile(String, double)}.
+ *  When a Java Flight Recorder recording enables {@link FrameEvent},
+ *  one event per frame is also recorded.
+ *  All durations are measured in nanoseconds.
+ */
+public class FrameMetrics
+{
+    /**
+     * phase: processing keyboard input
+     */
+    public static final int INPUT = 0;
+
+    /**
+     * phase: updating game state
+     */
+    public static final int UPDATE = 1;
+
+    /**
+     * phase: drawing sprites
+     */
+    public static final int RENDER = 2;
+
+    /**
+     * phase: showing the drawn image on screen
+     */
+    public static final int PRESENT = 3;
+
+    /**
+     * the time from the start of one frame to the start of the next
+     */
+    public static final int FRAME = 4;
+
+    /**
+     * names of phases, used when writing statistics
+     */
+    public static final String[] PHASE_NAMES = { "input", "update", "render", "present", "frame" };
+
+    // one histogram per phase
+    Histogram[] histograms;
+
+    // time at which the current run of each phase started
+    long[] phaseStart;
+
+    // total time spent in each phase during the current frame (a phase may run several times per frame)
+    long[] phaseNanos;
+    boolean[] phaseUsed;
+
+    // most recently recorded duration of each phase
+    long[] lastNanos;
+
+    // time at which the current frame started
+    long frameStart;
+
+    // Flight Recorder event for the current frame; null when frame events are disabled
+    FrameEvent frameEvent;
+
+    /**
+     * number of sprites drawn in the most recently rendered frame
+     */
+    public int drawCount;
+
+    /**
+     * number of overlap checks (see {@link Sprite#isOverlapping(Sprite)}) made while updating the most recent frame;
+     *   only counted while a game writes telemetry (see {@link Game#setTelemetryFile(String, int)})
+     */
+    public long lastOverlapChecks;
+
+    // overlap checks made during the current frame: on the updating thread during the update phase
+    //   (counted from the thread's count at the start of the phase), plus those made by parallel updates
+    long frameOverlapChecks;
+    long updateOverlapStart;
+
+    /**
+     * number of frames recorded
+     */
+    public long frameCount;
+
+    // frames per second, updated once per second
+    int framesPerSecond;
+    int framesThisSecond;
+    long secondStart;
+
+    /**
+     * measures bytes allocated per frame and phase; <code>null</code> unless enabled
+     *   by {@link #setAllocationTracking(long)}
+     */
+    public AllocationTracker allocationTracker;
+
+    /**
+     * reports frames that take too long; <code>null</code> unless enabled
+     *   by {@link #setHitchDetection(double, String)}
+     */
+    public HitchDetector hitchDetector;
+
+    /**
+     * receives a record of each frame; <code>null</code> unless enabled
+     *   by {@link Game#setTelemetryFile(String, int)}
+     */
+    public TelemetryRing telemetry;
+
+    // periodic output to a file
+    String dumpFileName;
+    long dumpIntervalNanos;
+    long nextDumpTime;
+
+    /**
+     * Create empty frame metrics.
+     */
+    public FrameMetrics()
+    {
+        int phaseCount = PHASE_NAMES.length;
+        this.histograms = new Histogram[phaseCount];
+        for (int i = 0; i < phaseCount; i++)
+            this.histograms[i] = new Histogram();
+        this.phaseStart = new long[phaseCount];
+        this.phaseNanos = new long[phaseCount];
+        this.phaseUsed = new boolean[phaseCount];
+        this.lastNanos = new long[phaseCount];
+        this.frameStart = 0;
+        this.frameCount = 0;
+        this.dumpFileName = null;
+        this.allocationTracker = null;
+        this.hitchDetector = null;
+    }
+
+    /**
+     * Start measuring the number of bytes allocated during each frame and phase,
+     *   and correlating frames with garbage collection pauses.
+     * @param allocationBudget largest number of bytes a frame may allocate before it is flagged; 0 for no limit
+     */
+    public void setAllocationTracking(long allocationBudget)
+    {
+        if (allocationTracker != null)
+            allocationTracker.close();
+        allocationTracker = new AllocationTracker(allocationBudget, PHASE_NAMES.length);
+    }
+
+    /**
+     * Stop measuring allocation.
+     */
+    public void stopAllocationTracking()
+    {
+        if (allocationTracker != null)
+            allocationTracker.close();
+        allocationTracker = null;
+    }
+
+    /**
+     * Start watching for frames that take longer than the given amount of time;
+     *   the game loop thread's stack is sampled during such frames,
+     *   and a report is appended to a file (see {@link HitchDetector}).
+     * @param budgetMillis amount of time (in milliseconds) a frame may take before it is reported
+     * @param fileName name of file that reports are appended to
+     */
+    public void setHitchDetection(double budgetMillis, String fileName)
+    {
+        if (hitchDetector != null)
+            hitchDetector.stop();
+        hitchDetector = new HitchDetector( (long)(budgetMillis * 1_000_000L), fileName );
+    }
+
+    /**
+     * Stop watching for slow frames.
+     */
+    public void stopHitchDetection()
+    {
+        if (hitchDetector != null)
+            hitchDetector.stop();
+        hitchDetector = null;
+    }
+
+    /**
+     * Mark the start of a frame; also ends the previous frame, if any.
+     */
+    public void beginFrame()
+    {
+        long now = System.nanoTime();
+        if (frameStart != 0)
+            endFrame(now);
+        else
+            secondStart = now;
+        frameStart = now;
+
+        if (allocationTracker != null)
+            allocationTracker.beginFrame();
+
+        if ( FrameEvent.isTypeEnabled() )
+        {
+            frameEvent = new FrameEvent();
+            frameEvent.begin();
+        }
+
+        if (hitchDetector != null)
+            hitchDetector.beginFrame();
+    }
+
+    /**
+     * Mark the end of the work of the current frame, before the game loop waits for the next frame;
+     *   the wait is then not counted as part of the frame by hitch detection (see {@link HitchDetector}).
+     *   Frame times still run from one {@link #beginFrame()} to the next.
+     */
+    public void endFrameWork()
+    {
+        if (hitchDetector != null)
+            hitchDetector.endFrame();
+    }
+
+    // record the phases of the frame that just ended
+    void endFrame(long now)
+    {
+        histograms[FRAME].record(now - frameStart);
+        lastNanos[FRAME] = now - frameStart;
+        for (int i = 0; i < FRAME; i++)
+        {
+            if (phaseUsed[i])
+            {
+                histograms[i].record(phaseNanos[i]);
+                lastNanos[i] = phaseNanos[i];
+                phaseNanos[i] = 0;
+                phaseUsed[i] = false;
+            }
+        }
+        frameCount++;
+        lastOverlapChecks = frameOverlapChecks;
+        frameOverlapChecks = 0;
+
+        if (allocationTracker != null)
+            allocationTracker.endFrame(frameCount);
+
+        if (frameEvent != null)
+            commitFrameEvent();
+
+        if (telemetry != null)
+            telemetry.write(this);
+
+        // frames per second
+        framesThisSecond++;
+        if (now - secondStart >= 1_000_000_000L)
+        {
+            framesPerSecond = framesThisSecond;
+            framesThisSecond = 0;
+            secondStart = now;
+        }
+
+        if (dumpFileName != null && now >= nextDumpTime)
+        {
+            nextDumpTime = now + dumpIntervalNanos;
+            dump();
+        }
+    }
+
+    // record the Flight Recorder event for the frame that just ended
+    void commitFrameEvent()
+    {
+        FrameEvent event = frameEvent;
+        frameEvent = null;
+        event.end();
+        event.frameNumber = frameCount;
+        event.inputTime   = lastNanos[INPUT];
+        event.updateTime  = lastNanos[UPDATE];
+        event.renderTime  = lastNanos[RENDER];
+        event.presentTime = lastNanos[PRESENT];
+        event.drawCount   = drawCount;
+        if (allocationTracker != null)
+            event.allocatedBytes = allocationTracker.lastFrameBytes;
+        event.commit();
+    }
+
+    // add overlap checks made on other threads (see Game.actGroups); called on the game loop thread
+    void addOverlapChecks(long checks)
+    {
+        frameOverlapChecks += checks;
+    }
+
+    /**
+     * Mark the start of a phase in the current frame.
+     * @param phase the phase ({@link #INPUT}, {@link #UPDATE}, {@link #RENDER}, or {@link #PRESENT})
+     */
+    public void beginPhase(int phase)
+    {
+        if (allocationTracker != null)
+            allocationTracker.beginPhase(phase);
+        if (hitchDetector != null)
+            hitchDetector.setSection( PHASE_NAMES[phase] );
+        if (phase == UPDATE)
+            updateOverlapStart = Rectangle.overlapChecks.get()[0];
+        phaseStart[phase] = System.nanoTime();
+    }
+
+    /**
+     * Mark the end of a phase in the current frame.
+     * If a phase runs several times in one frame, the total time is recorded.
+     * @param phase the phase ({@link #INPUT}, {@link #UPDATE}, {@link #RENDER}, or {@link #PRESENT})
+     */
+    public void endPhase(int phase)
+    {
+        phaseNanos[phase] += System.nanoTime() - phaseStart[phase];
+        phaseUsed[phase] = true;
+        if (phase == UPDATE)
+            frameOverlapChecks += Rectangle.overlapChecks.get()[0] - updateOverlapStart;
+        if (allocationTracker != null)
+            allocationTracker.endPhase(phase);
+        if (hitchDetector != null)
+            hitchDetector.setSection(null);
+    }
+
+    /**
+     * Record the duration of a phase directly, rather than as part of the current frame;
+     *   used when a phase runs on a different thread than the game loop
+     *   (such as rendering on the Swing event thread).
+     *   Each phase should only be recorded by one thread.
+     * @param phase the phase
+     * @param nanos duration of the phase
+     */
+    public void record(int phase, long nanos)
+    {
+        histograms[phase].record(nanos);
+        lastNanos[phase] = nanos;
+    }
+
+    /**
+     * Get the most recently recorded duration of a phase.
+     * @param phase the phase
+     * @return duration (in nanoseconds)
+     */
+    public long getLast(int phase)
+    {
+        return lastNanos[phase];
+    }
+
+    /**
+     * Get the histogram storing the durations of a phase.
+     * @param phase the phase
+     * @return the histogram for that phase
+     */
+    public Histogram getHistogram(int phase)
+    {
+        return histograms[phase];
+    }
+
+    /**
+     * Get the duration below which the given percentage of a phase's durations fall
+     *   (for example, 50, 95, or 99).
+     * @param phase the phase
+     * @param percentile percentage, from 0 to 100
+     * @return duration (in nanoseconds)
+     */
+    public long getPercentile(int phase, double percentile)
+    {
+        return histograms[phase].getPercentile(percentile);
+    }
+
+    /**
+     * Get the longest duration of a phase.
+     * @param phase the phase
+     * @return duration (in nanoseconds)
+     */
+    public long getMax(int phase)
+    {
+        return histograms[phase].getMax();
+    }
+
+    /**
+     * Get the number of times a phase has been recorded.
+     * @param phase the phase
+     * @return number of durations recorded
+     */
+    public long getCount(int phase)
+    {
+        return histograms[phase].getCount();
+    }
+
+    /**
+     * Get the number of frames completed during the most recent full second.
+     * @return frames per second
+     */
+    public int getFramesPerSecond()
+    {
+        return framesPerSecond;
+    }
+
+    /**
+     * Remove all recorded durations.
+     */
+    public void reset()
+    {
+        for (Histogram h : histograms)
+            h.reset();
+        if (allocationTracker != null)
+            allocationTracker.reset();
+    }
+
+    /**
+     * Periodically append statistics to a file, then start recording again.
+     * Each line contains: timestamp (ms), phase, count, p50, p95, p99, max (durations in ms).
+     * @param fileName name of file to append to; <code>null</code> to stop writing
+     * @param intervalSeconds time between writes
+     */
+    public void setDumpFile(String fileName, double intervalSeconds)
+    {
+        this.dumpFileName = fileName;
+        this.dumpIntervalNanos = (long)(intervalSeconds * 1_000_000_000L);
+        this.nextDumpTime = System.nanoTime() + this.dumpIntervalNanos;
+    }
+
+    /**
+     * Append current statistics to the dump file, then remove all recorded durations.
+     */
+    public void dump()
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(dumpFileName, true)))
+        {
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < histograms.length; i++)
+            {
+                Histogram h = histograms[i];
+                out.printf("%d,%s,%d,%.3f,%.3f,%.3f,%.3f%n", time, PHASE_NAMES[i], h.getCount(),
+                    h.getPercentile(50) / 1e6, h.getPercentile(95) / 1e6,
+                    h.getPercentile(99) / 1e6, h.getMax() / 1e6);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error writing frame metrics to file: " + dumpFileName);
+            e.printStackTrace();
+        }
+        reset();
+    }
+}
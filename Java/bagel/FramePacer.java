@@ -0,0 +1,140 @@
+package bagel;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  Controls the timing of the game loop used by {@link FinalGame}:
+ *  waits until the deadline of each frame, then records how long it took
+ *  to present the frame on screen.
+ *  <br><br>
+ *  Waiting is done in two stages: the thread is parked until shortly before the deadline,
+ *  then spins for the remaining time ({@link #spinNanos}), since parking
+ *  can wake up a fraction of a millisecond late.
+ *  Subclasses may override {@link #waitForNextFrame()} to use a different strategy.
+ */
+public class FramePacer
+{
+    /**
+     * length of each frame (in nanoseconds)
+     */
+    long frameNanos;
+
+    /**
+     * amount of time before the deadline (in nanoseconds) to stop parking and start spinning
+     */
+    public long spinNanos;
+
+    /**
+     * time (from System.nanoTime) at which the next frame should start
+     */
+    long nextDeadline;
+
+    /**
+     * number of frames that started after their deadline had already passed
+     */
+    public long missedDeadlines;
+
+    /**
+     * number of times the contents of the buffer strategy were lost before being shown
+     */
+    public long contentsLostCount;
+
+    /**
+     * amount of time (in nanoseconds) taken to present the most recent frame
+     */
+    public long lastPresentNanos;
+
+    /**
+     * largest amount of time (in nanoseconds) taken to present a frame
+     */
+    public long maxPresentNanos;
+
+    /**
+     * number of frames presented
+     */
+    public long frameCount;
+
+    /**
+     * Create a frame pacer for the given frame rate.
+     * @param targetFPS number of frames per second (e.g. 60, 120, 144)
+     */
+    public FramePacer(int targetFPS)
+    {
+        this.setTargetFPS(targetFPS);
+        this.spinNanos = 300_000;
+        this.nextDeadline = 0;
+    }
+
+    /**
+     * Change the number of frames per second.
+     * @param targetFPS number of frames per second
+     */
+    public void setTargetFPS(int targetFPS)
+    {
+        this.frameNanos = 1_000_000_000L / targetFPS;
+    }
+
+    /**
+     * Get the length of each frame.
+     * @return length of each frame (in nanoseconds)
+     */
+    public long getFrameNanos()
+    {
+        return this.frameNanos;
+    }
+
+    /**
+     * Wait until the deadline of the next frame.
+     * If the deadline has already passed, the frame is counted as missed;
+     * if it was missed by more than a whole frame, the schedule restarts from now
+     * rather than running several frames back to back to catch up.
+     */
+    public void waitForNextFrame()
+    {
+        long now = System.nanoTime();
+
+        // first frame: nothing to wait for
+        if (nextDeadline == 0)
+        {
+            nextDeadline = now + frameNanos;
+            return;
+        }
+
+        if (now > nextDeadline)
+        {
+            missedDeadlines++;
+            if (now - nextDeadline > frameNanos)
+                nextDeadline = now;
+        }
+        else
+        {
+            // park until shortly before the deadline
+            long parkNanos = nextDeadline - now - spinNanos;
+            while (parkNanos > 0)
+            {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = nextDeadline - System.nanoTime() - spinNanos;
+            }
+
+            // spin for the remaining time
+            while (System.nanoTime() < nextDeadline)
+                Thread.onSpinWait();
+        }
+
+        nextDeadline += frameNanos;
+    }
+
+    /**
+     * Record data about presenting a frame on screen.
+     * @param presentNanos amount of time (in nanoseconds) taken to present the frame
+     * @param contentsLost number of times the contents were lost while rendering the frame
+     */
+    public void recordPresent(long presentNanos, int contentsLost)
+    {
+        frameCount++;
+        lastPresentNanos = presentNanos;
+        if (presentNanos > maxPresentNanos)
+            maxPresentNanos = presentNanos;
+        contentsLostCount += contentsLost;
+    }
+}
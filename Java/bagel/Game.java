@@ -1,8 +1,13 @@
 package bagel;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
@@ -28,6 +33,15 @@ public abstract class Game
     // list of groups, each of which contains a list of sprites 
     //   (to stay organized)
     public ArrayList<Group> groupList;
+
+    // groups by name, so that finding a group does not compare its name with every other group name;
+    //   groups stay in groupList (in the order they were created) for drawing
+    HashMap<String, Group> groupMap;
+
+    /**
+     * entity stores created by {@link #createEntityStore()}; drawn after all groups, in this order
+     */
+    public ArrayList<EntityStore> entityStoreList;
     
     /**
      * timestamp for start of previous game loop; used to calculate {@link #deltaTime}
@@ -44,9 +58,76 @@ public abstract class Game
 	 */
 	public double elapsedTime; 
 
-    // FPS analyze data
-    public int countFPS;
-    public double timerFPS;
+    /**
+     * number of times per second the game loop should run (update and render)
+     */
+    public int targetFPS = 60;
+
+    /**
+     * determines if the game state is updated in fixed increments of {@link #fixedDeltaTime};
+     *   see {@link #setFixedTimestep(double, int)}
+     */
+    public boolean fixedTimestep = false;
+
+    /**
+     * amount of time (in seconds) simulated by each update when using a fixed timestep
+     */
+    public double fixedDeltaTime = 1.0 / 60.0;
+
+    /**
+     * maximum number of updates that may run before each render when using a fixed timestep;
+     *   if updates take longer than the time they simulate, the remaining time is dropped
+     *   so that the game slows down instead of falling further and further behind.
+     */
+    public int maxUpdatesPerFrame = 5;
+
+    /**
+     * fraction of a fixed timestep (0.0 to 1.0) that has accumulated since the last update;
+     *   used to draw sprites between their previous and current positions;
+     *   written by the game loop thread and read when drawing (on the event dispatch thread)
+     */
+    public volatile double interpolationAlpha = 1.0;
+
+    /**
+     * determines if sprites are drawn from snapshots captured after each update,
+     *   so that drawing (on another thread) never reads sprites while they are being updated
+     *   and can overlap with the next update; see {@link RenderSnapshot}
+     */
+    public boolean threadedRendering = false;
+
+    /**
+     * passes snapshots from the update thread to the render thread
+     *   when {@link #threadedRendering} is enabled
+     */
+    public SnapshotBuffer snapshotBuffer;
+
+    /**
+     * determines if {@link #actGroups(double)} runs sprites on several threads;
+     *   see {@link #setParallelUpdate(boolean)}
+     */
+    public boolean parallelUpdate = false;
+
+    /**
+     * largest number of sprites acted on by one task during a parallel update;
+     *   larger groups are split into several tasks
+     */
+    public int parallelThreshold = 1024;
+
+    /**
+     * threads used for parallel updates
+     */
+    public ForkJoinPool updatePool = ForkJoinPool.commonPool();
+
+    /**
+     * durations of the phases of each frame (input, update, render, present);
+     *   replaces printing the number of frames per second
+     */
+    public FrameMetrics metrics = new FrameMetrics();
+
+    /**
+     * performance data drawn on top of the game; hidden until {@link PerformanceOverlay#toggleKey} is pressed
+     */
+    public PerformanceOverlay overlay = new PerformanceOverlay();
 
     public JFrame window;
     public JPanel canvas;
@@ -72,6 +153,15 @@ public abstract class Game
 
     }
 
+    /**
+     * Initialize objects used in this game, once the group list and input have been created.
+     * Calls {@link #initialize()}; used by {@link HeadlessRunner}.
+     */
+    void initializeGame()
+    {
+        initialize();
+    }
+
     public void setWindowTitle(String title)
     {
         windowTitle = title;
@@ -83,6 +173,170 @@ public abstract class Game
         windowHeight = height;
     }
 
+    /**
+     * Update the game state in fixed increments of time, independent of the rendering rate.
+     *   Sprites are drawn interpolated between their last two updated states.
+     * @param updatesPerSecond number of updates per second of game time (e.g. 60)
+     * @param maxUpdates maximum number of updates that may run before each render
+     */
+    public void setFixedTimestep(double updatesPerSecond, int maxUpdates)
+    {
+        fixedTimestep = true;
+        fixedDeltaTime = 1.0 / updatesPerSecond;
+        maxUpdatesPerFrame = maxUpdates;
+    }
+
+    /**
+     * Run {@link FinalSprite#act(double)} on several threads in {@link #actGroups(double)}.
+     * When enabled, each sprite (including its actions) must only change itself;
+     *   sprites should not share Action or Physics objects,
+     *   and Actions should not read or change other sprites.
+     * @param parallel whether sprites should be updated in parallel
+     */
+    public void setParallelUpdate(boolean parallel)
+    {
+        parallelUpdate = parallel;
+    }
+
+    /**
+     * Write a record of each frame (phase times, allocation, overlap checks,
+     *   and sprite counts of up to 16 groups) to a memory-mapped file,
+     *   which can be read while the game runs by {@link TelemetryViewer}.
+     * @param fileName name of file to create; <code>null</code> to stop writing
+     * @param capacity number of frames stored in the file before the oldest are overwritten
+     */
+    public void setTelemetryFile(String fileName, int capacity)
+    {
+        // overlap checks are counted while any game writes telemetry
+        if (fileName == null && metrics.telemetry != null)
+            Rectangle.overlapCountingGames.decrementAndGet();
+        else if (fileName != null && metrics.telemetry == null)
+            Rectangle.overlapCountingGames.incrementAndGet();
+
+        if (fileName == null)
+            metrics.telemetry = null;
+        else
+            metrics.telemetry = new TelemetryRing(fileName, capacity, 16, this);
+    }
+
+    /**
+     * Update (physics, animation, and actions of) all final sprites, in all groups;
+     *   typically called from {@link #update(double)}.
+     * A sprite contained in several of the groups is updated only once.
+     * Sprites added to or removed from groups during this method 
+     *   (for example, by actions) are added or removed once all sprites have been updated.
+     * @param dt amount of time that has passed since the last iteration of the game loop
+     */
+    public void actGroups(double dt)
+    {
+        actGroups(dt, groupList);
+    }
+
+    /**
+     * Update (physics, animation, and actions of) all final sprites in the groups with the given names;
+     *   see {@link #actGroups(double)}.
+     * @param dt amount of time that has passed since the last iteration of the game loop
+     * @param groupNames names of the groups to update
+     */
+    public void actGroups(double dt, String... groupNames)
+    {
+        ArrayList<Group> groups = new ArrayList<Group>();
+        for (String groupName : groupNames)
+            groups.add( getGroup(groupName) );
+        actGroups(dt, groups);
+    }
+
+    /**
+     * Update (physics, animation, and actions of) all final sprites in the given groups;
+     *   see {@link #actGroups(double)}.
+     * @param dt amount of time that has passed since the last iteration of the game loop
+     * @param groupHandles handles of the groups to update
+     */
+    public void actGroups(double dt, GroupHandle... groupHandles)
+    {
+        ArrayList<Group> groups = new ArrayList<Group>(groupHandles.length);
+        for (GroupHandle handle : groupHandles)
+            groups.add( getGroup(handle) );
+        actGroups(dt, groups);
+    }
+
+    // update the given groups, sequentially or in parallel
+    void actGroups(double dt, List<Group> groups)
+    {
+        for (Group group : groups)
+            group.deferChanges();
+
+        // sprites in several of the groups are only updated by the first task to reach them
+        long phase = ActTask.nextPhase();
+        try
+        {
+            if (parallelUpdate)
+            {
+                ArrayList<ActTask> taskList = new ArrayList<ActTask>();
+                for (Group group : groups)
+                    taskList.add( new ActTask(group, 0, group.getSpriteCount(), parallelThreshold, dt, phase) );
+                updatePool.invoke( new RecursiveAction()
+                {
+                    protected void compute()
+                    {
+                        invokeAll(taskList);
+                    }
+                });
+                for (ActTask task : taskList)
+                    metrics.addOverlapChecks(task.overlapChecks);
+            }
+            else
+            {
+                for (Group group : groups)
+                {
+                    ActTask task = new ActTask(group, 0, group.getSpriteCount(), Integer.MAX_VALUE, dt, phase);
+                    task.compute();
+                    metrics.addOverlapChecks(task.overlapChecks);
+                }
+            }
+        }
+        finally
+        {
+            // commit point: apply structural changes on this thread
+            for (Group group : groups)
+                group.flushChanges();
+        }
+    }
+
+    /**
+     * Draw sprites from snapshots instead of reading them directly while drawing;
+     *   see {@link #threadedRendering}. Must be called before the game starts.
+     * @param threaded whether drawing should use snapshots
+     */
+    public void setThreadedRendering(boolean threaded)
+    {
+        threadedRendering = threaded;
+    }
+
+    /**
+     * Record the time taken and bytes allocated while rendering;
+     *   rendering runs on the Swing event thread, separately from the game loop.
+     * @param renderStart time rendering started
+     * @param startBytes bytes allocated by this thread when rendering started
+     */
+    void recordRender(long renderStart, long startBytes)
+    {
+        metrics.record(FrameMetrics.RENDER, System.nanoTime() - renderStart);
+        AllocationTracker tracker = metrics.allocationTracker;
+        if (tracker != null)
+            tracker.record(FrameMetrics.RENDER, AllocationTracker.getThreadAllocatedBytes() - startBytes);
+    }
+
+    /**
+     * Capture the current state of all groups and make it available for drawing.
+     * Called by the game loop after updating, when {@link #threadedRendering} is enabled.
+     */
+    void publishSnapshot()
+    {
+        snapshotBuffer.getWriteSnapshot().capture(groupList, entityStoreList, interpolationAlpha);
+        snapshotBuffer.publish();
+    }
+
     public void run()
     {
         // create the window
@@ -95,29 +349,64 @@ public abstract class Game
         window.pack();
         window.setVisible(true);
 
-        groupList = new ArrayList<Group>();
+        resetGroups();
 
         canvas = new JPanel()
         {
             protected void paintComponent(Graphics g) 
             {
+                long renderStart = System.nanoTime();
+                AllocationTracker tracker = metrics.allocationTracker;
+                long startBytes = (tracker != null) ? AllocationTracker.getThreadAllocatedBytes() : 0;
                 super.paintComponent(g);
 
+                // draw the most recent snapshot, if drawing from snapshots
+                if (threadedRendering)
+                {
+                    RenderSnapshot snapshot = snapshotBuffer.acquireLatest();
+                    if (snapshot != null)
+                    {
+                        snapshot.draw( (Graphics2D)g );
+                        metrics.drawCount = snapshot.spriteCount;
+                        overlay.draw( (Graphics2D)g, metrics, snapshot );
+                    }
+                    recordRender(renderStart, startBytes);
+                    return;
+                }
+
                 // draw all sprites, in all groups, in the group list.
+                int drawCount = 0;
                 for (Group group : groupList)
                 {
                     // update all sprites within the group
                     // g.update( 1.0 / 60.0 );
-                    for ( Sprite sprite : group.getSpriteList() )
+
+                    // read the sprite array directly (without copying); the game loop may
+                    //   change the group meanwhile, so skip positions emptied by removals
+                    Sprite[] sprites = group.getSpriteArray();
+                    int count = Math.min( group.getSpriteCount(), sprites.length );
+                    for (int i = 0; i < count; i++)
                     {
+                        Sprite sprite = sprites[i];
+                        if (sprite == null)
+                            continue;
+
                         // if destroy function was called,
                         //  remove sprite from the group that contains it.
                         // if (s.destroySignal == true)
                         //     g.removeSprite(s);
                             
-                        sprite.draw(g);
+                        sprite.draw(g, interpolationAlpha);
+                        if (sprite.visible)
+                            drawCount++;
                     }
                 }
+                for (EntityStore store : entityStoreList)
+                    drawCount += store.draw( (Graphics2D)g, windowWidth, windowHeight );
+                metrics.drawCount = drawCount;
+                overlay.draw( (Graphics2D)g, metrics, groupList );
+
+                recordRender(renderStart, startBytes);
             }
         };
 
@@ -130,15 +419,31 @@ public abstract class Game
         elapsedTime = 0;
         previousTime = System.currentTimeMillis();
 
+        if (threadedRendering)
+            snapshotBuffer = new SnapshotBuffer();
+
         initialize();
 
-        int targetFPS = 60;
+        if (fixedTimestep)
+            runFixedTimestep();
+        else
+            runVariableTimestep();
+    }
+
+    /**
+     * Game loop: update once per frame, using the time that has passed
+     *   since the previous frame.
+     */
+    private void runVariableTimestep()
+    {
         int loopDuration = 1000 / targetFPS;
 
         while (true) 
         {
             if (System.currentTimeMillis() - previousTime > loopDuration) 
             {
+                metrics.beginFrame();
+
                 window.repaint();
 
                 // calculate time passed
@@ -147,23 +452,21 @@ public abstract class Game
                 previousTime = currentTime;
                 elapsedTime += deltaTime;
 
-                // FPS calculations
-                countFPS++;
-                timerFPS += deltaTime;
-
-                // FPS check
-                if (timerFPS >= 1.0)
-                {
-                    System.out.println("FPS : " + countFPS);
-                    countFPS = 0;
-                    timerFPS = 0;
-                }
-
                 // process input
+                metrics.beginPhase(FrameMetrics.INPUT);
                 input.update();
+                overlay.checkToggle(input);
+                metrics.endPhase(FrameMetrics.INPUT);
 
                 // update game state
+                metrics.beginPhase(FrameMetrics.UPDATE);
                 update(deltaTime);
+                reapRemovedSprites();
+                metrics.endPhase(FrameMetrics.UPDATE);
+
+                if (threadedRendering)
+                    publishSnapshot();
+                metrics.endFrameWork();
             }
             else
             {
@@ -177,10 +480,126 @@ public abstract class Game
                 }
             }
         }
+    }
+
+    /**
+     * Game loop: accumulate the time that has passed and update in steps of
+     *   {@link #fixedDeltaTime}, then render once, interpolated by the leftover time.
+     */
+    private void runFixedTimestep()
+    {
+        long stepNanos  = (long)(fixedDeltaTime * 1_000_000_000L);
+        long frameNanos = 1_000_000_000L / targetFPS;
+        long accumulator = 0;
+        long previousNanos = System.nanoTime();
+
+        while (true) 
+        {
+            metrics.beginFrame();
+
+            long currentNanos = System.nanoTime();
+            deltaTime = (currentNanos - previousNanos) / 1_000_000_000.0;
+            accumulator += currentNanos - previousNanos;
+            previousNanos = currentNanos;
+
+            int updateCount = 0;
+            while (accumulator >= stepNanos && updateCount < maxUpdatesPerFrame)
+            {
+                storePreviousState();
+
+                // process input
+                metrics.beginPhase(FrameMetrics.INPUT);
+                input.update();
+                overlay.checkToggle(input);
+                metrics.endPhase(FrameMetrics.INPUT);
+
+                // update game state
+                metrics.beginPhase(FrameMetrics.UPDATE);
+                update(fixedDeltaTime);
+                reapRemovedSprites();
+                metrics.endPhase(FrameMetrics.UPDATE);
+
+                elapsedTime += fixedDeltaTime;
+                accumulator -= stepNanos;
+                updateCount++;
+            }
+
+            // too far behind to catch up: drop the remaining whole steps
+            if (accumulator >= stepNanos)
+                accumulator %= stepNanos;
+
+            interpolationAlpha = (double)accumulator / stepNanos;
+            if (threadedRendering)
+                publishSnapshot();
+            window.repaint();
+            metrics.endFrameWork();
+
+            // wait until the next frame is due
+            long sleepNanos = frameNanos - (System.nanoTime() - currentNanos);
+            if (sleepNanos > 0)
+            {
+                try 
+                { 
+                    Thread.sleep(sleepNanos / 1_000_000, (int)(sleepNanos % 1_000_000)); 
+                }
+                catch (Exception ex)
+                { 
+                    ex.printStackTrace(); 
+                }
+            }
+        }
+    }
 
+    /**
+     * Store the current state of all sprites, in all groups,
+     *   before they are changed by the next fixed timestep update.
+     */
+    private void storePreviousState()
+    {
+        for (Group group : groupList)
+        {
+            Sprite[] sprites = group.getSpriteArray();
+            int count = group.getSpriteCount();
+            for (int i = 0; i < count; i++)
+                sprites[i].storePreviousState();
+        }
     }
 
     // methods for interacting with groups
+
+    /**
+     * Remove all groups; called when the game starts, before {@link #initialize()}.
+     */
+    void resetGroups()
+    {
+        groupList = new ArrayList<Group>();
+        groupMap = new HashMap<String, Group>();
+        entityStoreList = new ArrayList<EntityStore>();
+    }
+
+    /**
+     * Create a store for large numbers of simple sprites (see {@link EntityStore});
+     *   its entities are drawn after all groups, if they are on screen.
+     * @return the entity store that was created
+     */
+    public EntityStore createEntityStore()
+    {
+        EntityStore store = new EntityStore(1024);
+        entityStoreList.add(store);
+        return store;
+    }
+
+    /**
+     * Take removed sprites (see {@link FinalSprite#remove()}) out of all groups;
+     *   called by the game loop at the end of each update, so that removed sprites
+     *   are not iterated over in later frames. Only groups containing a removed sprite
+     *   are scanned (see {@link Group#reapRemovedSprites()}).
+     */
+    void reapRemovedSprites()
+    {
+        for (Group group : groupList)
+            group.reapRemovedSprites();
+    }
     
     /**
      * Create a new group, and add it to the list of all groups.
@@ -189,8 +608,13 @@ public abstract class Game
      */
     public Group createGroup(String groupName)
     {
+        if ( groupMap.containsKey(groupName) )
+            throw new RuntimeException("There is already a group with the name: " + groupName);
+
         Group g = new Group(groupName);
+        g.handle = new GroupHandle(groupName, groupList.size());
         groupList.add(g);
+        groupMap.put(groupName, g);
         return g;
     }
     
@@ -201,11 +625,9 @@ public abstract class Game
      */
     public Group getGroup(String groupName)
     {
-        for (Group g : groupList)
-        {
-            if ( g.getName().equals(groupName) )
-                return g;
-        }
+        Group g = groupMap.get(groupName);
+        if (g != null)
+            return g;
         
         // if this line is reached, there is no group with that name
         
@@ -218,6 +640,33 @@ public abstract class Game
         // option 3: print error and stop program (throw Exception)
         throw new RuntimeException("There is no group with the name: " + groupName);
     }
+
+    /**
+     * Get the group identified by the given handle.
+     * @param handle the handle of the group (see {@link Group#getHandle()})
+     * @return the group identified by the handle
+     */
+    public Group getGroup(GroupHandle handle)
+    {
+        if (handle.index < groupList.size())
+        {
+            Group g = groupList.get(handle.index);
+            if (g.handle == handle)
+                return g;
+        }
+        throw new RuntimeException("The group handle does not belong to this game: " + handle.name);
+    }
+
+    /**
+     * Get the handle of the group with the given name; 
+     *   the handle can be stored and used instead of the name by other group methods.
+     * @param groupName the name of the group
+     * @return the handle of the group with the given name
+     */
+    public GroupHandle getGroupHandle(String groupName)
+    {
+        return getGroup(groupName).handle;
+    }
     
     /**
      * Add a sprite to the group with the given name.
@@ -280,4 +729,92 @@ public abstract class Game
     {
         return getGroup( groupName ).getSpriteCount();
     }
+
+    /**
+     * Add a sprite to the group with the given handle.
+     * @param sprite sprite to be added
+     * @param handle handle of the group to add the sprite to
+     */
+    public void addSpriteToGroup(Sprite sprite, GroupHandle handle)
+    {
+        getGroup( handle ).addSprite( sprite );
+    }
+
+    /**
+     * Add a sprite to the group with the given handle.
+     * @param sprite sprite to be added
+     * @param handle handle of the group to add the sprite to
+     */
+    public void addFinalSpriteToGroup(FinalSprite sprite, GroupHandle handle)
+    {
+        getGroup( handle ).addSprite( sprite );
+    }
+
+    /**
+     * Remove a sprite from the group with the given handle.
+     * @param sprite the sprite to be removed
+     * @param handle handle of the group that the sprite is in
+     */
+    public void removeSpriteFromGroup(Sprite sprite, GroupHandle handle)
+    {
+        getGroup( handle ).removeSprite( sprite );
+    }
+
+    /**
+     * Get the list of sprites in the group with the given handle.
+     * @param handle handle of the group
+     * @return the list of sprites in that group
+     */
+    public ArrayList<Sprite> getGroupSpriteList(GroupHandle handle)
+    {
+        return getGroup( handle ).getSpriteList();
+    }
+
+    /**
+     * Get the list of final sprites in the group with the given handle.
+     * @param handle handle of the group
+     * @return the list of final sprites in that group
+     */
+    public ArrayList<FinalSprite> getGroupFinalSpriteList(GroupHandle handle)
+    {
+        return getGroup( handle ).getFinalSpriteList();
+    }
+
+    /**
+     * Return the number of sprites in the group with the given handle.
+     * @param handle handle of the group
+     * @return the number of sprites in the group's sprite list
+     */
+    public int getGroupSpriteCount(GroupHandle handle)
+    {
+        return getGroup( handle ).getSpriteCount();
+    }
+
+    /**
+     * Acquire a sprite from a pool (see {@link SpritePool#acquire()}) and add it to the group with the given handle.
+     * When the sprite is removed, it is returned to the pool at the end of the frame.
+     * @param pool pool to acquire the sprite from
+     * @param handle handle of the group to add the sprite to
+     * @return the sprite that was added
+     */
+    public FinalSprite spawn(SpritePool pool, GroupHandle handle)
+    {
+        FinalSprite sprite = pool.acquire();
+        getGroup( handle ).addSprite( sprite );
+        return sprite;
+    }
+
+    /**
+     * Acquire a sprite from a pool (see {@link SpritePool#acquire()}) and add it to the group with the given name.
+     * When the sprite is removed, it is returned to the pool at the end of the frame.
+     * @param pool pool to acquire the sprite from
+     * @param groupName name of the group to add the sprite to
+     * @return the sprite that was added
+     */
+    public FinalSprite spawn(SpritePool pool, String groupName)
+    {
+        FinalSprite sprite = pool.acquire();
+        getGroup( groupName ).addSprite( sprite );
+        return sprite;
+    }
 }
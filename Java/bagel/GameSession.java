@@ -0,0 +1,160 @@
+package bagel;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ *  A single {@link Game} running inside a {@link SessionHost}.
+ *  Records how much time is spent running each tick,
+ *  so that the load of each session can be monitored.
+ */
+public class GameSession
+{
+    /**
+     * runs the game without a window; use {@link HeadlessRunner#input} to simulate input
+     */
+    public HeadlessRunner runner;
+
+    /**
+     * amount of real time (in nanoseconds) between the start of consecutive ticks
+     */
+    long periodNanos;
+
+    // scheduled task that runs the ticks of this session
+    ScheduledFuture<?> future;
+
+    // tick statistics; written by the thread running the tick, read by any thread
+    volatile long tickCount;
+    volatile long totalTickNanos;
+    volatile long maxTickNanos;
+    volatile long lastTickNanos;
+
+    /**
+     * exception thrown by the game, which stopped this session; <code>null</code> if none
+     */
+    volatile Throwable failure;
+
+    /**
+     * Create a session for the given game.
+     * @param game the game to run
+     * @param ticksPerSecond number of ticks per second of real time
+     */
+    GameSession(Game game, int ticksPerSecond)
+    {
+        this.runner = new HeadlessRunner(game, 1.0 / ticksPerSecond);
+        this.periodNanos = 1_000_000_000L / ticksPerSecond;
+    }
+
+    /**
+     * Run one tick of the game and record how long it took.
+     * The game is initialized before its first tick.
+     * Called by the {@link SessionHost} executor; ticks of one session never overlap.
+     */
+    void tick()
+    {
+        if (failure != null)
+            return;
+
+        long startTime = 0;
+        try
+        {
+            // initialization (loading assets, etc.) is not counted as tick time
+            if (!runner.initialized)
+                runner.initialize();
+
+            startTime = System.nanoTime();
+            runner.tick();
+        }
+        catch (Throwable t)
+        {
+            failure = t;
+            future.cancel(false);
+            System.err.println("Session stopped: " + t);
+            t.printStackTrace();
+            return;
+        }
+        long duration = System.nanoTime() - startTime;
+
+        lastTickNanos = duration;
+        totalTickNanos += duration;
+        if (duration > maxTickNanos)
+            maxTickNanos = duration;
+        tickCount++;
+    }
+
+    /**
+     * Get the game run by this session.
+     * @return the game run by this session
+     */
+    public Game getGame()
+    {
+        return runner.game;
+    }
+
+    /**
+     * Get the number of ticks run by this session.
+     * @return the number of ticks run
+     */
+    public long getTickCount()
+    {
+        return tickCount;
+    }
+
+    /**
+     * Get the average amount of time spent running a tick.
+     * @return average tick time (in nanoseconds)
+     */
+    public long getAverageTickNanos()
+    {
+        long count = tickCount;
+        if (count == 0)
+            return 0;
+        return totalTickNanos / count;
+    }
+
+    /**
+     * Get the largest amount of time spent running a tick.
+     * @return maximum tick time (in nanoseconds)
+     */
+    public long getMaxTickNanos()
+    {
+        return maxTickNanos;
+    }
+
+    /**
+     * Get the amount of time spent running the most recent tick.
+     * @return most recent tick time (in nanoseconds)
+     */
+    public long getLastTickNanos()
+    {
+        return lastTickNanos;
+    }
+
+    /**
+     * Get the fraction of one thread used by this session:
+     *   average tick time divided by the time between ticks.
+     *   For example, 0.05 means that 20 such sessions would keep one thread busy.
+     * @return the load of this session on one thread
+     */
+    public double getLoad()
+    {
+        return (double)getAverageTickNanos() / periodNanos;
+    }
+
+    /**
+     * Get the exception that stopped this session, if any.
+     * @return the exception thrown by the game, or <code>null</code> if none
+     */
+    public Throwable getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Determine if this session is still scheduled to run.
+     * @return true if this session has not been stopped or removed
+     */
+    public boolean isRunning()
+    {
+        return !future.isDone();
+    }
+}
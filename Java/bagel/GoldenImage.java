@@ -0,0 +1,226 @@
+package bagel;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ *  Compares drawn images (for example, from {@link OffscreenRenderer}) against stored
+ *  reference ("golden") PNG files, allowing small differences caused by rounding.
+ *  <br><br>
+ *  When a reference file does not exist, the check fails (so that a missing or misnamed
+ *  reference is not mistaken for a match); to create references, set {@link #updateReferences}
+ *  (or run with <code>-Dbagel.updateGolden=true</code>), which saves each image as its reference.
+ *  When a comparison fails, the image drawn and an image of the differences are saved
+ *  next to the reference (with "-actual" and "-diff" added to the name) for inspection.
+ *  References are also replaced this way after an intended change to drawing.
+ */
+public class GoldenImage
+{
+    /**
+     * folder containing reference images
+     */
+    public String directory;
+
+    /**
+     * largest difference in any color channel (0-255) for pixels to be considered equal
+     */
+    public int channelTolerance;
+
+    /**
+     * largest fraction of pixels that may differ for images to be considered equal
+     */
+    public double maxDifferentFraction;
+
+    /**
+     * if true, images are saved as the new references instead of being compared
+     */
+    public boolean updateReferences;
+
+    /**
+     * The result of comparing an image with its reference.
+     */
+    public static class Result
+    {
+        /**
+         * true if the image matches the reference (or the reference was saved)
+         */
+        public boolean passed;
+
+        /**
+         * true if the image was saved as the reference, since {@link #updateReferences} is set
+         */
+        public boolean created;
+
+        /**
+         * number of pixels that differ by more than the tolerance
+         */
+        public long differentPixels;
+
+        /**
+         * number of pixels compared
+         */
+        public long totalPixels;
+
+        /**
+         * largest difference found in any color channel
+         */
+        public int maxChannelDifference;
+
+        /**
+         * description of the result
+         */
+        public String message;
+    }
+
+    /**
+     * Create a comparison using reference images in the given folder,
+     *   allowing a channel difference of 2 in up to 0.1% of pixels.
+     * @param directory folder containing reference images
+     */
+    public GoldenImage(String directory)
+    {
+        this.directory = directory;
+        this.channelTolerance = 2;
+        this.maxDifferentFraction = 0.001;
+        this.updateReferences = Boolean.getBoolean("bagel.updateGolden");
+    }
+
+    /**
+     * Compare an image with the reference image of the given name.
+     * @param image the image to check
+     * @param name name of the reference image (without ".png")
+     * @return the result of the comparison
+     */
+    public Result check(BufferedImage image, String name)
+    {
+        File referenceFile = new File(directory, name + ".png");
+        Result result;
+        try
+        {
+            if (updateReferences)
+            {
+                referenceFile.getAbsoluteFile().getParentFile().mkdirs();
+                ImageIO.write(image, "png", referenceFile);
+                result = new Result();
+                result.passed = true;
+                result.created = true;
+                result.totalPixels = (long)image.getWidth() * image.getHeight();
+                result.message = name + ": saved reference " + referenceFile.getPath();
+                return result;
+            }
+            if (!referenceFile.exists())
+            {
+                referenceFile.getAbsoluteFile().getParentFile().mkdirs();
+                ImageIO.write(image, "png", new File(directory, name + "-actual.png"));
+                result = new Result();
+                result.passed = false;
+                result.totalPixels = (long)image.getWidth() * image.getHeight();
+                result.message = name + ": MISSING reference " + referenceFile.getPath()
+                    + " (set updateReferences to save the image drawn as the reference)";
+                return result;
+            }
+
+            BufferedImage reference = ImageIO.read(referenceFile);
+            result = compare(reference, image, channelTolerance, maxDifferentFraction);
+            result.message = name + ": " + result.message;
+            if (!result.passed)
+            {
+                ImageIO.write(image, "png", new File(directory, name + "-actual.png"));
+                if (reference.getWidth() == image.getWidth() && reference.getHeight() == image.getHeight())
+                    ImageIO.write(createDifferenceImage(reference, image, channelTolerance), "png",
+                        new File(directory, name + "-diff.png"));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Error reading or writing reference image: " + referenceFile.getPath(), e);
+        }
+        return result;
+    }
+
+    // largest difference between the color channels (including alpha) of two pixels
+    static int channelDifference(int a, int b)
+    {
+        int max = 0;
+        for (int shift = 0; shift < 32; shift += 8)
+        {
+            int difference = Math.abs( ((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF) );
+            if (difference > max)
+                max = difference;
+        }
+        return max;
+    }
+
+    /**
+     * Compare two images of the same size pixel by pixel.
+     * @param expected the reference image
+     * @param actual the image to check
+     * @param channelTolerance largest difference in any color channel for pixels to be considered equal
+     * @param maxDifferentFraction largest fraction of pixels that may differ
+     * @return the result of the comparison
+     */
+    public static Result compare(BufferedImage expected, BufferedImage actual,
+        int channelTolerance, double maxDifferentFraction)
+    {
+        Result result = new Result();
+        if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight())
+        {
+            result.passed = false;
+            result.message = "size " + actual.getWidth() + "x" + actual.getHeight()
+                + " does not match reference size " + expected.getWidth() + "x" + expected.getHeight();
+            return result;
+        }
+
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        int[] expectedRow = new int[width];
+        int[] actualRow = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            expected.getRGB(0, y, width, 1, expectedRow, 0, width);
+            actual.getRGB(0, y, width, 1, actualRow, 0, width);
+            for (int x = 0; x < width; x++)
+            {
+                if (expectedRow[x] == actualRow[x])
+                    continue;
+                int difference = channelDifference(expectedRow[x], actualRow[x]);
+                if (difference > result.maxChannelDifference)
+                    result.maxChannelDifference = difference;
+                if (difference > channelTolerance)
+                    result.differentPixels++;
+            }
+        }
+        result.totalPixels = (long)width * height;
+        result.passed = (result.differentPixels <= maxDifferentFraction * result.totalPixels);
+        result.message = String.format("%s: %d of %d pixels differ (%.4f%%), largest channel difference %d",
+            result.passed ? "match" : "MISMATCH", result.differentPixels, result.totalPixels,
+            100.0 * result.differentPixels / result.totalPixels, result.maxChannelDifference);
+        return result;
+    }
+
+    // image showing pixels that differ by more than the tolerance in red, others faded
+    static BufferedImage createDifferenceImage(BufferedImage expected, BufferedImage actual, int channelTolerance)
+    {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        BufferedImage difference = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                if (channelDifference(a, b) > channelTolerance)
+                    difference.setRGB(x, y, 0xFFFF0000);
+                else
+                {
+                    int gray = (((a >> 16) & 0xFF) + ((a >> 8) & 0xFF) + (a & 0xFF)) / 12;
+                    difference.setRGB(x, y, 0xFF000000 | (gray << 16) | (gray << 8) | gray);
+                }
+            }
+        }
+        return difference;
+    }
+}
@@ -1,6 +1,9 @@
 package bagel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * Manage a collection of Sprites.
@@ -8,11 +11,35 @@ import java.util.ArrayList;
 public class Group
 {
     // only allow interaction with list via group methods
-    private ArrayList<Sprite> spriteList;
-    private ArrayList<FinalSprite> finalSpriteList;
+    //   (final sprites are stored in the same list);
+    //   sprites are stored in positions 0 to spriteCount - 1
+    private Sprite[] spriteArray;
+    private int spriteCount;
     
     // identify this group by a name
     public String name;
+
+    // set when the group is created by Game.createGroup; null for groups created directly
+    GroupHandle handle;
+
+    // while true, adds and removes are queued (in order) and applied by flushChanges();
+    //   sprites to add/remove, and whether each change is an add (true) or remove (false)
+    private boolean deferChanges;
+    private ArrayList<Sprite> pendingSprites;
+    private ArrayList<Boolean> pendingAdds;
+
+    // number of forEach calls in progress; while greater than zero, adds and removes are queued
+    //   and applied when the outermost forEach returns
+    private int iterationDepth;
+
+    // set when a sprite in this group is removed (see Sprite.markRemoved), so that
+    //   reapRemovedSprites only scans groups that contain removed sprites;
+    //   may be set by several threads during a parallel update
+    volatile boolean hasRemovedSprites;
+
+    // if true, removing a sprite keeps the order of the remaining sprites (slower);
+    //   otherwise the last sprite is moved into the removed sprite's position
+    private boolean stableOrder;
     
     /**
      * Constructor; initialize underlying list.
@@ -21,7 +48,13 @@ public class Group
     public Group(String groupName)
     {
         name = groupName;
-        spriteList = new ArrayList<Sprite>();
+        spriteArray = new Sprite[16];
+        spriteCount = 0;
+        deferChanges = false;
+        pendingSprites = new ArrayList<Sprite>();
+        pendingAdds = new ArrayList<Boolean>();
+        iterationDepth = 0;
+        stableOrder = false;
     }
 
     /**
@@ -34,12 +67,61 @@ public class Group
     }
 
     /**
-     * Add a sprite to this collection.
+     * Return the handle used to identify this group in the game that created it
+     *   (see {@link Game#createGroup(String)}).
+     * @return the group handle, or <code>null</code> if this group was not created by a game
+     */
+    public GroupHandle getHandle()
+    {
+        return handle;
+    }
+
+    /**
+     * Set whether removing sprites keeps the order of the remaining sprites.
+     * By default, removing a sprite moves the last sprite into its position, which takes the same
+     *   time however many sprites the group contains, but changes the order in which sprites are
+     *   drawn (which matters only if they overlap). If order matters (for example, in a group
+     *   of background and foreground images that sprites are removed from), enable stable order:
+     *   each removal then moves all later sprites, except for removals that are deferred
+     *   (during {@link #forEach(Consumer)} or {@link #deferChanges()}), which are applied together in a single pass.
+     * @param stable true to keep the order of sprites when removing
+     */
+    public void setStableOrder(boolean stable)
+    {
+        stableOrder = stable;
+    }
+
+    /**
+     * Return whether removing sprites keeps the order of the remaining sprites;
+     *   see {@link #setStableOrder(boolean)}.
+     * @return true if order is kept when removing
+     */
+    public boolean isStableOrder()
+    {
+        return stableOrder;
+    }
+
+    /**
+     * Return whether this collection contains the given sprite.
+     * @param s the sprite to look for
+     * @return true if this collection contains the sprite
+     */
+    public boolean containsSprite(Sprite s)
+    {
+        return s.getSlot(this) >= 0;
+    }
+
+    /**
+     * Add a sprite to this collection; a sprite already in this collection is not added again.
+     * If called during {@link #forEach(Consumer)}, the sprite is added when iteration is complete.
      * @param s sprite to be added
      */
     public void addSprite(Sprite s)
     {
-        spriteList.add( s );
+        if (deferChanges || iterationDepth > 0)
+            queueChange(s, true);
+        else
+            append( s );
     }
 
         /**
@@ -48,16 +130,278 @@ public class Group
      */
     public void addFinalSprite(FinalSprite s)
     {
-        finalSpriteList.add( s );
+        addSprite( s );
     }
     
     /**
-     * Remove this sprite from the collection.
+     * Remove this sprite from the collection, without searching for it
+     *   (each sprite stores its position in each group that contains it).
+     * Unless stable order is enabled (see {@link #setStableOrder(boolean)}),
+     *   the last sprite in the collection takes the removed sprite's position.
+     * If called during {@link #forEach(Consumer)}, the sprite is removed when iteration is complete.
      * @param s sprite to be removed
      */
     public void removeSprite(Sprite s)
     {
-        spriteList.remove( s );
+        if (deferChanges || iterationDepth > 0)
+            queueChange(s, false);
+        else
+            remove( s );
+    }
+
+    /**
+     * Make room for the given number of sprites, so that adding many sprites at once
+     *   (for example, with {@link Prefab#spawnAll(Group, double[])}) enlarges the collection only once.
+     * @param capacity number of sprites this collection should be able to hold
+     */
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity > spriteArray.length)
+            spriteArray = Arrays.copyOf(spriteArray, capacity);
+    }
+
+    // add a sprite to the end of the array, doubling its size when full
+    private void append(Sprite s)
+    {
+        if (s.getSlot(this) >= 0)
+            return;
+        if (spriteCount == spriteArray.length)
+            spriteArray = Arrays.copyOf(spriteArray, spriteCount * 2);
+        spriteArray[spriteCount] = s;
+        s.setSlot(this, spriteCount);
+        spriteCount++;
+        if (s.removed)
+            hasRemovedSprites = true;
+    }
+
+    // remove a sprite, found using the position it stores
+    private void remove(Sprite s)
+    {
+        int slot = s.getSlot(this);
+        if (slot < 0)
+            return;
+        s.clearSlot(this);
+        recycle(s);
+        spriteCount--;
+
+        if (stableOrder)
+        {
+            // move later sprites forward one position
+            System.arraycopy(spriteArray, slot + 1, spriteArray, slot, spriteCount - slot);
+            for (int i = slot; i < spriteCount; i++)
+                spriteArray[i].setSlot(this, i);
+        }
+        else if (slot < spriteCount)
+        {
+            // move the last sprite into the empty position
+            Sprite last = spriteArray[spriteCount];
+            spriteArray[slot] = last;
+            last.setSlot(this, slot);
+        }
+        spriteArray[spriteCount] = null;
+    }
+
+    // move sprites forward over empty (null) positions, keeping their order
+    private void compact()
+    {
+        int kept = 0;
+        for (int i = 0; i < spriteCount; i++)
+        {
+            Sprite s = spriteArray[i];
+            if (s != null)
+            {
+                if (kept != i)
+                {
+                    spriteArray[kept] = s;
+                    s.setSlot(this, kept);
+                }
+                kept++;
+            }
+        }
+        Arrays.fill(spriteArray, kept, spriteCount, null);
+        spriteCount = kept;
+    }
+
+    // return a removed sprite to its pool (see SpritePool) once no group contains it
+    private static void recycle(Sprite s)
+    {
+        if (s.pool != null && s.removed && s.memberCount == 0)
+            s.pool.recycle(s);
+    }
+
+    // store an add or remove to be applied later; 
+    //   may be called by several threads during a parallel update
+    private synchronized void queueChange(Sprite s, boolean add)
+    {
+        pendingSprites.add( s );
+        pendingAdds.add( add );
+    }
+
+    // apply queued adds and removes, in the order they were made;
+    //   when keeping order, removed positions are emptied and filled in a single pass at the end
+    private synchronized void applyChanges()
+    {
+        boolean emptied = false;
+        for (int i = 0; i < pendingSprites.size(); i++)
+        {
+            Sprite s = pendingSprites.get(i);
+            if (pendingAdds.get(i))
+                append( s );
+            else if (!stableOrder)
+                remove( s );
+            else
+            {
+                int slot = s.getSlot(this);
+                if (slot >= 0)
+                {
+                    s.clearSlot(this);
+                    recycle(s);
+                    spriteArray[slot] = null;
+                    emptied = true;
+                }
+            }
+        }
+        if (emptied)
+            compact();
+        pendingSprites.clear();
+        pendingAdds.clear();
+    }
+
+    /**
+     * Queue all adds and removes until {@link #flushChanges()} is called,
+     *   so that the sprite list does not change while it is being iterated over
+     *   (for example, by several threads; see {@link Game#actGroups(double)}).
+     */
+    public void deferChanges()
+    {
+        deferChanges = true;
+    }
+
+    /**
+     * Apply all queued adds and removes, in the order they were made,
+     *   and stop queueing changes.
+     * If called during {@link #forEach(Consumer)}, changes are applied when iteration is complete.
+     */
+    public synchronized void flushChanges()
+    {
+        deferChanges = false;
+        if (iterationDepth == 0)
+            applyChanges();
+    }
+
+    /**
+     * Perform an action with each sprite in this collection, in order, without copying the collection.
+     * Sprites added or removed by the action (or by anything it calls) are added or removed
+     *   once all sprites have been visited, so the action may safely add and remove sprites.
+     * Must only be called on the thread that updates the game.
+     * For example:
+     * <pre>{@code
+     * starfishGroup.forEach( starfish -> {
+     *     if ( turtle.isOverlapping(starfish) )
+     *         starfishGroup.removeSprite(starfish);
+     * });
+     * }</pre>
+     * @param action the action to perform with each sprite
+     */
+    public void forEach(Consumer<? super Sprite> action)
+    {
+        iterationDepth++;
+        try
+        {
+            Sprite[] array = spriteArray;
+            int count = spriteCount;
+            for (int i = 0; i < count; i++)
+                action.accept( array[i] );
+        }
+        finally
+        {
+            iterationDepth--;
+            if (iterationDepth == 0 && !deferChanges)
+                applyChanges();
+        }
+    }
+
+    /**
+     * Perform an action with each final sprite in this collection, in order, without copying the collection;
+     *   see {@link #forEach(Consumer)}.
+     * @param action the action to perform with each final sprite
+     */
+    public void forEachFinalSprite(Consumer<? super FinalSprite> action)
+    {
+        iterationDepth++;
+        try
+        {
+            Sprite[] array = spriteArray;
+            int count = spriteCount;
+            for (int i = 0; i < count; i++)
+            {
+                if (array[i] instanceof FinalSprite)
+                    action.accept( (FinalSprite)array[i] );
+            }
+        }
+        finally
+        {
+            iterationDepth--;
+            if (iterationDepth == 0 && !deferChanges)
+                applyChanges();
+        }
+    }
+
+    /**
+     * Take all removed sprites (see {@link Sprite#isRemoved()}) out of this collection in a single pass,
+     *   keeping the order of the remaining sprites; sprites acquired from a {@link SpritePool}
+     *   are returned to it once no group contains them.
+     * Called by the game at the end of each frame, for every group it created;
+     *   does nothing if no sprite in this collection has been removed since the last call,
+     *   and while changes are deferred or during {@link #forEach(Consumer)}
+     *   (the removed sprites are then taken out by a later call).
+     * @return the number of sprites taken out
+     */
+    public int reapRemovedSprites()
+    {
+        if (!hasRemovedSprites || deferChanges || iterationDepth > 0)
+            return 0;
+        // cleared before scanning, so that a sprite removed during the scan is found by the next call
+        hasRemovedSprites = false;
+
+        int reaped = 0;
+        for (int i = 0; i < spriteCount; i++)
+        {
+            Sprite s = spriteArray[i];
+            if (s.removed)
+            {
+                s.clearSlot(this);
+                recycle(s);
+                spriteArray[i] = null;
+                reaped++;
+            }
+        }
+        if (reaped > 0)
+            compact();
+        return reaped;
+    }
+
+    /**
+     * Return the sprite stored at the given position in this collection.
+     * @param index position of the sprite (from 0 to {@link #getSpriteCount()} - 1)
+     * @return the sprite at that position
+     */
+    Sprite getSprite(int index)
+    {
+        return spriteArray[ Objects.checkIndex(index, spriteCount) ];
+    }
+
+    /**
+     * Return the array that sprites are stored in, for reading without copying;
+     *   used when drawing, which may happen on a different thread than updating.
+     * Sprites are stored in positions 0 to {@link #getSpriteCount()} - 1;
+     *   the array is replaced when the collection grows, and if sprites are removed
+     *   while it is being read, positions past the current count contain <code>null</code>.
+     * @return the array of sprites; must not be changed
+     */
+    Sprite[] getSpriteArray()
+    {
+        return spriteArray;
     }
     
     /**
@@ -66,7 +410,7 @@ public class Group
      */
     public int getSpriteCount()
     {
-        return spriteList.size();
+        return spriteCount;
     }
     
     /**
@@ -74,12 +418,13 @@ public class Group
      *   over a collection of sprites.
      * Necessary to avoid "Concurrent Modification Exception" - can't modify (add/remove)
      *   objects to a list while iterating over the elements in that list.
+     * To iterate without copying, use {@link #forEach(Consumer)}.
      *
      * @return the list of sprites
      */
     public ArrayList<Sprite> getSpriteList()
     {
-        return new ArrayList<Sprite>(spriteList);
+        return new ArrayList<Sprite>( Arrays.asList(spriteArray).subList(0, spriteCount) );
     }
 
         /**
@@ -87,12 +432,19 @@ public class Group
      *   over a collection of sprites.
      * Necessary to avoid "Concurrent Modification Exception" - can't modify (add/remove)
      *   objects to a list while iterating over the elements in that list.
+     * To iterate without copying, use {@link #forEachFinalSprite(Consumer)}.
      *
      * @return the list of final sprites
      */
     public ArrayList<FinalSprite> getFinalSpriteList()
     {
-        return new ArrayList<FinalSprite>(finalSpriteList);
+        ArrayList<FinalSprite> finalSpriteList = new ArrayList<FinalSprite>();
+        for (int i = 0; i < spriteCount; i++)
+        {
+            if (spriteArray[i] instanceof FinalSprite)
+                finalSpriteList.add( (FinalSprite)spriteArray[i] );
+        }
+        return finalSpriteList;
     }
     
     /**
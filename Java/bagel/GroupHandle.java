@@ -0,0 +1,58 @@
+package bagel;
+
+/**
+ *  Identifies a {@link Group} created by {@link Game#createGroup(String)}.
+ *  Each group has exactly one handle, so handles can be stored (for example, in fields
+ *  set in {@link Game#initialize()}) and compared with <code>==</code>;
+ *  the Game methods that take a handle instead of a group name find the group
+ *  directly by its position, without comparing or hashing strings.
+ *  For example:
+ * <pre>{@code
+ * starfishGroup = createGroup("starfish").getHandle();
+ * ...
+ * if ( getGroupSpriteCount(starfishGroup) == 0 )
+ * }</pre>
+ */
+public final class GroupHandle
+{
+    /**
+     * the name of the group
+     */
+    public final String name;
+
+    /**
+     * position of the group in {@link Game#groupList} (the order in which groups are drawn)
+     */
+    public final int index;
+
+    // created only by Game.createGroup, so that each group has a single handle
+    GroupHandle(String name, int index)
+    {
+        this.name = name;
+        this.index = index;
+    }
+
+    /**
+     * Return the name of the group.
+     * @return the group name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Return the position of the group in the list of all groups.
+     * @return the group index
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GroupHandle(" + name + ", " + index + ")";
+    }
+}
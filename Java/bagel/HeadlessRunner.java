@@ -0,0 +1,146 @@
+package bagel;
+
+/**
+ *  Runs the life cycle of a {@link Game} (or {@link FinalGame}) without a window:
+ *  useful for automated tests, servers, and simulations.
+ *  <br><br>
+ *  Time is simulated: each tick advances the game by a fixed amount of time,
+ *  regardless of how long the tick actually takes. By default ticks run as fast as possible;
+ *  use {@link #setTicksPerSecond(int)} to run at a fixed real-time rate.
+ *  Keyboard input can be simulated using {@link Input#pressKey(String)}
+ *  and {@link Input#releaseKey(String)}, for example:
+ * <pre>{@code
+ * HeadlessRunner runner = new HeadlessRunner(new MyGame(), 1.0/60.0);
+ * runner.input.pressKey("Right");
+ * runner.run(60);
+ * runner.input.releaseKey("Right");
+ * runner.run(60);
+ * }</pre>
+ *  Textures may be loaded as usual; nothing is drawn.
+ */
+public class HeadlessRunner
+{
+    /**
+     * the game being run
+     */
+    public Game game;
+
+    /**
+     * input used by the game; key events must be simulated
+     */
+    public Input input;
+
+    /**
+     * amount of simulated time (in seconds) that passes during each tick
+     */
+    public double deltaTime;
+
+    /**
+     * number of ticks that have been run
+     */
+    public long tickCount;
+
+    /**
+     * controls timing when running at a fixed real-time rate;
+     *   <code>null</code> when running as fast as possible
+     */
+    FramePacer framePacer;
+
+    // true once the game has been initialized
+    boolean initialized;
+
+    /**
+     * Create a runner for the given game.
+     * @param game the game to run
+     * @param deltaTime amount of simulated time (in seconds) that passes during each tick
+     */
+    public HeadlessRunner(Game game, double deltaTime)
+    {
+        this.game = game;
+        this.deltaTime = deltaTime;
+        this.input = new Input();
+        this.tickCount = 0;
+        this.framePacer = null;
+        this.initialized = false;
+    }
+
+    /**
+     * Run ticks at a fixed real-time rate instead of as fast as possible.
+     * @param ticksPerSecond number of ticks per second of real time; 0 to run as fast as possible
+     */
+    public void setTicksPerSecond(int ticksPerSecond)
+    {
+        if (ticksPerSecond <= 0)
+            this.framePacer = null;
+        else
+            this.framePacer = new FramePacer(ticksPerSecond);
+    }
+
+    /**
+     * Create the group list and input for the game, then initialize the game.
+     * Called automatically by the first tick, if necessary.
+     */
+    public void initialize()
+    {
+        game.resetGroups();
+        game.input = this.input;
+        game.elapsedTime = 0;
+        game.deltaTime = this.deltaTime;
+        game.initializeGame();
+        initialized = true;
+    }
+
+    /**
+     * Advance the game by one tick: process input, then update game state.
+     */
+    public void tick()
+    {
+        if (!initialized)
+            initialize();
+
+        // the previous frame's work (including any drawing done after its tick) ends before waiting
+        if (framePacer != null)
+        {
+            game.metrics.endFrameWork();
+            framePacer.waitForNextFrame();
+        }
+
+        FrameMetrics metrics = game.metrics;
+        metrics.beginFrame();
+
+        game.deltaTime = this.deltaTime;
+        game.elapsedTime += this.deltaTime;
+
+        // process input
+        metrics.beginPhase(FrameMetrics.INPUT);
+        input.update();
+        metrics.endPhase(FrameMetrics.INPUT);
+
+        // update game state
+        metrics.beginPhase(FrameMetrics.UPDATE);
+        game.update(this.deltaTime);
+        game.reapRemovedSprites();
+        metrics.endPhase(FrameMetrics.UPDATE);
+
+        tickCount++;
+    }
+
+    /**
+     * Advance the game by the given number of ticks.
+     * @param ticks number of ticks to run
+     */
+    public void run(long ticks)
+    {
+        for (long i = 0; i < ticks; i++)
+            tick();
+    }
+
+    /**
+     * Advance the game until the given amount of simulated time has passed.
+     * @param seconds amount of simulated time
+     */
+    public void runFor(double seconds)
+    {
+        run( Math.round(seconds / this.deltaTime) );
+    }
+}
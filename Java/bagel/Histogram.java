@@ -0,0 +1,165 @@
+package bagel;
+
+import java.util.Arrays;
+
+/**
+ *  Counts how often each value (typically a duration in nanoseconds) occurs,
+ *  using buckets whose size grows with the value, so that any value
+ *  is stored with a relative error of at most about 3%
+ *  (similar to an HDR histogram).
+ *  <br><br>
+ *  Recording a value only increments an array element; no objects are created.
+ *  Values from 0 to 2<sup>40</sup> (about 18 minutes, in nanoseconds) are stored;
+ *  larger values are stored in the last bucket.
+ */
+public class Histogram
+{
+    // number of bits used to divide each power of two into sub-buckets (32 sub-buckets)
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // largest power of two stored
+    static final int MAX_EXPONENT = 40;
+
+    // counts[i] is the number of values recorded in bucket i
+    long[] counts;
+
+    // summary data
+    long totalCount;
+    long totalValue;
+    long maxValue;
+
+    /**
+     * Create an empty histogram.
+     */
+    public Histogram()
+    {
+        this.counts = new long[ (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT ];
+        this.reset();
+    }
+
+    /**
+     * Remove all recorded values.
+     */
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        maxValue = 0;
+    }
+
+    // calculate the bucket that stores a value
+    static int getBucketIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+            return (int)Math.max(value, 0);
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT - 1;
+
+        int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // calculate the smallest value stored in a bucket
+    static long getBucketStart(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        return (long)(SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    // calculate the value in the middle of a bucket
+    static long getBucketMiddle(int index)
+    {
+        long start = getBucketStart(index);
+        long width = getBucketStart(index + 1) - start;
+        return start + width / 2;
+    }
+
+    /**
+     * Record a value.
+     * @param value the value to record
+     */
+    public void record(long value)
+    {
+        counts[ getBucketIndex(value) ]++;
+        totalCount++;
+        totalValue += value;
+        if (value > maxValue)
+            maxValue = value;
+    }
+
+    /**
+     * Get the number of values recorded.
+     * @return the number of values recorded
+     */
+    public long getCount()
+    {
+        return totalCount;
+    }
+
+    /**
+     * Get the largest value recorded (exact).
+     * @return the largest value recorded, or 0 if none
+     */
+    public long getMax()
+    {
+        return maxValue;
+    }
+
+    /**
+     * Get the average of the values recorded (exact).
+     * @return the average value, or 0 if none
+     */
+    public double getMean()
+    {
+        if (totalCount == 0)
+            return 0;
+        return (double)totalValue / totalCount;
+    }
+
+    /**
+     * Get the value below which the given percentage of recorded values fall.
+     * For example, getPercentile(99) returns a value larger than 99% of recorded values.
+     * @param percentile percentage, from 0 to 100
+     * @return the (approximate) value at that percentile, or 0 if no values were recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        if (totalCount == 0)
+            return 0;
+
+        long target = (long)Math.ceil(totalCount * percentile / 100.0);
+        if (target < 1)
+            target = 1;
+
+        long count = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            count += counts[i];
+            if (count >= target)
+                return Math.min( getBucketMiddle(i), maxValue );
+        }
+        return maxValue;
+    }
+
+    /**
+     * Add all values recorded by another histogram to this histogram.
+     * @param other histogram to add
+     */
+    public void add(Histogram other)
+    {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        if (other.maxValue > maxValue)
+            maxValue = other.maxValue;
+    }
+}
@@ -0,0 +1,311 @@
+package bagel;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  Finds the cause of occasional slow frames ("hitches").
+ *  A watchdog thread checks whether the game loop thread has been working on one frame
+ *  for longer than {@link #frameBudgetNanos}; if so, it takes a few samples of
+ *  the loop thread's stack, then appends a short report to a file.
+ *  The work of a frame lasts from {@link #beginFrame()} until {@link #endFrame()}
+ *  (or the next beginFrame), so time the loop spends waiting for the next frame is not watched.
+ *  Enabled with {@link FrameMetrics#setHitchDetection(double, String)}.
+ *  <br><br>
+ *  Each report lists the section of the frame that was running when each sample was taken:
+ *  a phase of the frame (such as "update"), or a labelled section of engine code
+ *  (such as "TileMap.draw" or "Texture load"). Sections are labelled using
+ * <pre>{@code
+ * String previous = HitchDetector.enterSection("loading level");
+ * try { ... } finally { HitchDetector.exitSection(previous); }
+ * }</pre>
+ *  When the report file grows larger than {@link #maxFileBytes},
+ *  it is renamed (adding ".1" to the name, replacing any older file) and a new file is started.
+ */
+public class HitchDetector
+{
+    // the detector (if any) watching the current thread; used by enterSection and exitSection
+    static final ThreadLocal<HitchDetector> current = new ThreadLocal<HitchDetector>();
+
+    /**
+     * amount of time a frame may take before its stack is sampled
+     */
+    public volatile long frameBudgetNanos;
+
+    /**
+     * amount of time between stack samples of a slow frame
+     */
+    public volatile long sampleIntervalNanos;
+
+    /**
+     * largest number of stack samples taken during one slow frame
+     */
+    public volatile int maxSamples;
+
+    /**
+     * largest number of stack entries written for each sample
+     */
+    public int maxStackDepth;
+
+    /**
+     * size that the report file may reach before a new file is started
+     */
+    public long maxFileBytes;
+
+    /**
+     * name of file that reports are appended to
+     */
+    public String fileName;
+
+    /**
+     * number of slow frames found
+     */
+    public volatile long hitchCount;
+
+    // thread running the game loop; set by the first frame
+    volatile Thread loopThread;
+
+    // current frame (written by the loop thread, read by the watchdog);
+    //   inFrame is false between the end of a frame's work and the start of the next frame
+    volatile long frameNumber;
+    volatile long frameStart;
+    volatile boolean inFrame;
+    volatile String section;
+
+    // duration of the work of the most recently finished frame, and its number
+    volatile long previousFrameNanos;
+    volatile long finishedFrameNumber;
+
+    // watchdog state
+    Thread watchdog;
+    volatile boolean running;
+    long reportedFrameNumber;
+
+    /**
+     * Create a hitch detector; the watchdog thread starts with the first frame.
+     * @param frameBudgetNanos amount of time a frame may take before its stack is sampled
+     * @param fileName name of file that reports are appended to
+     */
+    public HitchDetector(long frameBudgetNanos, String fileName)
+    {
+        this.frameBudgetNanos = frameBudgetNanos;
+        this.sampleIntervalNanos = Math.max(frameBudgetNanos / 4, 1_000_000L);
+        this.maxSamples = 5;
+        this.maxStackDepth = 16;
+        this.maxFileBytes = 1_000_000;
+        this.fileName = fileName;
+        this.hitchCount = 0;
+        this.frameStart = 0;
+        this.inFrame = false;
+        this.reportedFrameNumber = -1;
+    }
+
+    /**
+     * Mark the start of a frame; called by {@link FrameMetrics#beginFrame()} on the game loop thread.
+     * The first call binds this detector to the calling thread and starts the watchdog.
+     */
+    public void beginFrame()
+    {
+        long now = System.nanoTime();
+        if (loopThread != Thread.currentThread())
+        {
+            loopThread = Thread.currentThread();
+            current.set(this);
+        }
+        if (watchdog == null)
+            start();
+
+        if (inFrame)
+            finishFrame(now);
+        section = null;
+        frameNumber++;
+        frameStart = now;
+        inFrame = true;
+    }
+
+    /**
+     * Mark the end of the work of a frame, before the game loop waits for the next frame;
+     *   called by {@link FrameMetrics#endFrameWork()} on the game loop thread.
+     */
+    public void endFrame()
+    {
+        if (inFrame)
+            finishFrame( System.nanoTime() );
+    }
+
+    // record the duration of the current frame's work; the loop thread is idle until the next frame
+    private void finishFrame(long now)
+    {
+        previousFrameNanos = now - frameStart;
+        finishedFrameNumber = frameNumber;
+        inFrame = false;
+        section = null;
+    }
+
+    /**
+     * Label the section of code now running on the current thread,
+     *   if the thread is watched by a hitch detector.
+     * @param label name of the section
+     * @return label of the section that was running before; pass to {@link #exitSection(String)}
+     */
+    public static String enterSection(String label)
+    {
+        HitchDetector detector = current.get();
+        if (detector == null)
+            return null;
+        String previous = detector.section;
+        detector.section = label;
+        return previous;
+    }
+
+    /**
+     * Mark the end of a labelled section on the current thread.
+     * @param previous the value returned by the matching call to {@link #enterSection(String)}
+     */
+    public static void exitSection(String previous)
+    {
+        HitchDetector detector = current.get();
+        if (detector != null)
+            detector.section = previous;
+    }
+
+    // label the current phase; called by FrameMetrics on the loop thread (phase names are constants)
+    void setSection(String label)
+    {
+        section = label;
+    }
+
+    /**
+     * Start the watchdog thread (called automatically by the first frame).
+     */
+    public synchronized void start()
+    {
+        if (watchdog != null)
+            return;
+        running = true;
+        watchdog = new Thread( () -> watch(), "Hitch-Detector" );
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Stop the watchdog thread.
+     */
+    public synchronized void stop()
+    {
+        running = false;
+        if (watchdog != null)
+            watchdog.interrupt();
+        watchdog = null;
+        if (loopThread == Thread.currentThread())
+            current.remove();
+    }
+
+    // watchdog thread: check the current frame a few times per budget
+    void watch()
+    {
+        while (running && !Thread.currentThread().isInterrupted())
+        {
+            LockSupport.parkNanos(sampleIntervalNanos);
+
+            long start = frameStart;
+            long number = frameNumber;
+            Thread thread = loopThread;
+            if (!inFrame || start == 0 || thread == null || number == reportedFrameNumber)
+                continue;
+            if (System.nanoTime() - start > frameBudgetNanos)
+            {
+                reportedFrameNumber = number;
+                hitchCount++;
+                sampleFrame(thread, number, start);
+            }
+        }
+    }
+
+    // sample the loop thread's stack until the frame ends or enough samples are taken, then write a report
+    void sampleFrame(Thread thread, long number, long start)
+    {
+        int sampleLimit = maxSamples;
+        ArrayList<StackTraceElement[]> stacks = new ArrayList<StackTraceElement[]>();
+        ArrayList<String> sections = new ArrayList<String>();
+        ArrayList<Long> times = new ArrayList<Long>();
+
+        for (int i = 0; i < sampleLimit && frameNumber == number && inFrame && running; i++)
+        {
+            if (i > 0)
+                LockSupport.parkNanos(sampleIntervalNanos);
+            String label = section;
+            StackTraceElement[] stack = thread.getStackTrace();
+            // the frame's work may have ended while the stack was taken
+            if (frameNumber != number || !inFrame)
+                break;
+            stacks.add(stack);
+            sections.add(label == null ? "frame" : label);
+            times.add(System.nanoTime() - start);
+        }
+
+        // wait briefly for the frame to end, so that its total duration can be reported
+        long waitUntil = System.nanoTime() + 4 * frameBudgetNanos;
+        while (frameNumber == number && inFrame && running && System.nanoTime() < waitUntil)
+            LockSupport.parkNanos(sampleIntervalNanos);
+        long totalNanos = (finishedFrameNumber == number) ? previousFrameNanos : -1;
+
+        writeReport(thread, number, totalNanos, stacks, sections, times);
+    }
+
+    // append a report to the file; identical consecutive stacks are written once
+    void writeReport(Thread thread, long number, long totalNanos,
+        ArrayList<StackTraceElement[]> stacks, ArrayList<String> sections, ArrayList<Long> times)
+    {
+        rollFile();
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName, true)))
+        {
+            String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format( new Date() );
+            out.printf("hitch %s thread=%s frame=%d budget=%.1fms total=%s samples=%d%n",
+                time, thread.getName(), number, frameBudgetNanos / 1e6,
+                (totalNanos < 0) ? "unfinished" : String.format("%.1fms", totalNanos / 1e6),
+                stacks.size());
+
+            for (int i = 0; i < stacks.size(); i++)
+            {
+                out.printf("  sample %d at %.1fms section=%s%n", i + 1, times.get(i) / 1e6, sections.get(i));
+                if (i > 0 && Arrays.equals(stacks.get(i), stacks.get(i - 1)))
+                {
+                    out.println("    (same stack as previous sample)");
+                    continue;
+                }
+                StackTraceElement[] stack = stacks.get(i);
+                int depth = Math.min(stack.length, maxStackDepth);
+                for (int j = 0; j < depth; j++)
+                    out.println("    at " + stack[j]);
+                if (stack.length > depth)
+                    out.println("    ... " + (stack.length - depth) + " more");
+            }
+            out.println();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error writing hitch report to file: " + fileName);
+            e.printStackTrace();
+        }
+    }
+
+    // start a new report file if the current one is too large
+    void rollFile()
+    {
+        File file = new File(fileName);
+        if (maxFileBytes <= 0 || file.length() < maxFileBytes)
+            return;
+        File older = new File(fileName + ".1");
+        older.delete();
+        if ( !file.renameTo(older) )
+            System.err.println("Error renaming hitch report file: " + fileName);
+    }
+}
@@ -25,11 +25,11 @@ public class Input
     public ArrayList<String> releaseQueue;
  
     /**
-     * Input Constructor
-     *
-     * @param window the window that will register keyboard events
+     * Input Constructor, without a window;
+     *  key events are only generated by calling {@link #pressKey(String)} and {@link #releaseKey(String)}.
+     *  Used when running a game without a window (see {@link HeadlessRunner}).
      */
-    public Input(JFrame window)
+    public Input()
     {
         pressedList = new ArrayList<String>();
         pressingList = new ArrayList<String>();
@@ -37,6 +37,16 @@ public class Input
         
         pressQueue = new ArrayList<String>();
         releaseQueue = new ArrayList<String>();
+    }
+
+    /**
+     * Input Constructor
+     *
+     * @param window the window that will register keyboard events
+     */
+    public Input(JFrame window)
+    {
+        this();
         
         window.addKeyListener(
             new KeyListener()
@@ -46,7 +56,7 @@ public class Input
                     // gets the keyboard key code (number) and converts to a string (name)
                     String keyName = KeyEvent.getKeyText(e.getKeyCode());
                     // add the name to queue to be processed during game loop at correct time
-                    pressQueue.add( keyName );
+                    pressKey( keyName );
 
                     // System.out.println("Pressed: " + keyName);
                 }
@@ -56,7 +66,7 @@ public class Input
                     // gets the keyboard key code (number) and converts to a string (name)
                     String keyName = KeyEvent.getKeyText(e.getKeyCode());
                     // add the name to queue to be processed during game loop at correct time
-                    releaseQueue.add( keyName );
+                    releaseKey( keyName );
 
                     // System.out.println("Released: " + keyName);
                 }
@@ -65,6 +75,30 @@ public class Input
         });
     }
     
+    /**
+     * Queue a key press, to be processed during the next {@link #update()}.
+     * Called when a key is pressed in the window; 
+     *  may also be called directly to simulate input.
+     *
+     * @param keyName the name of the key (e.g. "Left", "Space", "A")
+     */
+    public void pressKey(String keyName)
+    {
+        pressQueue.add( keyName );
+    }
+
+    /**
+     * Queue a key release, to be processed during the next {@link #update()}.
+     * Called when a key is released in the window; 
+     *  may also be called directly to simulate input.
+     *
+     * @param keyName the name of the key (e.g. "Left", "Space", "A")
+     */
+    public void releaseKey(String keyName)
+    {
+        releaseQueue.add( keyName );
+    }
+    
     /**
      * Process the data (key names) stored in queues,
      *  so that keyPressed/keyPressing/keyReleased lists
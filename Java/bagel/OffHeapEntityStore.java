@@ -0,0 +1,720 @@
+package bagel;
+
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ *  Stores entities (position, velocity, size, angle, opacity, flags, group, and texture)
+ *  as fixed-size records in memory outside the Java heap, for simulations with millions of entities:
+ *  the heap size, and the time the garbage collector spends scanning it, do not grow with
+ *  the number of entities. Compare {@link EntityStore}, which stores entities in arrays on the heap.
+ *  <br><br>
+ *  Each entity belongs to a group, identified by a {@link GroupHandle} (the store uses the group's index),
+ *  so that entities can be spawned, counted, and despawned by group. Entities are spawned
+ *  in bulk (see {@link #spawn(int, GroupHandle)}), and stored in positions 0 to {@link #getCount()} - 1;
+ *  despawning many entities at once (by group, by position on screen, or by flag) takes a single pass.
+ *  Each entity also has an id, which stays the same until it is despawned.
+ *  <br><br>
+ *  The contents of the store can be saved to a file with a single write (see {@link #writeCheckpoint(String)})
+ *  and restored with {@link #readCheckpoint(String)}. Textures are stored on the heap, in a list;
+ *  entities refer to textures by position in the list (see {@link #addTexture(Texture)}).
+ *  <br><br>
+ *  Memory is allocated as direct buffers, which are released when the store is garbage collected.
+ *  By default, Java limits direct buffer memory to the maximum heap size; for large stores, raise the
+ *  limit with the option <code>-XX:MaxDirectMemorySize</code> (each entity takes {@link #RECORD_SIZE}
+ *  bytes, plus 8 bytes for id lookup, and growing the store briefly needs the old and new memory).
+ *  A store can hold up to {@link #MAX_CAPACITY} entities, 32767 groups, and 32767 textures.
+ */
+public class OffHeapEntityStore
+{
+    // record layout (bytes from start of record)
+    static final int X          = 0;   // double
+    static final int Y          = 8;   // double
+    static final int VELOCITY_X = 16;  // double
+    static final int VELOCITY_Y = 24;  // double
+    static final int WIDTH      = 32;  // float
+    static final int HEIGHT     = 36;  // float
+    static final int ANGLE      = 40;  // float
+    static final int OPACITY    = 44;  // float
+    static final int MAX_SPEED  = 48;  // float
+    static final int FLAGS      = 52;  // int
+    static final int GROUP      = 56;  // short
+    static final int TEXTURE    = 58;  // short
+    static final int ID         = 60;  // int
+
+    /**
+     * size (in bytes) of the record stored for each entity
+     */
+    public static final int RECORD_SIZE = 64;
+
+    /**
+     * largest number of entities a store can hold
+     */
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_SIZE;
+
+    /**
+     * flag: the entity is drawn
+     */
+    public static final int VISIBLE  = 1;
+
+    /**
+     * flag: the entity is moved by {@link #updatePhysics(double, double, double)}
+     */
+    public static final int PHYSICS  = 2;
+
+    /**
+     * flag: the texture is reversed along the x direction
+     */
+    public static final int MIRRORED = 4;
+
+    /**
+     * flag: the texture is reversed along the y direction
+     */
+    public static final int FLIPPED  = 8;
+
+    // checkpoint file header: magic number (also identifies byte order), version, record size, count, next id
+    static final int CHECKPOINT_MAGIC = 0x42474553;
+    static final int CHECKPOINT_VERSION = 1;
+    static final int CHECKPOINT_HEADER_SIZE = 32;
+
+    // entity records, in positions 0 to count - 1; and a second view of the same memory,
+    //   used as the source when copying records within the store
+    ByteBuffer records;
+    ByteBuffer recordsSource;
+
+    // position of each entity id, or -1 if the id is not in use; and ids available for reuse
+    IntBuffer sparse;
+    IntBuffer freeIds;
+    int freeCount;
+    int nextId;
+
+    // number of living entities; capacity of records
+    int count;
+    int capacity;
+
+    /**
+     * textures drawn for entities; entities store positions in this list
+     */
+    public ArrayList<Texture> textureList;
+
+    // reused when drawing
+    AffineTransform transform;
+
+    /**
+     * Create an empty store.
+     * @param initialCapacity number of entities that can be stored before memory needs to be reallocated
+     */
+    public OffHeapEntityStore(int initialCapacity)
+    {
+        this.capacity = Math.max(16, Math.min(initialCapacity, MAX_CAPACITY));
+        this.records = allocate((long)capacity * RECORD_SIZE);
+        this.recordsSource = records.duplicate();
+        this.sparse = allocate(4L * capacity).asIntBuffer();
+        this.freeIds = allocate(4L * capacity).asIntBuffer();
+        for (int i = 0; i < capacity; i++)
+            sparse.put(i, -1);
+        this.freeCount = 0;
+        this.nextId = 0;
+        this.count = 0;
+        this.textureList = new ArrayList<Texture>();
+        this.transform = new AffineTransform();
+    }
+
+    // allocate memory outside the heap, using the byte order of this computer
+    static ByteBuffer allocate(long bytes)
+    {
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Entity store too large: " + bytes + " bytes");
+        return ByteBuffer.allocateDirect((int)bytes).order(ByteOrder.nativeOrder());
+    }
+
+    // make room for at least the given number of entities (and ids), keeping existing data
+    private void ensureCapacity(int required)
+    {
+        if (required <= capacity)
+            return;
+        if (required > MAX_CAPACITY)
+            throw new IllegalArgumentException("Entity store can not hold more than " + MAX_CAPACITY + " entities");
+
+        int newCapacity = (int)Math.min( Math.max((long)capacity * 2, required), MAX_CAPACITY );
+        ByteBuffer newRecords = allocate((long)newCapacity * RECORD_SIZE);
+        newRecords.put( records.duplicate().position(0).limit(count * RECORD_SIZE) );
+        records = newRecords;
+        recordsSource = records.duplicate();
+
+        IntBuffer newSparse = allocate(4L * newCapacity).asIntBuffer();
+        for (int i = 0; i < newCapacity; i++)
+            newSparse.put(i, (i < nextId) ? sparse.get(i) : -1);
+        sparse = newSparse;
+
+        IntBuffer newFree = allocate(4L * newCapacity).asIntBuffer();
+        for (int i = 0; i < freeCount; i++)
+            newFree.put(i, freeIds.get(i));
+        freeIds = newFree;
+
+        capacity = newCapacity;
+    }
+
+    /**
+     * Add a texture that entities can be drawn with.
+     * @param tex the texture
+     * @return position of the texture in {@link #textureList}, used by {@link #setTexture(int, int)}
+     */
+    public int addTexture(Texture tex)
+    {
+        if (textureList.size() == Short.MAX_VALUE)
+            throw new IllegalArgumentException("Entity store can not hold more than " + Short.MAX_VALUE + " textures");
+        textureList.add(tex);
+        return textureList.size() - 1;
+    }
+
+    // spawning and despawning
+
+    /**
+     * Create entities at (0,0), visible and fully opaque, with no size, velocity, or texture.
+     * The new entities are stored in positions {@link #getCount()} (before this call) onwards;
+     * set their properties using those positions. For example:
+     * <pre>{@code
+     * int first = store.spawn(1000, bulletGroup);
+     * for (int i = first; i < first + 1000; i++)
+     *     store.setPosition(i, x, y);
+     * }</pre>
+     * @param amount number of entities to create
+     * @param group group that the entities belong to
+     * @return position of the first new entity
+     */
+    public int spawn(int amount, GroupHandle group)
+    {
+        if (group.index > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Entity store can not use groups with index above " + Short.MAX_VALUE);
+        ensureCapacity(count + amount);
+
+        int first = count;
+        for (int n = 0; n < amount; n++)
+        {
+            int newId;
+            if (freeCount > 0)
+            {
+                freeCount--;
+                newId = freeIds.get(freeCount);
+            }
+            else
+            {
+                newId = nextId;
+                nextId++;
+            }
+
+            int i = count;
+            count++;
+            int base = i * RECORD_SIZE;
+            records.putDouble(base + X, 0);
+            records.putDouble(base + Y, 0);
+            records.putDouble(base + VELOCITY_X, 0);
+            records.putDouble(base + VELOCITY_Y, 0);
+            records.putFloat(base + WIDTH, 0);
+            records.putFloat(base + HEIGHT, 0);
+            records.putFloat(base + ANGLE, 0);
+            records.putFloat(base + OPACITY, 1);
+            records.putFloat(base + MAX_SPEED, 0);
+            records.putInt(base + FLAGS, VISIBLE);
+            records.putShort(base + GROUP, (short)group.index);
+            records.putShort(base + TEXTURE, (short)-1);
+            records.putInt(base + ID, newId);
+            sparse.put(newId, i);
+        }
+        return first;
+    }
+
+    /**
+     * Despawn one entity; the last entity is moved into its position.
+     * Must not be called during a loop over positions, unless the loop runs backwards.
+     * @param entityId id of the entity
+     */
+    public void despawn(int entityId)
+    {
+        int i = getIndex(entityId);
+        int last = count - 1;
+        if (i != last)
+        {
+            records.put(i * RECORD_SIZE, recordsSource, last * RECORD_SIZE, RECORD_SIZE);
+            sparse.put( records.getInt(i * RECORD_SIZE + ID), i );
+        }
+        count--;
+        releaseId(entityId);
+    }
+
+    // mark an id as unused, so that it can be reused
+    private void releaseId(int entityId)
+    {
+        sparse.put(entityId, -1);
+        freeIds.put(freeCount, entityId);
+        freeCount++;
+    }
+
+    // remove the entities whose "despawn" flag was set by a despawn method, in one pass, keeping order
+    private int compact(int despawnFlag)
+    {
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int base = i * RECORD_SIZE;
+            int entityId = records.getInt(base + ID);
+            if ( (records.getInt(base + FLAGS) & despawnFlag) != 0 )
+            {
+                releaseId(entityId);
+                continue;
+            }
+            if (kept != i)
+            {
+                records.put(kept * RECORD_SIZE, recordsSource, base, RECORD_SIZE);
+                sparse.put(entityId, kept);
+            }
+            kept++;
+        }
+        int despawned = count - kept;
+        count = kept;
+        return despawned;
+    }
+
+    // flag bit (not available to users) used to mark entities to despawn
+    static final int DESPAWN = 1 << 30;
+
+    /**
+     * Despawn all entities in a group.
+     * @param group the group
+     * @return number of entities despawned
+     */
+    public int despawnGroup(GroupHandle group)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (records.getShort(i * RECORD_SIZE + GROUP) == group.index)
+                setFlag(i, DESPAWN, true);
+        }
+        return compact(DESPAWN);
+    }
+
+    /**
+     * Despawn all entities that are completely outside a rectangle (such as the screen).
+     * @param left left edge of rectangle
+     * @param top top edge of rectangle
+     * @param right right edge of rectangle
+     * @param bottom bottom edge of rectangle
+     * @return number of entities despawned
+     */
+    public int despawnOutside(double left, double top, double right, double bottom)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if ( !overlaps(i, left, top, right, bottom) )
+                setFlag(i, DESPAWN, true);
+        }
+        return compact(DESPAWN);
+    }
+
+    /**
+     * Despawn all entities that have any of the given flags set.
+     * @param flags flags to check (for example, a game-defined flag such as 16 for "destroyed")
+     * @return number of entities despawned
+     */
+    public int despawnFlagged(int flags)
+    {
+        return compact(flags);
+    }
+
+    /**
+     * Despawn all entities.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < nextId; i++)
+            sparse.put(i, -1);
+        count = 0;
+        nextId = 0;
+        freeCount = 0;
+    }
+
+    // lookup
+
+    /**
+     * Return the number of living entities.
+     * @return the number of entities
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Check if an id belongs to a living entity.
+     * @param entityId id to check
+     * @return true if the entity exists
+     */
+    public boolean isAlive(int entityId)
+    {
+        return entityId >= 0 && entityId < nextId && sparse.get(entityId) >= 0;
+    }
+
+    /**
+     * Get the position of an entity; positions change when other entities are despawned.
+     * @param entityId id of the entity
+     * @return position of the entity (from 0 to {@link #getCount()} - 1)
+     */
+    public int getIndex(int entityId)
+    {
+        if ( !isAlive(entityId) )
+            throw new IllegalArgumentException("There is no entity with the id: " + entityId);
+        return sparse.get(entityId);
+    }
+
+    /**
+     * Count the entities in a group.
+     * @param group the group
+     * @return number of entities in the group
+     */
+    public int getGroupCount(GroupHandle group)
+    {
+        int total = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (records.getShort(i * RECORD_SIZE + GROUP) == group.index)
+                total++;
+        }
+        return total;
+    }
+
+    // properties (by position)
+
+    /** @param index position of entity @return id of entity */
+    public int getId(int index)               { return records.getInt(index * RECORD_SIZE + ID); }
+    /** @param index position of entity @return index of the group of the entity */
+    public int getGroup(int index)            { return records.getShort(index * RECORD_SIZE + GROUP); }
+    /** @param index position of entity @return x-coordinate of center */
+    public double getX(int index)             { return records.getDouble(index * RECORD_SIZE + X); }
+    /** @param index position of entity @return y-coordinate of center */
+    public double getY(int index)             { return records.getDouble(index * RECORD_SIZE + Y); }
+    /** @param index position of entity @return velocity along x direction */
+    public double getVelocityX(int index)     { return records.getDouble(index * RECORD_SIZE + VELOCITY_X); }
+    /** @param index position of entity @return velocity along y direction */
+    public double getVelocityY(int index)     { return records.getDouble(index * RECORD_SIZE + VELOCITY_Y); }
+    /** @param index position of entity @return width */
+    public double getWidth(int index)         { return records.getFloat(index * RECORD_SIZE + WIDTH); }
+    /** @param index position of entity @return height */
+    public double getHeight(int index)        { return records.getFloat(index * RECORD_SIZE + HEIGHT); }
+    /** @param index position of entity @return angle (in degrees) of texture rotation */
+    public double getAngle(int index)         { return records.getFloat(index * RECORD_SIZE + ANGLE); }
+    /** @param index position of entity @return opacity, from 0.0 to 1.0 */
+    public double getOpacity(int index)       { return records.getFloat(index * RECORD_SIZE + OPACITY); }
+    /** @param index position of entity @return flags (see {@link #VISIBLE}, {@link #PHYSICS}, ...) */
+    public int getFlags(int index)            { return records.getInt(index * RECORD_SIZE + FLAGS) & ~DESPAWN; }
+
+    /**
+     * Set the coordinates of the center of an entity.
+     * @param index position of entity
+     * @param x x-coordinate of center
+     * @param y y-coordinate of center
+     */
+    public void setPosition(int index, double x, double y)
+    {
+        int base = index * RECORD_SIZE;
+        records.putDouble(base + X, x);
+        records.putDouble(base + Y, y);
+    }
+
+    /**
+     * Set the velocity of an entity, and enable physics for it.
+     * @param index position of entity
+     * @param velocityX velocity along x direction
+     * @param velocityY velocity along y direction
+     * @param maxSpeed maximum speed; 0 for no limit
+     */
+    public void setVelocity(int index, double velocityX, double velocityY, double maxSpeed)
+    {
+        int base = index * RECORD_SIZE;
+        records.putDouble(base + VELOCITY_X, velocityX);
+        records.putDouble(base + VELOCITY_Y, velocityY);
+        records.putFloat(base + MAX_SPEED, (float)maxSpeed);
+        setFlag(index, PHYSICS, true);
+    }
+
+    /**
+     * Set the size of an entity (boundary rectangle and drawn image).
+     * @param index position of entity
+     * @param width width of entity
+     * @param height height of entity
+     */
+    public void setSize(int index, double width, double height)
+    {
+        int base = index * RECORD_SIZE;
+        records.putFloat(base + WIDTH, (float)width);
+        records.putFloat(base + HEIGHT, (float)height);
+    }
+
+    /**
+     * Set the texture of an entity, and its size to the size of the texture.
+     * @param index position of entity
+     * @param textureIndex position of texture in {@link #textureList}; -1 for none
+     */
+    public void setTexture(int index, int textureIndex)
+    {
+        records.putShort(index * RECORD_SIZE + TEXTURE, (short)textureIndex);
+        if (textureIndex >= 0)
+        {
+            Rectangle region = textureList.get(textureIndex).region;
+            setSize(index, region.width, region.height);
+        }
+    }
+
+    /**
+     * Set the angle of texture rotation of an entity.
+     * @param index position of entity
+     * @param angleDegrees angle (in degrees)
+     */
+    public void setAngle(int index, double angleDegrees)
+    {
+        records.putFloat(index * RECORD_SIZE + ANGLE, (float)angleDegrees);
+    }
+
+    /**
+     * Set the opacity of an entity.
+     * @param index position of entity
+     * @param opacity value from 0.0 (fully transparent) to 1.0 (fully opaque)
+     */
+    public void setOpacity(int index, double opacity)
+    {
+        records.putFloat(index * RECORD_SIZE + OPACITY, (float)opacity);
+    }
+
+    /**
+     * Set or clear flags of an entity (see {@link #VISIBLE}, {@link #PHYSICS}, {@link #MIRRORED}, {@link #FLIPPED};
+     *   games may use bits 4 to 29 for their own purposes).
+     * @param index position of entity
+     * @param flags flags to change
+     * @param set true to set the flags, false to clear them
+     */
+    public void setFlag(int index, int flags, boolean set)
+    {
+        int offset = index * RECORD_SIZE + FLAGS;
+        int value = records.getInt(offset);
+        records.putInt(offset, set ? (value | flags) : (value & ~flags));
+    }
+
+    // check if the entity at a position overlaps a rectangle (same rule as Rectangle.isOverlapping)
+    boolean overlaps(int index, double left, double top, double right, double bottom)
+    {
+        int base = index * RECORD_SIZE;
+        double x = records.getDouble(base + X);
+        double y = records.getDouble(base + Y);
+        double halfWidth = records.getFloat(base + WIDTH) / 2;
+        double halfHeight = records.getFloat(base + HEIGHT) / 2;
+        boolean noOverlap = (right <= x - halfWidth)
+            || (x + halfWidth <= left)
+            || (bottom <= y - halfHeight)
+            || (y + halfHeight <= top);
+        return !noOverlap;
+    }
+
+    // systems
+
+    /**
+     * Move every entity with physics enabled according to its velocity,
+     *   after adding a constant acceleration (such as gravity) and limiting its speed.
+     * @param dt elapsed time (seconds) since previous iteration of game loop
+     * @param accelerationX acceleration along x direction, applied to all entities
+     * @param accelerationY acceleration along y direction, applied to all entities
+     */
+    public void updatePhysics(double dt, double accelerationX, double accelerationY)
+    {
+        ByteBuffer r = records;
+        int end = count * RECORD_SIZE;
+        for (int base = 0; base < end; base += RECORD_SIZE)
+        {
+            if ( (r.getInt(base + FLAGS) & PHYSICS) == 0 )
+                continue;
+
+            double vx = r.getDouble(base + VELOCITY_X) + accelerationX * dt;
+            double vy = r.getDouble(base + VELOCITY_Y) + accelerationY * dt;
+            double maxSpeed = r.getFloat(base + MAX_SPEED);
+            if (maxSpeed > 0)
+            {
+                double speedSquared = vx * vx + vy * vy;
+                if (speedSquared > maxSpeed * maxSpeed)
+                {
+                    double scale = maxSpeed / Math.sqrt(speedSquared);
+                    vx *= scale;
+                    vy *= scale;
+                }
+            }
+            r.putDouble(base + VELOCITY_X, vx);
+            r.putDouble(base + VELOCITY_Y, vy);
+            r.putDouble(base + X, r.getDouble(base + X) + vx * dt);
+            r.putDouble(base + Y, r.getDouble(base + Y) + vy * dt);
+        }
+    }
+
+    /**
+     * Move every entity that has moved completely beyond one edge of the screen,
+     *   so that it reappears by the opposite edge (see {@link FinalSprite#wrapToScreen(double, double)}).
+     * @param screenWidth width of screen
+     * @param screenHeight height of screen
+     */
+    public void wrapToScreen(double screenWidth, double screenHeight)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            int base = i * RECORD_SIZE;
+            double x = records.getDouble(base + X);
+            double y = records.getDouble(base + Y);
+            double halfWidth = records.getFloat(base + WIDTH) / 2;
+            double halfHeight = records.getFloat(base + HEIGHT) / 2;
+            if (x + halfWidth < 0)
+                records.putDouble(base + X, screenWidth + halfWidth);
+            if (x - halfWidth > screenWidth)
+                records.putDouble(base + X, -halfWidth);
+            if (y + halfHeight < 0)
+                records.putDouble(base + Y, screenHeight + halfHeight);
+            if (y - halfHeight > screenHeight)
+                records.putDouble(base + Y, -halfHeight);
+        }
+    }
+
+    /**
+     * Draw the visible entities (with a texture) that overlap the rectangle from (0,0) to (width, height).
+     * @param g graphics context to draw on
+     * @param screenWidth width of screen
+     * @param screenHeight height of screen
+     * @return number of entities drawn
+     */
+    public int draw(Graphics2D g, double screenWidth, double screenHeight)
+    {
+        AffineTransform base = g.getTransform();
+        Composite baseComposite = g.getComposite();
+        Object baseInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        int drawn = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int offset = i * RECORD_SIZE;
+            int flags = records.getInt(offset + FLAGS);
+            int textureIndex = records.getShort(offset + TEXTURE);
+            if ( (flags & VISIBLE) == 0 || textureIndex < 0 )
+                continue;
+            // a rotated entity may extend up to half its diagonal from its center,
+            //   beyond its boundary rectangle (along each axis, by half the diagonal minus half that side)
+            double marginX = 0;
+            double marginY = 0;
+            float angle = records.getFloat(offset + ANGLE);
+            if (angle != 0)
+            {
+                double width = records.getFloat(offset + WIDTH);
+                double height = records.getFloat(offset + HEIGHT);
+                double halfDiagonal = Math.sqrt(width * width + height * height) / 2;
+                marginX = halfDiagonal - width / 2;
+                marginY = halfDiagonal - height / 2;
+            }
+            if ( !overlaps(i, -marginX, -marginY, screenWidth + marginX, screenHeight + marginY) )
+                continue;
+            RenderSnapshot.drawTexture(g, base, transform, textureList.get(textureIndex),
+                records.getDouble(offset + X), records.getDouble(offset + Y),
+                records.getFloat(offset + WIDTH), records.getFloat(offset + HEIGHT),
+                angle, records.getFloat(offset + OPACITY),
+                (flags & MIRRORED) != 0, (flags & FLIPPED) != 0);
+            drawn++;
+        }
+
+        g.setTransform(base);
+        g.setComposite(baseComposite);
+        if (baseInterpolation != null)
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, baseInterpolation);
+        return drawn;
+    }
+
+    // checkpoints
+
+    /**
+     * Save all entities to a file, with a single (gathering) write of the entity records.
+     * Textures are not saved; the same textures must be added (in the same order) before the file is read.
+     * @param fileName name of file to write
+     * @throws UncheckedIOException if the file can not be written
+     */
+    public void writeCheckpoint(String fileName)
+    {
+        ByteBuffer header = ByteBuffer.allocate(CHECKPOINT_HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putInt(CHECKPOINT_MAGIC).putInt(CHECKPOINT_VERSION).putInt(RECORD_SIZE)
+            .putInt(count).putInt(nextId).flip();
+        header.limit(CHECKPOINT_HEADER_SIZE);
+        ByteBuffer data = records.duplicate().position(0).limit(count * RECORD_SIZE);
+        ByteBuffer[] buffers = { header, data };
+
+        try (FileChannel channel = FileChannel.open( Paths.get(fileName), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ))
+        {
+            // a file channel normally writes everything at once; repeat in case it does not
+            while (data.hasRemaining() || header.hasRemaining())
+                channel.write(buffers);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Error writing entity checkpoint to file: " + fileName, e);
+        }
+    }
+
+    /**
+     * Replace all entities with those saved by {@link #writeCheckpoint(String)}.
+     * Entities keep their ids and positions.
+     * @param fileName name of file to read
+     * @throws UncheckedIOException if the file can not be read
+     * @throws RuntimeException if the file is not a complete checkpoint
+     */
+    public void readCheckpoint(String fileName)
+    {
+        try (FileChannel channel = FileChannel.open( Paths.get(fileName), StandardOpenOption.READ ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(CHECKPOINT_HEADER_SIZE).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            header.flip();
+            if (header.remaining() < CHECKPOINT_HEADER_SIZE || header.getInt() != CHECKPOINT_MAGIC
+                || header.getInt() != CHECKPOINT_VERSION || header.getInt() != RECORD_SIZE)
+                throw new RuntimeException("Not an entity checkpoint (or written on a different kind of computer): " + fileName);
+            int savedCount = header.getInt();
+            int savedNextId = header.getInt();
+
+            clear();
+            ensureCapacity( Math.max(savedCount, savedNextId) );
+            ByteBuffer data = records.duplicate().position(0).limit(savedCount * RECORD_SIZE);
+            while (data.hasRemaining() && channel.read(data) >= 0) { }
+            if (data.hasRemaining())
+                throw new RuntimeException("Entity checkpoint is incomplete: " + fileName);
+
+            // rebuild id lookup; ids not in use are available for reuse
+            count = savedCount;
+            nextId = savedNextId;
+            for (int i = 0; i < count; i++)
+                sparse.put( records.getInt(i * RECORD_SIZE + ID), i );
+            for (int id = nextId - 1; id >= 0; id--)
+            {
+                if (sparse.get(id) < 0)
+                {
+                    freeIds.put(freeCount, id);
+                    freeCount++;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Error reading entity checkpoint from file: " + fileName, e);
+        }
+    }
+}
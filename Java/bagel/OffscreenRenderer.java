@@ -0,0 +1,161 @@
+package bagel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ *  Draws the groups (and optionally a {@link TileMap}) of a {@link Game} into an image
+ *  of a fixed size, without a window; useful for measuring drawing performance
+ *  and checking drawing results (see {@link GoldenImage}) in automated tests.
+ *  The time taken to draw each frame is recorded in a {@link Histogram}.
+ *  For example:
+ * <pre>{@code
+ * HeadlessRunner runner = new HeadlessRunner(new MyGame(), 1.0/60.0);
+ * OffscreenRenderer renderer = new OffscreenRenderer(800, 600);
+ * runner.run(60);
+ * BufferedImage frame = renderer.render(runner.game);
+ * }</pre>
+ *  Sprites are drawn as the game would draw them, using {@link Sprite#draw(java.awt.Graphics, double)}.
+ */
+public class OffscreenRenderer
+{
+    /**
+     * the image that frames are drawn into
+     */
+    public BufferedImage image;
+
+    /**
+     * color drawn behind everything else
+     */
+    public Color background;
+
+    /**
+     * tile map drawn before the groups; <code>null</code> for none
+     */
+    public TileMap tileMap;
+
+    // time taken to draw each frame
+    Histogram frameTimes;
+    long lastFrameNanos;
+
+    /**
+     * Create a renderer that draws into an image of the given size.
+     * @param width image width (in pixels)
+     * @param height image height (in pixels)
+     */
+    public OffscreenRenderer(int width, int height)
+    {
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.background = Color.GRAY;
+        this.tileMap = null;
+        this.frameTimes = new Histogram();
+    }
+
+    // create a graphics context with fixed settings, so that results do not depend on the platform defaults
+    Graphics2D createGraphics()
+    {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setColor(background);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        return g;
+    }
+
+    /**
+     * Draw all sprites, in all groups, in the game's group list.
+     * @param game the game to draw
+     * @return the image drawn
+     */
+    public BufferedImage render(Game game)
+    {
+        long start = System.nanoTime();
+        Graphics2D g = createGraphics();
+        try
+        {
+            if (tileMap != null)
+                tileMap.draw(g);
+            for (Group group : game.groupList)
+            {
+                Sprite[] sprites = group.getSpriteArray();
+                int count = group.getSpriteCount();
+                for (int i = 0; i < count; i++)
+                    sprites[i].draw(g, game.interpolationAlpha);
+            }
+            for (EntityStore store : game.entityStoreList)
+                store.draw(g, image.getWidth(), image.getHeight());
+        }
+        finally
+        {
+            g.dispose();
+        }
+        recordFrame(start);
+        return image;
+    }
+
+    /**
+     * Draw a snapshot of the game's groups (as drawn when {@link Game#threadedRendering} is enabled).
+     * @param snapshot the snapshot to draw
+     * @return the image drawn
+     */
+    public BufferedImage render(RenderSnapshot snapshot)
+    {
+        long start = System.nanoTime();
+        Graphics2D g = createGraphics();
+        try
+        {
+            if (tileMap != null)
+                tileMap.draw(g);
+            snapshot.draw(g);
+        }
+        finally
+        {
+            g.dispose();
+        }
+        recordFrame(start);
+        return image;
+    }
+
+    /**
+     * Advance the game by the given number of ticks, drawing a frame after each tick.
+     * @param runner runs the game
+     * @param ticks number of ticks to run
+     * @return the image drawn after the last tick
+     */
+    public BufferedImage run(HeadlessRunner runner, int ticks)
+    {
+        for (int i = 0; i < ticks; i++)
+        {
+            runner.tick();
+            render(runner.game);
+        }
+        return image;
+    }
+
+    void recordFrame(long start)
+    {
+        lastFrameNanos = System.nanoTime() - start;
+        frameTimes.record(lastFrameNanos);
+    }
+
+    /**
+     * Get the time taken to draw each frame.
+     * @return histogram of frame drawing times (in nanoseconds)
+     */
+    public Histogram getFrameTimes()
+    {
+        return frameTimes;
+    }
+
+    /**
+     * Get the time taken to draw the most recent frame.
+     * @return drawing time (in nanoseconds)
+     */
+    public long getLastFrameNanos()
+    {
+        return lastFrameNanos;
+    }
+}
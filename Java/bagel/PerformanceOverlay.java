@@ -0,0 +1,374 @@
+package bagel;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ *  A panel drawn on top of the game that shows performance data:
+ *  a graph of recent frame times, the time spent updating and rendering,
+ *  the number of sprites in each {@link Group}, the number of sprites drawn,
+ *  and the allocation rate (when allocation tracking is enabled; see {@link FrameMetrics}).
+ *  Shown and hidden by pressing {@link #toggleKey} (default: "F3").
+ *  <br><br>
+ *  Drawing the overlay is cheap: the background and labels are drawn once into images,
+ *  numbers are drawn digit by digit from a pre-drawn image of digits,
+ *  and frame data is stored in fixed-size arrays.
+ */
+public class PerformanceOverlay
+{
+    /**
+     * determines if the overlay will be drawn
+     */
+    public boolean visible;
+
+    /**
+     * name of the key that shows and hides the overlay
+     */
+    public String toggleKey;
+
+    // recent frame, update, and render times (milliseconds), stored in a ring buffer
+    static final int SAMPLE_COUNT = 120;
+    float[] frameTimes;
+    float[] updateTimes;
+    float[] renderTimes;
+    int nextSample;
+
+    // layout
+    static final int PANEL_X = 8;
+    static final int PANEL_Y = 8;
+    static final int PANEL_WIDTH = 256;
+    static final int GRAPH_HEIGHT = 60;
+    static final int ROW_HEIGHT = 14;
+    static final int HEADER_HEIGHT = GRAPH_HEIGHT + 4 * ROW_HEIGHT + 12;
+
+    // frame time (milliseconds) at the top of the graph
+    static final float GRAPH_MAX_MS = 50;
+
+    // pre-drawn images: panel background with labels, digits, and group names
+    BufferedImage headerImage;
+    BufferedImage digitImage;
+    static final String DIGITS = "0123456789.";
+    int digitWidth;
+    int digitHeight;
+    IdentityHashMap<Group, BufferedImage> groupLabels;
+    Font font;
+
+    // used when drawing numbers and collecting group data; reused every frame
+    int[] digitBuffer;
+    int[] groupCounts;
+    Group[] groups;
+    AffineTransform transform;
+
+    static final Color ROW_BACKGROUND = new Color(0, 0, 0, 160);
+    static final Color GRAPH_GOOD = new Color(80, 220, 80);
+    static final Color GRAPH_SLOW = new Color(240, 200, 40);
+    static final Color GRAPH_BAD  = new Color(240, 60, 40);
+    static final Color UPDATE_COLOR = new Color(80, 160, 255);
+    static final Color RENDER_COLOR = new Color(255, 120, 200);
+
+    /**
+     * Create a hidden overlay, shown by pressing "F3".
+     */
+    public PerformanceOverlay()
+    {
+        this.visible = false;
+        this.toggleKey = "F3";
+        this.frameTimes = new float[SAMPLE_COUNT];
+        this.updateTimes = new float[SAMPLE_COUNT];
+        this.renderTimes = new float[SAMPLE_COUNT];
+        this.nextSample = 0;
+        this.groupLabels = new IdentityHashMap<Group, BufferedImage>();
+        this.digitBuffer = new int[20];
+        this.groupCounts = new int[8];
+        this.groups = new Group[8];
+        this.transform = new AffineTransform();
+        this.font = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+    }
+
+    /**
+     * Show or hide the overlay if the toggle key was just pressed.
+     * Called by the game loop after processing input.
+     * @param input the game input
+     */
+    public void checkToggle(Input input)
+    {
+        if ( input.isKeyPressed(toggleKey) )
+            visible = !visible;
+    }
+
+    // draw text into a new transparent image
+    BufferedImage createTextImage(String text, Color color)
+    {
+        BufferedImage measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measureGraphics = measure.createGraphics();
+        FontMetrics fm = measureGraphics.getFontMetrics(font);
+        measureGraphics.dispose();
+        BufferedImage image = new BufferedImage(Math.max(1, fm.stringWidth(text)), fm.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(color);
+        g.drawString(text, 0, fm.getAscent());
+        g.dispose();
+        return image;
+    }
+
+    // draw the images that do not change from frame to frame
+    void createImages()
+    {
+        BufferedImage measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measureGraphics = measure.createGraphics();
+        FontMetrics fm = measureGraphics.getFontMetrics(font);
+        measureGraphics.dispose();
+        digitWidth = fm.charWidth('0');
+        digitHeight = fm.getHeight();
+
+        digitImage = new BufferedImage(digitWidth * DIGITS.length(), digitHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = digitImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < DIGITS.length(); i++)
+            g.drawString(DIGITS.substring(i, i+1), i * digitWidth, fm.getAscent());
+        g.dispose();
+
+        headerImage = new BufferedImage(PANEL_WIDTH, HEADER_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        g = headerImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(ROW_BACKGROUND);
+        g.fillRect(0, 0, PANEL_WIDTH, HEADER_HEIGHT);
+        // reference lines: 60 FPS and 30 FPS
+        g.setColor(new Color(255, 255, 255, 60));
+        g.drawLine(0, graphY(1000f/60), PANEL_WIDTH, graphY(1000f/60));
+        g.drawLine(0, graphY(1000f/30), PANEL_WIDTH, graphY(1000f/30));
+        g.setFont(font);
+        g.setColor(Color.LIGHT_GRAY);
+        int y = GRAPH_HEIGHT + 6 + fm.getAscent();
+        g.drawString("frame      ms        fps", 4, y);
+        g.setColor(UPDATE_COLOR);
+        g.drawString("update     ms", 4, y + ROW_HEIGHT);
+        g.setColor(RENDER_COLOR);
+        g.drawString("render     ms", 4, y + 2 * ROW_HEIGHT);
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawString("draws           alloc       KB/s", 4, y + 3 * ROW_HEIGHT);
+        g.dispose();
+    }
+
+    // vertical position in the graph of a frame time (relative to top of panel)
+    static int graphY(float milliseconds)
+    {
+        float fraction = Math.min(milliseconds / GRAPH_MAX_MS, 1);
+        return (int)(GRAPH_HEIGHT - fraction * (GRAPH_HEIGHT - 2));
+    }
+
+    // store the most recent frame data
+    void sample(FrameMetrics metrics)
+    {
+        frameTimes[nextSample]  = metrics.getLast(FrameMetrics.FRAME) / 1e6f;
+        updateTimes[nextSample] = metrics.getLast(FrameMetrics.UPDATE) / 1e6f;
+        renderTimes[nextSample] = metrics.getLast(FrameMetrics.RENDER) / 1e6f;
+        nextSample = (nextSample + 1) % SAMPLE_COUNT;
+    }
+
+    /**
+     * Draw the overlay, reading sprite counts directly from the groups.
+     * @param g graphics context to draw on
+     * @param metrics frame data to display
+     * @param groupList groups whose sprite counts are displayed
+     */
+    public void draw(Graphics2D g, FrameMetrics metrics, ArrayList<Group> groupList)
+    {
+        if (!visible)
+            return;
+
+        int count = 0;
+        for (Group group : groupList)
+        {
+            ensureGroupCapacity(count + 1);
+            groups[count] = group;
+            groupCounts[count] = group.getSpriteCount();
+            count++;
+        }
+        drawPanel(g, metrics, count);
+    }
+
+    /**
+     * Draw the overlay, reading sprite counts from a snapshot
+     *   (when drawing on a different thread than the game loop).
+     * @param g graphics context to draw on
+     * @param metrics frame data to display
+     * @param snapshot snapshot whose (visible) sprite counts are displayed
+     */
+    public void draw(Graphics2D g, FrameMetrics metrics, RenderSnapshot snapshot)
+    {
+        if (!visible)
+            return;
+
+        ensureGroupCapacity(snapshot.groupCount);
+        for (int i = 0; i < snapshot.groupCount; i++)
+        {
+            groups[i] = snapshot.group[i];
+            groupCounts[i] = snapshot.getGroupSpriteCount(i);
+        }
+        drawPanel(g, metrics, snapshot.groupCount);
+    }
+
+    // make room to store data for the given number of groups
+    private void ensureGroupCapacity(int count)
+    {
+        if (count > groups.length)
+        {
+            groups = Arrays.copyOf(groups, count * 2);
+            groupCounts = Arrays.copyOf(groupCounts, count * 2);
+        }
+    }
+
+    // remove the labels of groups other than the first groupCount entries of groups,
+    //   so that groups the game no longer uses can be garbage collected
+    private void removeUnusedLabels(int groupCount)
+    {
+        Iterator<Group> iterator = groupLabels.keySet().iterator();
+        while (iterator.hasNext())
+        {
+            Group group = iterator.next();
+            boolean used = false;
+            for (int i = 0; i < groupCount && !used; i++)
+                used = (groups[i] == group);
+            if (!used)
+                iterator.remove();
+        }
+    }
+
+    // draw the panel, using group data already collected
+    private void drawPanel(Graphics2D g, FrameMetrics metrics, int groupCount)
+    {
+        if (headerImage == null)
+            createImages();
+
+        sample(metrics);
+
+        AffineTransform baseTransform = g.getTransform();
+        Composite baseComposite = g.getComposite();
+        transform.setTransform(baseTransform);
+        transform.translate(PANEL_X, PANEL_Y);
+        g.setTransform(transform);
+        g.setComposite(AlphaComposite.SrcOver);
+
+        g.drawImage(headerImage, 0, 0, null);
+
+        // frame time graph, oldest sample on the left
+        int barWidth = PANEL_WIDTH / SAMPLE_COUNT;
+        for (int i = 0; i < SAMPLE_COUNT; i++)
+        {
+            float ms = frameTimes[ (nextSample + i) % SAMPLE_COUNT ];
+            if (ms > 1000f/30)
+                g.setColor(GRAPH_BAD);
+            else if (ms > 1000f/60 + 1)
+                g.setColor(GRAPH_SLOW);
+            else
+                g.setColor(GRAPH_GOOD);
+            int top = graphY(ms);
+            g.fillRect(i * barWidth, top, barWidth, GRAPH_HEIGHT - top);
+        }
+
+        int latest = (nextSample + SAMPLE_COUNT - 1) % SAMPLE_COUNT;
+        int textY = GRAPH_HEIGHT + 6;
+        drawNumber(g, frameTimes[latest], 1, 4 + 6 * digitWidth, textY);
+        drawNumber(g, metrics.getFramesPerSecond(), 0, 4 + 15 * digitWidth, textY);
+
+        // update / render split: numbers, and bars scaled to one 60 FPS frame
+        float frameBudget = 1000f / 60;
+        int barLeft = 4 + 15 * digitWidth;
+        int barMax = PANEL_WIDTH - barLeft - 4;
+        drawNumber(g, updateTimes[latest], 2, 4 + 6 * digitWidth, textY + ROW_HEIGHT);
+        g.setColor(UPDATE_COLOR);
+        g.fillRect(barLeft, textY + ROW_HEIGHT + 3, (int)(Math.min(updateTimes[latest] / frameBudget, 1) * barMax), ROW_HEIGHT - 6);
+        drawNumber(g, renderTimes[latest], 2, 4 + 6 * digitWidth, textY + 2 * ROW_HEIGHT);
+        g.setColor(RENDER_COLOR);
+        g.fillRect(barLeft, textY + 2 * ROW_HEIGHT + 3, (int)(Math.min(renderTimes[latest] / frameBudget, 1) * barMax), ROW_HEIGHT - 6);
+
+        // draw calls and allocation rate
+        drawNumber(g, metrics.drawCount, 0, 4 + 6 * digitWidth, textY + 3 * ROW_HEIGHT);
+        AllocationTracker tracker = metrics.allocationTracker;
+        if (tracker != null)
+        {
+            double kbPerSecond = tracker.lastFrameBytes * (double)metrics.getFramesPerSecond() / 1024;
+            drawNumber(g, kbPerSecond, 0, 4 + 22 * digitWidth, textY + 3 * ROW_HEIGHT);
+        }
+
+        // sprite count of each group
+        int rowY = HEADER_HEIGHT;
+        for (int i = 0; i < groupCount; i++)
+        {
+            g.setColor(ROW_BACKGROUND);
+            g.fillRect(0, rowY, PANEL_WIDTH, ROW_HEIGHT);
+            BufferedImage label = groupLabels.get(groups[i]);
+            if (label == null)
+            {
+                label = createTextImage(groups[i].getName(), Color.LIGHT_GRAY);
+                groupLabels.put(groups[i], label);
+            }
+            g.drawImage(label, 4, rowY, null);
+            drawNumber(g, groupCounts[i], 0, PANEL_WIDTH - 12 * digitWidth, rowY);
+            rowY += ROW_HEIGHT;
+        }
+
+        // forget labels of groups no longer displayed (for example, after the game restarts)
+        if (groupLabels.size() > groupCount)
+            removeUnusedLabels(groupCount);
+
+        // release references to the groups
+        Arrays.fill(groups, 0, groupCount, null);
+
+        g.setTransform(baseTransform);
+        g.setComposite(baseComposite);
+    }
+
+    /**
+     * Draw a non-negative number using the pre-drawn digit image.
+     * @param g graphics context to draw on
+     * @param value the number to draw
+     * @param decimals number of digits after the decimal point
+     * @param x x-coordinate of left edge
+     * @param y y-coordinate of top edge
+     */
+    void drawNumber(Graphics2D g, double value, int decimals, int x, int y)
+    {
+        long scaled = Math.round( Math.max(value, 0) * Math.pow(10, decimals) );
+
+        // store digits (least significant first), including the decimal point
+        int length = 0;
+        for (int i = 0; i < decimals; i++)
+        {
+            digitBuffer[length++] = (int)(scaled % 10);
+            scaled /= 10;
+        }
+        if (decimals > 0)
+            digitBuffer[length++] = DIGITS.length() - 1;
+        do
+        {
+            digitBuffer[length++] = (int)(scaled % 10);
+            scaled /= 10;
+        } while (scaled > 0 && length < digitBuffer.length);
+
+        for (int i = 0; i < length; i++)
+        {
+            int digit = digitBuffer[length - 1 - i];
+            int dx = x + i * digitWidth;
+            int sx = digit * digitWidth;
+            g.drawImage(digitImage, dx, y, dx + digitWidth, y + digitHeight,
+                sx, 0, sx + digitWidth, digitHeight, null);
+        }
+    }
+}
@@ -55,6 +55,18 @@ public class Physics
         this.decelerationValue  = decValue;
     }
 
+    // set new values and stop the object, so that a pooled sprite can reuse this object
+    //   (see FinalSprite.setPhysics)
+    void reset(double accValue, double maxSpeed, double decValue)
+    {
+        this.positionVector.setValues(0, 0);
+        this.velocityVector.setValues(0, 0);
+        this.accelerationVector.setValues(0, 0);
+        this.accelerationValue  = accValue;
+        this.maximumSpeed       = maxSpeed;
+        this.decelerationValue  = decValue;
+    }
+
     /**
      * Calculate speed of object.
      * @return speed of object
@@ -0,0 +1,245 @@
+package bagel;
+
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ *  Describes one kind of {@link FinalSprite} (for example, an enemy or a coin) once,
+ *  so that many sprites of that kind can be created without repeating their setup.
+ *  <br><br>
+ *  A prefab stores a texture and size, physics values, an animation and action templates.
+ *  Every sprite created from it shares the texture (and the animation's textures);
+ *  only the state that changes while the game runs is created for each sprite:
+ *  the physics object, a copy of the animation (see {@link Animation#clone()}),
+ *  and the actions, which are created by each action template
+ *  (since actions store the time that has elapsed since they started).
+ *  For example:
+ * <pre>{@code
+ * Prefab enemy = new Prefab("enemy")
+ *     .setAnimation( Animation.load("assets/enemy.png", 1, 4, 0.1, true) )
+ *     .setPhysics(0, 60, 0)
+ *     .addAction( () -> ActionFactory.forever(ActionFactory.rotateBy(360, 2)) );
+ *
+ * enemy.spawnAtSymbol( getGroup(enemyGroup), map, "E" );
+ * }</pre>
+ *  Prefabs may also set up the sprites of a {@link SpritePool} (see {@link #createPool(int)}).
+ */
+public class Prefab
+{
+    /**
+     * name of this kind of sprite
+     */
+    public final String name;
+
+    // shared by all sprites created from this prefab
+    private Texture texture;
+    private double width;
+    private double height;
+    private double angle;
+    private double opacity;
+    private boolean mirrored;
+    private boolean flipped;
+
+    // physics values, used if hasPhysics is true
+    private boolean hasPhysics;
+    private double accelerationValue;
+    private double maximumSpeed;
+    private double decelerationValue;
+
+    // copied for each sprite; null for none
+    private Animation animation;
+
+    // create the actions added to each sprite, in order
+    private ArrayList<Supplier<Action>> actionTemplateList;
+
+    /**
+     * Create a prefab with default sprite values (no texture, size 0, fully opaque, no physics).
+     * @param name name of this kind of sprite
+     */
+    public Prefab(String name)
+    {
+        this.name = name;
+        this.opacity = 1.00;
+        this.actionTemplateList = new ArrayList<Supplier<Action>>();
+    }
+
+    /**
+     * Set the texture of sprites created from this prefab, and set their size to the size of the texture.
+     * @param tex texture shared by all sprites created from this prefab
+     * @return this prefab, so that calls can be chained
+     */
+    public Prefab setTexture(Texture tex)
+    {
+        this.texture = tex;
+        this.width   = tex.region.width;
+        this.height  = tex.region.height;
+        return this;
+    }
+
+    /**
+     * Set the size of sprites created from this prefab.
+     * @param width width of each sprite
+     * @param height height of each sprite
+     * @return this prefab, so that calls can be chained
+     */
+    public Prefab setSize(double width, double height)
+    {
+        this.width  = width;
+        this.height = height;
+        return this;
+    }
+
+    /**
+     * Set the graphics properties of sprites created from this prefab.
+     * @param angle angle of rotation of the texture
+     * @param opacity value from 0.0 (fully transparent) to 1.0 (fully opaque)
+     * @param mirrored reverse texture along the x direction
+     * @param flipped reverse texture along the y direction
+     * @return this prefab, so that calls can be chained
+     */
+    public Prefab setGraphics(double angle, double opacity, boolean mirrored, boolean flipped)
+    {
+        this.angle    = angle;
+        this.opacity  = opacity;
+        this.mirrored = mirrored;
+        this.flipped  = flipped;
+        return this;
+    }
+
+    /**
+     * Give sprites created from this prefab their own physics object, with the given values
+     *   (see {@link FinalSprite#setPhysics(double, double, double)}).
+     * @param accValue acceleration value
+     * @param maxSpeed maximum speed
+     * @param decValue deceleration value
+     * @return this prefab, so that calls can be chained
+     */
+    public Prefab setPhysics(double accValue, double maxSpeed, double decValue)
+    {
+        this.hasPhysics        = true;
+        this.accelerationValue = accValue;
+        this.maximumSpeed      = maxSpeed;
+        this.decelerationValue = decValue;
+        return this;
+    }
+
+    /**
+     * Set the animation of sprites created from this prefab; each sprite receives its own copy
+     *   (sharing the textures), and its texture and size are set from the animation.
+     * @param anim animation to copy for each sprite
+     * @return this prefab, so that calls can be chained
+     */
+    public Prefab setAnimation(Animation anim)
+    {
+        this.animation = anim;
+        this.texture   = anim.currentTexture;
+        this.width     = anim.currentTexture.region.width;
+        this.height    = anim.currentTexture.region.height;
+        return this;
+    }
+
+    /**
+     * Add an action template: each sprite created from this prefab is given a new action
+     *   created by the template (actions can not be shared, since they store elapsed time).
+     * @param template creates an action, usually with {@link ActionFactory} methods
+     * @return this prefab, so that calls can be chained
+     */
+    public Prefab addAction(Supplier<Action> template)
+    {
+        actionTemplateList.add(template);
+        return this;
+    }
+
+    /**
+     * Set up a sprite as described by this prefab; its position is not changed.
+     * @param sprite the sprite to set up
+     */
+    public void apply(FinalSprite sprite)
+    {
+        sprite.texture  = this.texture;
+        sprite.width    = this.width;
+        sprite.height   = this.height;
+        sprite.angle    = this.angle;
+        sprite.opacity  = this.opacity;
+        sprite.mirrored = this.mirrored;
+        sprite.flipped  = this.flipped;
+
+        if (hasPhysics)
+            sprite.setPhysics(accelerationValue, maximumSpeed, decelerationValue);
+        if (animation != null)
+        {
+            sprite.animation = animation.clone();
+            sprite.texture   = sprite.animation.currentTexture;
+        }
+        for (int i = 0; i < actionTemplateList.size(); i++)
+            sprite.addAction( actionTemplateList.get(i).get() );
+    }
+
+    /**
+     * Create a sprite as described by this prefab.
+     * @param x x-coordinate of center of sprite
+     * @param y y-coordinate of center of sprite
+     * @return the sprite that was created
+     */
+    public FinalSprite create(double x, double y)
+    {
+        FinalSprite sprite = new FinalSprite( actionTemplateList.size() );
+        apply(sprite);
+        sprite.setPosition(x, y);
+        return sprite;
+    }
+
+    /**
+     * Create a sprite as described by this prefab and add it to a group.
+     * @param group group to add the sprite to
+     * @param x x-coordinate of center of sprite
+     * @param y y-coordinate of center of sprite
+     * @return the sprite that was created
+     */
+    public FinalSprite spawn(Group group, double x, double y)
+    {
+        FinalSprite sprite = create(x, y);
+        group.addSprite(sprite);
+        return sprite;
+    }
+
+    /**
+     * Create a sprite at each of the given positions and add them to a group,
+     *   making room in the group for all of them at once.
+     * @param group group to add the sprites to
+     * @param positions coordinates of the center of each sprite: x and y of the first sprite,
+     *   then x and y of the second sprite, and so on (see {@link TileMap#getSymbolPositions(String)})
+     * @return the number of sprites created
+     */
+    public int spawnAll(Group group, double[] positions)
+    {
+        int count = positions.length / 2;
+        group.ensureCapacity( group.getSpriteCount() + count );
+        for (int i = 0; i < count; i++)
+            group.addSprite( create(positions[2*i], positions[2*i + 1]) );
+        return count;
+    }
+
+    /**
+     * Create a sprite at every occurrence of a symbol in the map data of a tile map,
+     *   and add them to a group (see {@link TileMap#loadMapData(String[], String[], int[])}).
+     * @param group group to add the sprites to
+     * @param map tile map containing the symbols
+     * @param symbol text character marking the position of each sprite
+     * @return the number of sprites created
+     */
+    public int spawnAtSymbol(Group group, TileMap map, String symbol)
+    {
+        return spawnAll( group, map.getSymbolPositions(symbol) );
+    }
+
+    /**
+     * Create a pool whose sprites are set up by this prefab (see {@link SpritePool}).
+     * @param maxSize maximum number of removed sprites kept for reuse
+     * @return the pool that was created
+     */
+    public SpritePool createPool(int maxSize)
+    {
+        return new SpritePool(this::apply, maxSize);
+    }
+}
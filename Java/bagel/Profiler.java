@@ -0,0 +1,280 @@
+package bagel;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *  Measures the cost (time and bytes allocated) of updating sprites,
+ *  and reports the costliest sprites, {@link Group}s, and kinds of {@link Action}
+ *  (named after the {@link ActionFactory} method that created them; see {@link Action#name}).
+ *  <br><br>
+ *  The profiler is off by default. While it is running, calls to {@link FinalSprite#act(double)}
+ *  are measured; in sampling mode, only a random fraction of calls are measured
+ *  and costs are estimated from them, which keeps the overhead low. For example:
+ * <pre>{@code
+ * Profiler.start(64, 1.0);   // measure 1 in 64 updates, report every second
+ * }</pre>
+ *  Measuring one update costs roughly half a microsecond (reading timers and allocation counters),
+ *  so the sample interval should be chosen so that this is small compared to the cost
+ *  of the updates skipped in between; updates that are not measured only choose a random number.
+ *  Reports are printed to {@link #output} (by default, System.out);
+ *  the most recent report is also available from {@link #getLastReport()}.
+ *  Groups are known only for sprites updated by {@link Game#actGroups(double)}.
+ */
+public class Profiler
+{
+    /**
+     * the running profiler; <code>null</code> when profiling is off
+     */
+    static volatile Profiler active;
+
+    /**
+     * one of every sampleInterval updates is measured; 1 to measure every update
+     */
+    public final int sampleInterval;
+
+    /**
+     * amount of time (in seconds) between reports
+     */
+    public final double reportIntervalSeconds;
+
+    /**
+     * number of entries listed in each section of a report
+     */
+    public volatile int topCount;
+
+    /**
+     * where reports are printed; <code>null</code> to only store the most recent report
+     */
+    public volatile PrintStream output;
+
+    // costs measured since the last report
+    HashMap<String, Cost> groupCosts;
+    HashMap<String, Cost> actionCosts;
+    IdentityHashMap<FinalSprite, Cost> spriteCosts;
+    long sampleCount;
+    long intervalStart;
+
+    // most recent report
+    volatile String lastReport;
+
+    // thread that writes reports
+    Thread reporter;
+
+    // the cost of one group, kind of action, or sprite
+    static class Cost
+    {
+        String label;
+        long nanos;
+        long bytes;
+        long count;
+
+        Cost(String label)
+        {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Create a profiler; use {@link #start(int, double)} to create and run a profiler.
+     * @param sampleInterval one of every sampleInterval updates is measured; 1 to measure every update
+     * @param reportIntervalSeconds amount of time (in seconds) between reports
+     */
+    Profiler(int sampleInterval, double reportIntervalSeconds)
+    {
+        if (sampleInterval < 1)
+            throw new IllegalArgumentException("Sample interval must be at least 1");
+        this.sampleInterval = sampleInterval;
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        this.topCount = 10;
+        this.output = System.out;
+        this.groupCosts = new HashMap<String, Cost>();
+        this.actionCosts = new HashMap<String, Cost>();
+        this.spriteCosts = new IdentityHashMap<FinalSprite, Cost>();
+        this.intervalStart = System.nanoTime();
+        this.lastReport = "";
+    }
+
+    /**
+     * Start profiling sprite updates, replacing the running profiler (if any).
+     * @param sampleInterval one of every sampleInterval updates is measured; 1 to measure every update
+     * @param reportIntervalSeconds amount of time (in seconds) between reports
+     * @return the running profiler
+     */
+    public static Profiler start(int sampleInterval, double reportIntervalSeconds)
+    {
+        stop();
+        Profiler profiler = new Profiler(sampleInterval, reportIntervalSeconds);
+        profiler.reporter = new Thread( () -> profiler.reportPeriodically(), "Profiler-Report" );
+        profiler.reporter.setDaemon(true);
+        active = profiler;
+        profiler.reporter.start();
+        return profiler;
+    }
+
+    /**
+     * Stop profiling.
+     */
+    public static void stop()
+    {
+        Profiler profiler = active;
+        active = null;
+        if (profiler != null)
+            profiler.reporter.interrupt();
+    }
+
+    /**
+     * Get the running profiler.
+     * @return the running profiler, or <code>null</code> if profiling is off
+     */
+    public static Profiler getActive()
+    {
+        return active;
+    }
+
+    // decide whether the next update is measured
+    boolean isSampled()
+    {
+        return sampleInterval == 1 || ThreadLocalRandom.current().nextInt(sampleInterval) == 0;
+    }
+
+    // measure one update of a sprite; group may be null if unknown
+    void profileAct(FinalSprite sprite, Group group, double deltaTime)
+    {
+        long startBytes = AllocationTracker.getThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        sprite.performAct(deltaTime, this);
+        long nanos = System.nanoTime() - startTime;
+        long bytes = AllocationTracker.getThreadAllocatedBytes() - startBytes;
+        recordAct(sprite, group, nanos, bytes);
+    }
+
+    // record one application of an action (during a measured update)
+    synchronized void recordAction(Action action, long nanos, long bytes)
+    {
+        add(actionCosts, action.getLabel(), nanos, bytes);
+    }
+
+    // record one measured update of a sprite
+    synchronized void recordAct(FinalSprite sprite, Group group, long nanos, long bytes)
+    {
+        sampleCount++;
+        String groupName = (group == null) ? "(no group)" : group.getName();
+        add(groupCosts, groupName, nanos, bytes);
+
+        Cost cost = spriteCosts.get(sprite);
+        if (cost == null)
+        {
+            cost = new Cost( groupName + "/" + sprite.getClass().getSimpleName()
+                + "@" + Integer.toHexString(System.identityHashCode(sprite)) );
+            spriteCosts.put(sprite, cost);
+        }
+        cost.nanos += nanos;
+        cost.bytes += bytes;
+        cost.count++;
+    }
+
+    // add a measurement to the cost with the given label
+    static void add(HashMap<String, Cost> costs, String label, long nanos, long bytes)
+    {
+        Cost cost = costs.get(label);
+        if (cost == null)
+        {
+            cost = new Cost(label);
+            costs.put(label, cost);
+        }
+        cost.nanos += nanos;
+        cost.bytes += bytes;
+        cost.count++;
+    }
+
+    // reporter thread: write a report at regular intervals until stopped
+    void reportPeriodically()
+    {
+        long intervalMillis = Math.max( (long)(reportIntervalSeconds * 1000), 1 );
+        while (active == this)
+        {
+            try
+            {
+                Thread.sleep(intervalMillis);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            String text = report();
+            PrintStream out = output;
+            if (out != null && active == this)
+                out.print(text);
+        }
+    }
+
+    /**
+     * Create a report of the costliest groups, kinds of actions, and sprites
+     *   measured since the previous report, then start measuring again.
+     *   Called automatically at regular intervals.
+     * @return the report
+     */
+    public String report()
+    {
+        ArrayList<Cost> groups;
+        ArrayList<Cost> actions;
+        ArrayList<Cost> sprites;
+        long samples;
+        long now = System.nanoTime();
+        double seconds;
+        synchronized (this)
+        {
+            groups  = new ArrayList<Cost>( groupCosts.values() );
+            actions = new ArrayList<Cost>( actionCosts.values() );
+            sprites = new ArrayList<Cost>( spriteCosts.values() );
+            samples = sampleCount;
+            seconds = (now - intervalStart) / 1e9;
+            groupCosts.clear();
+            actionCosts.clear();
+            spriteCosts.clear();
+            sampleCount = 0;
+            intervalStart = now;
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append( String.format("profile: %.1fs, %d updates measured", seconds, samples) );
+        if (sampleInterval > 1)
+            text.append( String.format(" (1 in %d; costs estimated)", sampleInterval) );
+        text.append( System.lineSeparator() );
+        appendSection(text, "groups",  groups);
+        appendSection(text, "actions", actions);
+        appendSection(text, "sprites", sprites);
+        lastReport = text.toString();
+        return lastReport;
+    }
+
+    // append the costliest entries of one kind, with estimated totals per second
+    void appendSection(StringBuilder text, String title, Collection<Cost> costs)
+    {
+        ArrayList<Cost> list = new ArrayList<Cost>(costs);
+        list.sort( (a, b) -> Long.compare(b.nanos, a.nanos) );
+        text.append( String.format("  %-40s %10s %10s %10s%n", title, "ms", "KB", "calls") );
+        int count = Math.min(topCount, list.size());
+        for (int i = 0; i < count; i++)
+        {
+            Cost cost = list.get(i);
+            text.append( String.format("  %-40s %10.3f %10.1f %10d%n", cost.label,
+                cost.nanos * sampleInterval / 1e6, cost.bytes * sampleInterval / 1024.0,
+                cost.count * sampleInterval) );
+        }
+    }
+
+    /**
+     * Get the most recent report.
+     * @return the most recent report, or an empty string if none has been created
+     */
+    public String getLastReport()
+    {
+        return lastReport;
+    }
+}
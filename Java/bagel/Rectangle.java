@@ -1,6 +1,7 @@
 package bagel;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *  A rectangle shape, defined by its position and size, 
@@ -44,6 +45,18 @@ public class Rectangle
 	 */
 	double bottom;
 
+	/**
+	 * number of overlap checks made by collision queries ({@link Sprite#isOverlapping(Sprite)}
+	 * and the {@link TileMap} overlap methods) on each thread; each thread only changes its own count,
+	 * so no checks are lost while sprites are updated on several threads.
+	 * Read by {@link FrameMetrics}, which counts the checks made during each game's updates.
+	 */
+	static final ThreadLocal<long[]> overlapChecks = ThreadLocal.withInitial( () -> new long[1] );
+
+	// number of games writing telemetry (see Game.setTelemetryFile); overlap checks are only counted
+	//   while this is greater than zero, so that checks do not look up the thread's count otherwise
+	static final AtomicInteger overlapCountingGames = new AtomicInteger();
+
 	/**
 	 * Initialize rectangle with all values set to 0.
 	 */
@@ -96,6 +109,18 @@ public class Rectangle
 		return !noOverlap;
 	}
 
+	/**
+	 * Add to the number of overlap checks made on the current thread (see {@link #overlapChecks}),
+	 * if any game is writing telemetry; called once per collision query
+	 * (by {@link TileMap} once for all the tiles it checks), rather than by each rectangle check.
+	 * @param count number of checks made by the query
+	 */
+	static void countOverlapChecks(long count)
+	{
+		if (overlapCountingGames.get() > 0)
+			overlapChecks.get()[0] += count;
+	}
+
 	/**
 	 * Assuming that this rectangle and other rectangle overlap,
 	 * calculate the minimum length vector required to translate this rectangle
@@ -0,0 +1,273 @@
+package bagel;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ *  A copy of the data needed to draw every visible sprite, in every group, at one moment:
+ *  texture, position, size, angle, opacity, and orientation, stored in draw order.
+ *  Captured by the thread updating the game and drawn by another thread,
+ *  so that drawing never reads sprites while they are being changed
+ *  (see {@link SnapshotBuffer} and {@link Game#threadedRendering}).
+ *  <br><br>
+ *  Arrays are reused from one capture to the next and only grow when needed.
+ */
+public class RenderSnapshot
+{
+    /**
+     * number of sprites stored in this snapshot
+     */
+    public int spriteCount;
+
+    /**
+     * number of the update that this snapshot was captured after;
+     *   used by {@link SnapshotBuffer} to determine which snapshot is newest
+     */
+    volatile long frameNumber;
+
+    // sprite data, stored in draw order
+    Texture[] texture;
+    double[] x;
+    double[] y;
+    double[] width;
+    double[] height;
+    double[] angle;
+    float[] opacity;
+    boolean[] mirrored;
+    boolean[] flipped;
+
+    /**
+     * number of groups stored in this snapshot
+     */
+    public int groupCount;
+
+    // the sprites of group i are stored at indices groupEnd[i-1] (or 0) up to groupEnd[i]
+    Group[] group;
+    int[] groupEnd;
+
+    // reused when drawing
+    AffineTransform transform;
+
+    /**
+     * Create an empty snapshot.
+     */
+    public RenderSnapshot()
+    {
+        this.spriteCount = 0;
+        this.groupCount = 0;
+        this.frameNumber = 0;
+        this.transform = new AffineTransform();
+        this.resize(64);
+        this.group = new Group[8];
+        this.groupEnd = new int[8];
+    }
+
+    // change the capacity of the sprite data arrays, keeping existing data
+    private void resize(int capacity)
+    {
+        texture  = (texture == null) ? new Texture[capacity] : Arrays.copyOf(texture, capacity);
+        x        = (x == null) ? new double[capacity] : Arrays.copyOf(x, capacity);
+        y        = (y == null) ? new double[capacity] : Arrays.copyOf(y, capacity);
+        width    = (width == null) ? new double[capacity] : Arrays.copyOf(width, capacity);
+        height   = (height == null) ? new double[capacity] : Arrays.copyOf(height, capacity);
+        angle    = (angle == null) ? new double[capacity] : Arrays.copyOf(angle, capacity);
+        opacity  = (opacity == null) ? new float[capacity] : Arrays.copyOf(opacity, capacity);
+        mirrored = (mirrored == null) ? new boolean[capacity] : Arrays.copyOf(mirrored, capacity);
+        flipped  = (flipped == null) ? new boolean[capacity] : Arrays.copyOf(flipped, capacity);
+    }
+
+    /**
+     * Replace the contents of this snapshot with the current state of all groups.
+     * @param groupList groups to capture, in draw order
+     * @param alpha interpolation amount used for sprites that store a previous state
+     *   (see {@link Sprite#draw(java.awt.Graphics, double)})
+     */
+    public void capture(ArrayList<Group> groupList, double alpha)
+    {
+        capture(groupList, null, alpha);
+    }
+
+    /**
+     * Replace the contents of this snapshot with the current state of all groups,
+     *   followed by the visible entities of each entity store.
+     * @param groupList groups to capture, in draw order
+     * @param storeList entity stores to capture, in draw order; <code>null</code> for none
+     * @param alpha interpolation amount used for sprites that store a previous state
+     *   (see {@link Sprite#draw(java.awt.Graphics, double)})
+     */
+    public void capture(ArrayList<Group> groupList, ArrayList<EntityStore> storeList, double alpha)
+    {
+        spriteCount = 0;
+        groupCount = 0;
+
+        for (Group g : groupList)
+        {
+            Sprite[] sprites = g.getSpriteArray();
+            int count = g.getSpriteCount();
+            for (int i = 0; i < count; i++)
+            {
+                addSprite(sprites[i], alpha);
+            }
+
+            if (groupCount == group.length)
+            {
+                group    = Arrays.copyOf(group, groupCount * 2);
+                groupEnd = Arrays.copyOf(groupEnd, groupCount * 2);
+            }
+            group[groupCount] = g;
+            groupEnd[groupCount] = spriteCount;
+            groupCount++;
+        }
+
+        // entities are not part of any group
+        if (storeList != null)
+        {
+            for (EntityStore store : storeList)
+                addEntities(store);
+        }
+
+        // release references to groups no longer captured
+        Arrays.fill(group, groupCount, group.length, null);
+    }
+
+    // reserve space for one more sprite; return its index
+    private int nextIndex()
+    {
+        if (spriteCount == texture.length)
+            resize(spriteCount * 2);
+        return spriteCount++;
+    }
+
+    // store data used to draw a sprite
+    private void addSprite(Sprite s, double alpha)
+    {
+        if (!s.visible || s.texture == null)
+            return;
+
+        int i = nextIndex();
+        texture[i] = s.texture;
+        x[i] = s.x;
+        y[i] = s.y;
+        angle[i] = s.angle;
+        if (s.hasPreviousState && alpha < 1.0)
+        {
+            x[i] = s.previousX + (x[i] - s.previousX) * alpha;
+            y[i] = s.previousY + (y[i] - s.previousY) * alpha;
+            angle[i] = s.previousAngle + (angle[i] - s.previousAngle) * alpha;
+        }
+        width[i] = s.width;
+        height[i] = s.height;
+        opacity[i] = (float)s.opacity;
+        mirrored[i] = s.mirrored;
+        flipped[i] = s.flipped;
+    }
+
+    // store data used to draw the visible entities of an entity store
+    private void addEntities(EntityStore store)
+    {
+        for (int e = 0; e < store.count; e++)
+        {
+            if (!store.visible[e] || store.texture[e] == null)
+                continue;
+
+            int i = nextIndex();
+            texture[i] = store.texture[e];
+            x[i] = store.x[e];
+            y[i] = store.y[e];
+            width[i] = store.width[e];
+            height[i] = store.height[e];
+            angle[i] = store.angle[e];
+            opacity[i] = (float)store.opacity[e];
+            mirrored[i] = store.mirrored[e];
+            flipped[i] = store.flipped[e];
+        }
+    }
+
+    /**
+     * Get the number of sprites stored for a group.
+     * @param groupIndex position of the group in the captured group list
+     * @return number of visible sprites in the group when captured
+     */
+    public int getGroupSpriteCount(int groupIndex)
+    {
+        int start = (groupIndex == 0) ? 0 : groupEnd[groupIndex - 1];
+        return groupEnd[groupIndex] - start;
+    }
+
+    /**
+     * Draw all sprites stored in this snapshot.
+     * @param g graphics context to draw on
+     */
+    public void draw(Graphics2D g)
+    {
+        AffineTransform base = g.getTransform();
+        Composite baseComposite = g.getComposite();
+        Object baseInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        for (int i = 0; i < spriteCount; i++)
+        {
+            drawTexture(g, base, transform, texture[i], x[i], y[i], width[i], height[i],
+                angle[i], opacity[i], mirrored[i], flipped[i]);
+        }
+
+        g.setTransform(base);
+        g.setComposite(baseComposite);
+        if (baseInterpolation != null)
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, baseInterpolation);
+    }
+
+    /**
+     * Draw the region of a texture centered at (x,y), scaled to the given size,
+     *   rotated around its center, and optionally reversed along either axis.
+     *   Leaves the transform and composite of the graphics context changed.
+     * @param g graphics context to draw on
+     * @param base transform of the graphics context before drawing
+     * @param scratch transform object to reuse for the calculation
+     * @param tex texture to draw
+     * @param x x-coordinate of center
+     * @param y y-coordinate of center
+     * @param width width to draw
+     * @param height height to draw
+     * @param angle angle of rotation (in degrees)
+     * @param opacity value from 0.0 (fully transparent) to 1.0 (fully opaque)
+     * @param mirrored reverse along the x direction
+     * @param flipped reverse along the y direction
+     */
+    static void drawTexture(Graphics2D g, AffineTransform base, AffineTransform scratch, Texture tex,
+        double x, double y, double width, double height, double angle, float opacity,
+        boolean mirrored, boolean flipped)
+    {
+        Rectangle region = tex.region;
+        double scaleX = width / region.width;
+        double scaleY = height / region.height;
+        if (mirrored)
+            scaleX *= -1;
+        if (flipped)
+            scaleY *= -1;
+
+        scratch.setTransform(base);
+        scratch.translate(x, y);
+        if (angle != 0)
+            scratch.rotate(angle * Math.PI/180);
+        scratch.scale(scaleX, scaleY);
+        scratch.translate(-region.width/2, -region.height/2);
+        g.setTransform(scratch);
+
+        if (opacity < 1.0f)
+            g.setComposite( AlphaComposite.getInstance(AlphaComposite.SRC_OVER, Math.max(0, opacity)) );
+        else
+            g.setComposite( AlphaComposite.SrcOver );
+
+        int sx = (int)region.left;
+        int sy = (int)region.top;
+        int sw = (int)region.width;
+        int sh = (int)region.height;
+        g.drawImage(tex.image, 0, 0, sw, sh, sx, sy, sx + sw, sy + sh, null);
+    }
+}
@@ -0,0 +1,120 @@
+package bagel;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Runs many independent {@link Game} instances (sessions) in one process, without windows.
+ *  All sessions share a small pool of threads; each session is ticked at its own fixed rate
+ *  by a {@link HeadlessRunner}, and the ticks of one session never run at the same time.
+ *  <br><br>
+ *  Each game is a separate object with its own groups, input and settings
+ *  (such as {@link Game#windowWidth}), so sessions do not share any game state.
+ * <pre>{@code
+ * SessionHost host = new SessionHost(4);
+ * for (int i = 0; i < 500; i++)
+ *     host.addSession(new MyGame(), 30);
+ * }</pre>
+ */
+public class SessionHost
+{
+    // threads used to run the ticks of all sessions
+    ScheduledExecutorService executor;
+
+    // all sessions currently hosted
+    CopyOnWriteArrayList<GameSession> sessionList;
+
+    /**
+     * Create a host that runs sessions on the given number of threads.
+     * @param threadCount number of threads shared by all sessions (e.g. number of processor cores)
+     */
+    public SessionHost(int threadCount)
+    {
+        ThreadFactory threadFactory = (Runnable r) ->
+        {
+            Thread thread = new Thread(r, "Session-Host");
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = Executors.newScheduledThreadPool(threadCount, threadFactory);
+        this.sessionList = new CopyOnWriteArrayList<GameSession>();
+    }
+
+    /**
+     * Start running a game in a new session.
+     * The game is initialized by its first tick, on one of the host threads.
+     * @param game the game to run
+     * @param ticksPerSecond number of ticks per second of real time
+     * @return the session running the game
+     */
+    public GameSession addSession(Game game, int ticksPerSecond)
+    {
+        GameSession session = new GameSession(game, ticksPerSecond);
+        sessionList.add(session);
+        // synchronize, so that the future is set before the first tick can use it
+        synchronized (session)
+        {
+            session.future = executor.scheduleAtFixedRate(
+                () -> { synchronized (session) { session.tick(); } },
+                0, session.periodNanos, TimeUnit.NANOSECONDS);
+        }
+        return session;
+    }
+
+    /**
+     * Stop running a session and remove it from this host.
+     * @param session the session to remove
+     */
+    public void removeSession(GameSession session)
+    {
+        session.future.cancel(false);
+        sessionList.remove(session);
+    }
+
+    /**
+     * Get a list of all sessions currently hosted.
+     * @return a copy of the list of sessions
+     */
+    public ArrayList<GameSession> getSessionList()
+    {
+        return new ArrayList<GameSession>(sessionList);
+    }
+
+    /**
+     * Get the number of sessions currently hosted.
+     * @return the number of sessions
+     */
+    public int getSessionCount()
+    {
+        return sessionList.size();
+    }
+
+    /**
+     * Get the total load of all sessions, measured in threads;
+     *   see {@link GameSession#getLoad()}.
+     *   If this value approaches the number of threads, sessions will start to fall behind.
+     * @return the sum of the load of all sessions
+     */
+    public double getTotalLoad()
+    {
+        double total = 0;
+        for (GameSession session : sessionList)
+            total += session.getLoad();
+        return total;
+    }
+
+    /**
+     * Stop all sessions and the threads that run them.
+     */
+    public void shutdown()
+    {
+        for (GameSession session : sessionList)
+            session.future.cancel(false);
+        sessionList.clear();
+        executor.shutdown();
+    }
+}
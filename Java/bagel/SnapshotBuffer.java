@@ -0,0 +1,79 @@
+package bagel;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *  Passes {@link RenderSnapshot}s from the thread updating the game
+ *  to the thread drawing it, without locks.
+ *  <br><br>
+ *  Three snapshots are used: one being written by the update thread,
+ *  one being drawn by the render thread, and the most recently published one.
+ *  Publishing and acquiring exchange a snapshot with the published one,
+ *  so the two threads never use the same snapshot at the same time,
+ *  neither thread ever waits for the other, and the render thread always
+ *  draws the newest complete snapshot.
+ */
+public class SnapshotBuffer
+{
+    // snapshot being written by the update thread
+    RenderSnapshot writeSnapshot;
+
+    // snapshot being drawn by the render thread
+    RenderSnapshot readSnapshot;
+
+    // most recently published snapshot
+    AtomicReference<RenderSnapshot> latestSnapshot;
+
+    // number of snapshots published
+    long frameNumber;
+
+    /**
+     * Create a buffer containing three empty snapshots.
+     */
+    public SnapshotBuffer()
+    {
+        this.writeSnapshot = new RenderSnapshot();
+        this.readSnapshot = new RenderSnapshot();
+        this.latestSnapshot = new AtomicReference<RenderSnapshot>( new RenderSnapshot() );
+        this.frameNumber = 0;
+    }
+
+    /**
+     * Get the snapshot to be filled by the update thread
+     *   before calling {@link #publish()}.
+     * @return the snapshot owned by the update thread
+     */
+    public RenderSnapshot getWriteSnapshot()
+    {
+        return writeSnapshot;
+    }
+
+    /**
+     * Make the write snapshot available to the render thread.
+     * Called by the update thread only.
+     */
+    public void publish()
+    {
+        frameNumber++;
+        writeSnapshot.frameNumber = frameNumber;
+        writeSnapshot = latestSnapshot.getAndSet(writeSnapshot);
+    }
+
+    /**
+     * Get the newest published snapshot, to be drawn by the render thread.
+     * The returned snapshot remains unchanged until the next call to this method.
+     * Called by the render thread only.
+     * @return the newest snapshot; <code>null</code> if nothing has been published yet
+     */
+    public RenderSnapshot acquireLatest()
+    {
+        // only exchange when the published snapshot is newer than the one already held;
+        //   the update thread can only replace it with an even newer one in the meantime
+        if (latestSnapshot.get().frameNumber > readSnapshot.frameNumber)
+            readSnapshot = latestSnapshot.getAndSet(readSnapshot);
+
+        if (readSnapshot.frameNumber == 0)
+            return null;
+        return readSnapshot;
+    }
+}
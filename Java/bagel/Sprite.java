@@ -1,18 +1,32 @@
 package bagel;
 
+import java.awt.Composite;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 
 
+/**
+ * Sprites represent game world entities: characters, environment, items, obstacles, etc.
+ * (For sprites with physics, actions and animations, see {@link FinalSprite}.)
+ */
 public class Sprite
 {
     // core properties
 	
 	/**
-	 * position of top left corner? center? of sprite
+	 * x-coordinate of center of sprite
 	 */
-	public Vector position;
+	public double x;
+
+	/**
+	 * y-coordinate of center of sprite
+	 */
+	public double y;
 	
 	/**
 	 * image displayed when rendering this sprite
@@ -20,9 +34,9 @@ public class Sprite
 	public Texture texture;
 	
 	/**
-	 * shape used for collision
+	 * shape used for collision; created when first needed (see {@link #getBoundary()})
 	 */
-	public Rectangle boundary;
+	Rectangle boundary;
 
 	/**
 	 * width of boundary rectangle and rendered image
@@ -39,32 +53,197 @@ public class Sprite
 	 */
 	public boolean visible;
 
-	
+	// true once this sprite has been removed from the game (see FinalSprite.remove);
+	//   only set by markRemoved, which tells the groups containing this sprite
+	boolean removed;
+
+	// graphics properties
 
-	// angle (in degrees) of texture rotation
+	/**
+	 * angle (in degrees) of texture rotation
+	 */
 	public double angle;
+
+	/**
+	 * amount of transparency; value from 0.0 (fully transparent) to 1.0 (fully opaque)
+	 */
+	public double opacity;
+
+	/**
+	 *  determines whether texture is reversed along the x direction
+	 */
+	public boolean mirrored;
+
+	/**
+	 *  determines whether texture is reversed along the y direction
+	 */
+	public boolean flipped;
+
+	// state at the end of the previous fixed timestep update;
+	//   used to interpolate drawing between updates (see Game.setFixedTimestep)
+	double previousX;
+	double previousY;
+	double previousAngle;
+	boolean hasPreviousState;
+
+	// groups containing this sprite, and the position of this sprite in each group's array,
+	//   so that groups can remove sprites without searching (see Group.removeSprite)
+	Group[] memberGroups;
+	int[] memberSlots;
+	int memberCount;
+
+	// number of the last actGroups call (see ActTask.nextPhase) that updated this sprite;
+	//   changed atomically, since tasks for different groups may reach the same sprite at once
+	long actPhase;
+	private static final VarHandle ACT_PHASE;
+	static
+	{
+		try
+		{
+			ACT_PHASE = MethodHandles.lookup().findVarHandle(Sprite.class, "actPhase", long.class);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	// reused by draw, instead of creating a transform for each sprite drawn;
+	//   one for each thread, since several games (or renderers) may draw at once
+	private static final ThreadLocal<AffineTransform> drawTransform = ThreadLocal.withInitial(AffineTransform::new);
+
+	// pool that this sprite is returned to once it has been removed and taken out of all groups
+	//   (null if it was not acquired from a pool), and whether it is waiting in that pool
+	SpritePool pool;
+	boolean inPool;
 	
     /**
 	 * initialize default values of sprite properties
 	 */
 	public Sprite()
 	{  
-		this.position = new Vector();
-		this.boundary = new Rectangle();
+		this.x = 0;
+		this.y = 0;
 		this.visible  = true;	
+		this.removed  = false;
+
+		// graphics
+		this.opacity  = 1.00;
 		this.angle = 0;	
+		this.mirrored = false;
+		this.flipped  = false;
+		this.hasPreviousState = false;
 	}
 
 	// basic methods
 
+	/**
+	 * Check if this sprite has been removed from the game (see {@link FinalSprite#remove()});
+	 *   removed sprites are taken out of all groups at the end of the frame.
+	 * @return true if this sprite has been removed
+	 */
+	public boolean isRemoved()
+	{
+		return this.removed;
+	}
+
+	// mark this sprite as removed, and mark the groups containing it to be checked for removed sprites,
+	//   so that it is taken out of them at the end of the frame (see Group.reapRemovedSprites)
+	void markRemoved()
+	{
+		if (!this.removed)
+		{
+			this.removed = true;
+			for (int k = 0; k < this.memberCount; k++)
+				this.memberGroups[k].hasRemovedSprites = true;
+		}
+	}
+
+	// record that this sprite is being updated in the given phase;
+	//   returns false if it has already been updated in that phase (as part of another group)
+	boolean claimAct(long phase)
+	{
+		if (this.memberCount < 2)
+			return true;
+		return (long)ACT_PHASE.getAndSet(this, phase) != phase;
+	}
+
+	// position of this sprite in the given group, or -1 if the group does not contain it
+	int getSlot(Group group)
+	{
+		for (int i = 0; i < memberCount; i++)
+		{
+			if (memberGroups[i] == group)
+				return memberSlots[i];
+		}
+		return -1;
+	}
+
+	// record the position of this sprite in the given group (added or moved)
+	void setSlot(Group group, int slot)
+	{
+		for (int i = 0; i < memberCount; i++)
+		{
+			if (memberGroups[i] == group)
+			{
+				memberSlots[i] = slot;
+				return;
+			}
+		}
+		if (memberGroups == null)
+		{
+			memberGroups = new Group[2];
+			memberSlots = new int[2];
+		}
+		else if (memberCount == memberGroups.length)
+		{
+			memberGroups = Arrays.copyOf(memberGroups, memberCount * 2);
+			memberSlots = Arrays.copyOf(memberSlots, memberCount * 2);
+		}
+		memberGroups[memberCount] = group;
+		memberSlots[memberCount] = slot;
+		memberCount++;
+	}
+
+	// forget the position of this sprite in the given group (removed)
+	void clearSlot(Group group)
+	{
+		for (int i = 0; i < memberCount; i++)
+		{
+			if (memberGroups[i] == group)
+			{
+				memberCount--;
+				memberGroups[i] = memberGroups[memberCount];
+				memberSlots[i] = memberSlots[memberCount];
+				memberGroups[memberCount] = null;
+				return;
+			}
+		}
+	}
+
 	/**
 	 * Set the coordinates of the center of this sprite.
+	 * The sprite is drawn at the new position immediately, rather than moving there
+	 *  over the next frame when drawing is interpolated (see {@link Game#setFixedTimestep(double, int)}).
 	 * @param x x-coordinate of center of sprite
 	 * @param y y-coordinate of center of sprite
 	 */
 	public void setPosition(double x, double y)
 	{
-		this.position.setValues(x, y);
+		this.x = x;
+		this.y = y;
+		this.snapPreviousPosition();
+	}
+
+	/**
+	 * Get the coordinates of the center of this sprite, as a new vector.
+	 * @return coordinates of center of sprite
+	 * @deprecated sprites no longer store a position vector; use {@link #x} and {@link #y}
+	 */
+	@Deprecated
+	public Vector getPosition()
+	{
+		return new Vector(this.x, this.y);
 	}
 
 	/**
@@ -74,12 +253,13 @@ public class Sprite
 	 */
 	public void moveBy(double deltaX, double deltaY)
 	{
-		this.position.addValues(deltaX, deltaY);
+		this.x += deltaX;
+		this.y += deltaY;
 	}   
 
 	/**
 	 * Set the texture to be displayed when rendering this sprite.
-	 * Also sets default width and height of this sprite.
+	 * Also sets width and height of this sprite.
 	 * @param tex texture to use for this sprite
 	 */
 	public void setTexture(Texture tex)
@@ -90,7 +270,7 @@ public class Sprite
 	}
 
 	/**
-	 * Set size to use for both collision re and image drawing
+	 * Set size to use for both collision and image drawing
 	 * @param width width of sprite
 	 * @param height height of sprite
 	 */
@@ -105,12 +285,14 @@ public class Sprite
 	/**
 	 * Get boundary shape for this sprite, adjusted according to current position.
 	 * Angle of rotation has no effect on the boundary.
+	 * The same rectangle is returned (and updated) by each call.
 	 * @return boundary shape for this sprite
 	 */
-	Rectangle getBoundary()
+	public Rectangle getBoundary()
 	{
-		this.boundary.setValues(
-			this.position.x - this.width/2, this.position.y - this.height/2, this.width, this.height);
+		if (this.boundary == null)
+			this.boundary = new Rectangle();
+		this.boundary.setValues(this.x - this.width/2, this.y - this.height/2, this.width, this.height);
 		return this.boundary;
 	}
 
@@ -121,6 +303,8 @@ public class Sprite
 	 */
 	public boolean isOverlapping(Sprite other)
 	{
+		// counted only while telemetry is written, so that checks in tight loops stay fast
+		Rectangle.countOverlapChecks(1);
 		return this.getBoundary().isOverlapping( other.getBoundary() );
 	}
 
@@ -157,8 +341,8 @@ public class Sprite
 	 */
 	public void moveAtAngle(double distance, double angleDegrees)
 	{
-		this.position.addValues( distance * Math.cos(angleDegrees * Math.PI/180),
-		                         distance * Math.sin(angleDegrees * Math.PI/180)  );
+		this.x += distance * Math.cos(angleDegrees * Math.PI/180);
+		this.y += distance * Math.sin(angleDegrees * Math.PI/180);
 	}
 
 	/**
@@ -170,21 +354,69 @@ public class Sprite
 		this.moveAtAngle(distance, this.angle);
 	}
 
+	/**
+	 * Store the current position and angle of this sprite,
+	 *  so that drawing can be interpolated between this state and the next update.
+	 */
+	void storePreviousState()
+	{
+		this.previousX = this.x;
+		this.previousY = this.y;
+		this.previousAngle = this.angle;
+		this.hasPreviousState = true;
+	}
+
+	// set the previous position to the current position, so that a sprite moved directly
+	//  (rather than by an update) is not drawn partway between its old and new positions
+	void snapPreviousPosition()
+	{
+		this.previousX = this.x;
+		this.previousY = this.y;
+	}
+
+	/**
+	 * Render this sprite at its current position:
+	 * centered at (x,y), scaled to width and height, rotated by angle,
+	 * reversed if mirrored or flipped, and drawn with the given opacity.
+	 * @param g graphics context to draw on
+	 */
 	public void draw(Graphics g) 
 	{
-		if (!this.visible)
+		this.draw(g, 1.0);
+	}
+
+	/**
+	 * Render this sprite, interpolating between the previous and current
+	 *  position and angle (when a previous state has been stored).
+	 * @param g graphics context to draw on
+	 * @param alpha fraction of the way from the previous state (0.0) to the current state (1.0)
+	 */
+	public void draw(Graphics g, double alpha) 
+	{
+		if (!this.visible || this.texture == null)
 			return;
 
-		Graphics2D g2d = (Graphics2D) g.create();
-		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-
-        g2d.rotate(Math.toRadians(angle), position.x, position.y);
-		g2d.translate(-width/2, -height/2);
-		// determine scaling factors
-		double scaleX = width / texture.region.width;
-		double scaleY = height / texture.region.height;
-		g2d.scale(scaleX, scaleY);
-        g2d.drawImage(texture.image, (int)(position.x / scaleX), (int)(position.y / scaleY), null);
-        g2d.dispose();
-    }
+		double drawX = this.x;
+		double drawY = this.y;
+		double drawAngle = this.angle;
+		if (this.hasPreviousState && alpha < 1.0)
+		{
+			drawX = this.previousX + (drawX - this.previousX) * alpha;
+			drawY = this.previousY + (drawY - this.previousY) * alpha;
+			drawAngle = this.previousAngle + (drawAngle - this.previousAngle) * alpha;
+		}
+
+		Graphics2D context = (Graphics2D) g;
+		AffineTransform base = context.getTransform();
+		Composite baseComposite = context.getComposite();
+		Object baseInterpolation = context.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		context.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		RenderSnapshot.drawTexture(context, base, drawTransform.get(), this.texture,
+			drawX, drawY, this.width, this.height, drawAngle, (float)this.opacity,
+			this.mirrored, this.flipped);
+		context.setTransform(base);
+		context.setComposite(baseComposite);
+		if (baseInterpolation != null)
+			context.setRenderingHint(RenderingHints.KEY_INTERPOLATION, baseInterpolation);
+	}
 }
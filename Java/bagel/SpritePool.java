@@ -0,0 +1,249 @@
+package bagel;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ *  Reuses final sprites of one kind (an archetype), such as bullets, particles or pickups,
+ *  so that games which create and remove many sprites each second do not create as much garbage.
+ *  <br><br>
+ *  {@link #acquire()} returns a sprite that was removed earlier if one is available,
+ *  and otherwise creates a new one; either way, the sprite is reset to its default state
+ *  and then set up by the pool's initializer. When a pooled sprite is removed
+ *  (see {@link FinalSprite#remove()}), it is returned to its pool once it has been taken out
+ *  of every group that contains it (at the end of the frame, see {@link Group#reapRemovedSprites()}),
+ *  keeping its boundary rectangle, action list and physics object for its next use.
+ *  For example:
+ * <pre>{@code
+ * bulletPool = new SpritePool( bullet -> {
+ *     bullet.setTexture(bulletTexture);
+ *     bullet.setPhysics(0, 800, 0);
+ * }, 256 );
+ * ...
+ * FinalSprite bullet = spawn(bulletPool, bulletGroup);
+ * bullet.setPosition(ship.x, ship.y);
+ * bullet.physics.setSpeed(800);
+ * bullet.physics.setMotionAngle(ship.angle);
+ * }</pre>
+ *  A pooled sprite must not be used after it is removed, since it may be returned by a later acquire.
+ *  Pools are not thread-safe; acquire sprites on the thread that updates the game.
+ */
+public class SpritePool
+{
+    // sets up each acquired sprite (texture, size, physics values, actions); may be null
+    private final Consumer<FinalSprite> initializer;
+
+    // sprites available for reuse, in positions 0 to freeCount - 1
+    private FinalSprite[] freeSprites;
+    private int freeCount;
+
+    // maximum number of sprites kept for reuse
+    private int maxSize;
+
+    // statistics
+    private long hitCount;
+    private long missCount;
+    private long releaseCount;
+    private long discardCount;
+
+    /**
+     * Create a pool that keeps up to the given number of sprites for reuse.
+     * @param initializer sets up each acquired sprite (for example, its texture and physics values);
+     *   may be <code>null</code>
+     * @param maxSize maximum number of removed sprites kept for reuse; further sprites are discarded
+     */
+    public SpritePool(Consumer<FinalSprite> initializer, int maxSize)
+    {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Pool size must not be negative: " + maxSize);
+        this.initializer = initializer;
+        this.maxSize = maxSize;
+        this.freeSprites = new FinalSprite[ Math.min(maxSize, 64) ];
+        this.freeCount = 0;
+    }
+
+    /**
+     * Return a sprite from this pool, or a new sprite if none is available,
+     *   reset to default values and set up by this pool's initializer.
+     * @return a sprite that is not in any group
+     */
+    public FinalSprite acquire()
+    {
+        FinalSprite sprite;
+        if (freeCount > 0)
+        {
+            freeCount--;
+            sprite = freeSprites[freeCount];
+            freeSprites[freeCount] = null;
+            sprite.reset();
+            hitCount++;
+        }
+        else
+        {
+            sprite = new FinalSprite();
+            missCount++;
+        }
+        sprite.pool = this;
+        sprite.inPool = false;
+        if (initializer != null)
+            initializer.accept(sprite);
+        return sprite;
+    }
+
+    /**
+     * Create sprites so that the given number are available for reuse
+     *   (up to the maximum size), so that they do not need to be created while the game runs.
+     * @param count number of sprites that should be available
+     */
+    public void prefill(int count)
+    {
+        count = Math.min(count, maxSize);
+        while (freeCount < count)
+        {
+            FinalSprite sprite = new FinalSprite();
+            sprite.pool = this;
+            store(sprite);
+        }
+    }
+
+    /**
+     * Remove a sprite (if it has not been removed) and return it to this pool.
+     * Only needed for sprites that are not in any group; sprites in groups are returned
+     *   automatically once they are removed and taken out of their groups.
+     * @param sprite a sprite acquired from this pool, that is not in any group
+     */
+    public void release(FinalSprite sprite)
+    {
+        if (sprite.pool != this)
+            throw new IllegalArgumentException("Sprite was not acquired from this pool");
+        if (sprite.memberCount > 0)
+            throw new IllegalArgumentException("Sprite is still in a group; remove it instead");
+        sprite.remove();
+        recycle(sprite);
+    }
+
+    // return a removed sprite to this pool, once it is not in any group; called by Group
+    void recycle(Sprite sprite)
+    {
+        if (sprite.inPool)
+            return;
+        releaseCount++;
+        if (freeCount < maxSize)
+            store( (FinalSprite)sprite );
+        else
+        {
+            sprite.pool = null;
+            discardCount++;
+        }
+    }
+
+    // add a sprite to the available sprites, enlarging the array if needed
+    private void store(FinalSprite sprite)
+    {
+        if (freeCount == freeSprites.length)
+            freeSprites = Arrays.copyOf(freeSprites, Math.min(Math.max(freeCount * 2, 16), maxSize));
+        freeSprites[freeCount] = sprite;
+        freeCount++;
+        sprite.inPool = true;
+    }
+
+    /**
+     * Set the maximum number of sprites kept for reuse;
+     *   if more are currently available, the extra sprites are discarded.
+     * @param maxSize maximum number of removed sprites kept for reuse
+     */
+    public void setMaxSize(int maxSize)
+    {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("Pool size must not be negative: " + maxSize);
+        while (freeCount > maxSize)
+        {
+            freeCount--;
+            freeSprites[freeCount].pool = null;
+            freeSprites[freeCount].inPool = false;
+            freeSprites[freeCount] = null;
+            discardCount++;
+        }
+        if (freeSprites.length > maxSize)
+            freeSprites = Arrays.copyOf(freeSprites, maxSize);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return maximum number of removed sprites kept for reuse
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * @return number of sprites currently available for reuse
+     */
+    public int getFreeCount()
+    {
+        return freeCount;
+    }
+
+    /**
+     * @return number of acquires that reused a sprite
+     */
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return number of acquires that created a new sprite, since none was available
+     */
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return number of removed sprites returned to this pool (including those discarded)
+     */
+    public long getReleaseCount()
+    {
+        return releaseCount;
+    }
+
+    /**
+     * @return number of removed sprites that were not kept, since the pool was full
+     */
+    public long getDiscardCount()
+    {
+        return discardCount;
+    }
+
+    /**
+     * @return fraction of acquires that reused a sprite (from 0.0 to 1.0); 0 if none have been made
+     */
+    public double getHitRate()
+    {
+        long total = hitCount + missCount;
+        return (total == 0) ? 0 : (double)hitCount / total;
+    }
+
+    /**
+     * Set all statistics to zero.
+     */
+    public void resetStatistics()
+    {
+        hitCount = 0;
+        missCount = 0;
+        releaseCount = 0;
+        discardCount = 0;
+    }
+
+    /**
+     * @return summary of the statistics of this pool
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("SpritePool[free=%d/%d, hits=%d, misses=%d, hit rate=%.1f%%, released=%d, discarded=%d]",
+            freeCount, maxSize, hitCount, missCount, 100 * getHitRate(), releaseCount, discardCount);
+    }
+}
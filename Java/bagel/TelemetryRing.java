@@ -0,0 +1,222 @@
+package bagel;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ *  Writes per-frame metrics into a fixed-size, memory-mapped file,
+ *  so that another process (such as {@link TelemetryViewer}) can read them while the game runs.
+ *  Enabled with {@link Game#setTelemetryFile(String, int)}.
+ *  <br><br>
+ *  Each frame writes one record: frame, input, update, render, and present times,
+ *  bytes allocated, overlap checks, sprites drawn, and the number of sprites in each {@link Group}.
+ *  The file holds a fixed number of records; once full, the oldest records are overwritten.
+ *  Writing a record does not create objects or call the operating system.
+ *  <br><br>
+ *  File layout (all values little-endian):
+ *  a header (magic number, version, record size, capacity, group slots, name size,
+ *  number of records written), then a table of group names (one slot per group),
+ *  then the records. Each record starts with its sequence number,
+ *  which is set to 0 while the record is being written,
+ *  so readers can detect (and skip) records that change while being read.
+ */
+public class TelemetryRing
+{
+    // header
+    static final int MAGIC = 0x42474C54;    // "BGLT"
+    static final int VERSION = 1;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int RECORD_SIZE_OFFSET = 8;
+    static final int CAPACITY_OFFSET = 12;
+    static final int GROUP_SLOTS_OFFSET = 16;
+    static final int NAME_SIZE_OFFSET = 20;
+    static final int WRITE_SEQUENCE_OFFSET = 24;
+    static final int NAME_TABLE_OFFSET = 64;
+
+    // group name table: each slot holds a length (int) followed by UTF-8 bytes
+    static final int NAME_SIZE = 32;
+
+    // record fields, relative to the start of the record
+    static final int SEQUENCE = 0;
+    static final int FRAME_NUMBER = 8;
+    static final int TIME_MILLIS = 16;
+    static final int FRAME_NANOS = 24;
+    static final int INPUT_NANOS = 32;
+    static final int UPDATE_NANOS = 40;
+    static final int RENDER_NANOS = 48;
+    static final int PRESENT_NANOS = 56;
+    static final int ALLOCATED_BYTES = 64;
+    static final int OVERLAP_CHECKS = 72;
+    static final int DRAW_COUNT = 80;
+    static final int GROUP_COUNT = 84;
+    static final int GROUP_SPRITES = 88;
+
+    // reads and writes longs in the buffer with memory ordering, for communication between processes
+    static final VarHandle longHandle = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * name of the mapped file
+     */
+    public final String fileName;
+
+    /**
+     * number of records stored in the file
+     */
+    public final int capacity;
+
+    /**
+     * largest number of groups whose sprite counts are recorded
+     */
+    public final int groupSlots;
+
+    // the game whose groups are recorded (its group list is created when the game starts)
+    Game game;
+
+    MappedByteBuffer buffer;
+    int recordSize;
+    int recordStart;
+
+    // number of records written
+    long sequence;
+
+    // groups whose names are stored in the name table
+    Group[] slotGroups;
+
+    /**
+     * Create (or replace) a telemetry file and map it into memory.
+     * @param fileName name of file to create
+     * @param capacity number of records stored in the file
+     * @param groupSlots largest number of groups whose sprite counts are recorded
+     * @param game the game whose groups are recorded; may be <code>null</code>
+     */
+    public TelemetryRing(String fileName, int capacity, int groupSlots, Game game)
+    {
+        if (capacity < 1 || groupSlots < 0)
+            throw new IllegalArgumentException("Telemetry capacity must be at least 1");
+
+        this.fileName = fileName;
+        this.capacity = capacity;
+        this.groupSlots = groupSlots;
+        this.game = game;
+        this.slotGroups = new Group[groupSlots];
+        this.recordSize = align8(GROUP_SPRITES + 4 * groupSlots);
+        this.recordStart = align8(NAME_TABLE_OFFSET + NAME_SIZE * groupSlots);
+        long fileSize = recordStart + (long)recordSize * capacity;
+        if (fileSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Telemetry file too large: " + fileSize + " bytes");
+
+        try (FileChannel channel = FileChannel.open( Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ))
+        {
+            // the mapping remains valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Error creating telemetry file: " + fileName, e);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(RECORD_SIZE_OFFSET, recordSize);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(GROUP_SLOTS_OFFSET, groupSlots);
+        buffer.putInt(NAME_SIZE_OFFSET, NAME_SIZE);
+        longHandle.setRelease(buffer, WRITE_SEQUENCE_OFFSET, 0L);
+
+        this.sequence = 0;
+    }
+
+    // round up to a multiple of 8 bytes, so that longs are aligned
+    static int align8(int value)
+    {
+        return (value + 7) & ~7;
+    }
+
+    /**
+     * Write a record for the frame that just ended; called by {@link FrameMetrics} on the game loop thread.
+     * @param metrics frame data to record
+     */
+    public void write(FrameMetrics metrics)
+    {
+        long next = sequence + 1;
+        int base = recordStart + (int)((next - 1) % capacity) * recordSize;
+
+        // mark the record as being written
+        longHandle.setOpaque(buffer, base + SEQUENCE, 0L);
+        VarHandle.storeStoreFence();
+
+        buffer.putLong(base + FRAME_NUMBER, metrics.frameCount);
+        buffer.putLong(base + TIME_MILLIS, System.currentTimeMillis());
+        buffer.putLong(base + FRAME_NANOS, metrics.lastNanos[FrameMetrics.FRAME]);
+        buffer.putLong(base + INPUT_NANOS, metrics.lastNanos[FrameMetrics.INPUT]);
+        buffer.putLong(base + UPDATE_NANOS, metrics.lastNanos[FrameMetrics.UPDATE]);
+        buffer.putLong(base + RENDER_NANOS, metrics.lastNanos[FrameMetrics.RENDER]);
+        buffer.putLong(base + PRESENT_NANOS, metrics.lastNanos[FrameMetrics.PRESENT]);
+        AllocationTracker tracker = metrics.allocationTracker;
+        buffer.putLong(base + ALLOCATED_BYTES, (tracker != null) ? tracker.lastFrameBytes : -1);
+        buffer.putLong(base + OVERLAP_CHECKS, metrics.lastOverlapChecks);
+        buffer.putInt(base + DRAW_COUNT, metrics.drawCount);
+
+        int groupCount = 0;
+        ArrayList<Group> groupList = (game != null) ? game.groupList : null;
+        if (groupList != null)
+        {
+            groupCount = Math.min(groupList.size(), groupSlots);
+            for (int i = 0; i < groupCount; i++)
+            {
+                Group group = groupList.get(i);
+                if (slotGroups[i] != group)
+                    writeGroupName(i, group);
+                buffer.putInt(base + GROUP_SPRITES + 4 * i, group.getSpriteCount());
+            }
+        }
+        buffer.putInt(base + GROUP_COUNT, groupCount);
+
+        // publish the record, then the number of records written
+        longHandle.setRelease(buffer, base + SEQUENCE, next);
+        longHandle.setRelease(buffer, WRITE_SEQUENCE_OFFSET, next);
+        sequence = next;
+    }
+
+    // store the name of the group in a slot; only happens when the group list changes
+    void writeGroupName(int slot, Group group)
+    {
+        slotGroups[slot] = group;
+        byte[] name = group.getName().getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(name.length, NAME_SIZE - 4);
+        int offset = NAME_TABLE_OFFSET + NAME_SIZE * slot;
+        buffer.putInt(offset, length);
+        for (int i = 0; i < length; i++)
+            buffer.put(offset + 4 + i, name[i]);
+    }
+
+    /**
+     * Get the number of records written.
+     * @return number of records written
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Write any changes to the storage device. Not required for other processes to read the file;
+     *   useful before the game exits.
+     */
+    public void force()
+    {
+        buffer.force();
+    }
+}
@@ -0,0 +1,224 @@
+package bagel;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  Reads a telemetry file written by {@link TelemetryRing} while the game is running
+ *  (typically in a separate process), and prints each new record as a line of text.
+ *  Usage:
+ * <pre>{@code
+ * java bagel.TelemetryViewer telemetry.bin [summary]
+ * }</pre>
+ *  With the "summary" option, one line per second is printed instead,
+ *  showing the average and largest frame time during that second.
+ */
+public class TelemetryViewer
+{
+    MappedByteBuffer buffer;
+    int recordSize;
+    int capacity;
+    int groupSlots;
+    int nameSize;
+    int recordStart;
+
+    // sequence number of the most recent record read
+    long lastSequence;
+
+    // values of the most recent record read
+    long frameNumber;
+    long timeMillis;
+    long[] nanos;
+    long allocatedBytes;
+    long overlapChecks;
+    int drawCount;
+    int groupCount;
+    int[] groupSprites;
+
+    /**
+     * Open a telemetry file for reading.
+     * @param fileName name of telemetry file
+     */
+    public TelemetryViewer(String fileName)
+    {
+        try (FileChannel channel = FileChannel.open( Paths.get(fileName), StandardOpenOption.READ ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Error opening telemetry file: " + fileName, e);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(TelemetryRing.MAGIC_OFFSET) != TelemetryRing.MAGIC
+            || buffer.getInt(TelemetryRing.VERSION_OFFSET) != TelemetryRing.VERSION)
+            throw new RuntimeException("Not a telemetry file: " + fileName);
+
+        recordSize = buffer.getInt(TelemetryRing.RECORD_SIZE_OFFSET);
+        capacity   = buffer.getInt(TelemetryRing.CAPACITY_OFFSET);
+        groupSlots = buffer.getInt(TelemetryRing.GROUP_SLOTS_OFFSET);
+        nameSize   = buffer.getInt(TelemetryRing.NAME_SIZE_OFFSET);
+        recordStart = TelemetryRing.align8(TelemetryRing.NAME_TABLE_OFFSET + nameSize * groupSlots);
+
+        nanos = new long[5];
+        groupSprites = new int[groupSlots];
+        lastSequence = 0;
+    }
+
+    /**
+     * Get the number of records written to the file so far.
+     * @return number of records written
+     */
+    public long getWriteSequence()
+    {
+        return (long)TelemetryRing.longHandle.getAcquire(buffer, TelemetryRing.WRITE_SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Read the record with the given sequence number into the fields of this viewer.
+     * @param sequence sequence number of the record (starting at 1)
+     * @return false if the record has been (or is being) overwritten
+     */
+    public boolean read(long sequence)
+    {
+        int base = recordStart + (int)((sequence - 1) % capacity) * recordSize;
+        long before = (long)TelemetryRing.longHandle.getAcquire(buffer, base + TelemetryRing.SEQUENCE);
+        if (before != sequence)
+            return false;
+
+        frameNumber    = buffer.getLong(base + TelemetryRing.FRAME_NUMBER);
+        timeMillis     = buffer.getLong(base + TelemetryRing.TIME_MILLIS);
+        nanos[0]       = buffer.getLong(base + TelemetryRing.FRAME_NANOS);
+        nanos[1]       = buffer.getLong(base + TelemetryRing.INPUT_NANOS);
+        nanos[2]       = buffer.getLong(base + TelemetryRing.UPDATE_NANOS);
+        nanos[3]       = buffer.getLong(base + TelemetryRing.RENDER_NANOS);
+        nanos[4]       = buffer.getLong(base + TelemetryRing.PRESENT_NANOS);
+        allocatedBytes = buffer.getLong(base + TelemetryRing.ALLOCATED_BYTES);
+        overlapChecks  = buffer.getLong(base + TelemetryRing.OVERLAP_CHECKS);
+        drawCount      = buffer.getInt(base + TelemetryRing.DRAW_COUNT);
+        groupCount     = Math.min( buffer.getInt(base + TelemetryRing.GROUP_COUNT), groupSlots );
+        for (int i = 0; i < groupCount; i++)
+            groupSprites[i] = buffer.getInt(base + TelemetryRing.GROUP_SPRITES + 4 * i);
+
+        // the record is valid only if it was not changed while being read
+        VarHandle.acquireFence();
+        long after = (long)TelemetryRing.longHandle.getOpaque(buffer, base + TelemetryRing.SEQUENCE);
+        return (after == sequence);
+    }
+
+    /**
+     * Get the name of the group in the given slot.
+     * @param slot index of the group in the game's group list
+     * @return name of the group
+     */
+    public String getGroupName(int slot)
+    {
+        int offset = TelemetryRing.NAME_TABLE_OFFSET + nameSize * slot;
+        int length = Math.min( Math.max(buffer.getInt(offset), 0), nameSize - 4 );
+        byte[] name = new byte[length];
+        for (int i = 0; i < length; i++)
+            name[i] = buffer.get(offset + 4 + i);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    // format the most recently read record as one line of text
+    String formatRecord()
+    {
+        StringBuilder line = new StringBuilder();
+        line.append( String.format("frame %d  %.2fms (input %.2f update %.2f render %.2f present %.2f)",
+            frameNumber, nanos[0] / 1e6, nanos[1] / 1e6, nanos[2] / 1e6, nanos[3] / 1e6, nanos[4] / 1e6) );
+        if (allocatedBytes >= 0)
+            line.append( String.format("  alloc %.1fKB", allocatedBytes / 1024.0) );
+        line.append( "  checks " ).append(overlapChecks);
+        line.append( "  drawn " ).append(drawCount);
+        for (int i = 0; i < groupCount; i++)
+            line.append("  ").append( getGroupName(i) ).append("=").append( groupSprites[i] );
+        return line.toString();
+    }
+
+    /**
+     * Print records as they are written, until the program is stopped.
+     * @param summary if true, print one line per second instead of one line per record
+     * @throws InterruptedException if interrupted while waiting for records
+     */
+    public void tail(boolean summary) throws InterruptedException
+    {
+        // start with the most recent record
+        lastSequence = Math.max( getWriteSequence() - 1, 0 );
+
+        long secondStart = System.currentTimeMillis();
+        long secondFrames = 0;
+        long secondTotalNanos = 0;
+        long secondMaxNanos = 0;
+
+        while (true)
+        {
+            long written = getWriteSequence();
+            if (written < lastSequence)
+            {
+                // file was recreated
+                System.out.println("(telemetry restarted)");
+                lastSequence = 0;
+            }
+            if (written - lastSequence > capacity)
+            {
+                System.out.println("(skipped " + (written - lastSequence - capacity) + " records)");
+                lastSequence = written - capacity;
+            }
+
+            while (lastSequence < written)
+            {
+                lastSequence++;
+                if ( !read(lastSequence) )
+                    continue;
+                if (summary)
+                {
+                    secondFrames++;
+                    secondTotalNanos += nanos[0];
+                    secondMaxNanos = Math.max(secondMaxNanos, nanos[0]);
+                }
+                else
+                    System.out.println( formatRecord() );
+            }
+
+            long now = System.currentTimeMillis();
+            if (summary && now - secondStart >= 1000)
+            {
+                if (secondFrames > 0)
+                {
+                    System.out.printf("%d frames  avg %.2fms  max %.2fms  | last: %s%n",
+                        secondFrames, secondTotalNanos / 1e6 / secondFrames, secondMaxNanos / 1e6, formatRecord());
+                }
+                secondStart = now;
+                secondFrames = 0;
+                secondTotalNanos = 0;
+                secondMaxNanos = 0;
+            }
+
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Print records from a telemetry file as they are written.
+     * @param args file name, and optionally "summary"
+     * @throws InterruptedException if interrupted while waiting for records
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("usage: java bagel.TelemetryViewer <file> [summary]");
+            return;
+        }
+        boolean summary = (args.length > 1 && args[1].equals("summary"));
+        new TelemetryViewer(args[0]).tail(summary);
+    }
+}
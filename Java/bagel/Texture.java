@@ -23,14 +23,14 @@ public class Texture
 	public Rectangle region;
 
 	/**
-	 *  Create an empty texture. Useful when reusing a previously loaded image;
-	 *  used by {@link Animation} and {@link TileMap}.
+	 *  Create a texture from an image file.
+	 *  @param imageFileName name of image file
 	 */
 	public Texture(String imageFileName)
     {
 		try 
 		{
-            image = ImageIO.read(new File(imageFileName));
+            image = readImage(imageFileName, "texture");
 			region  = new Rectangle();
         	region.setValues( 0, 0, image.getWidth(), image.getHeight() );
         } 
@@ -40,4 +40,65 @@ public class Texture
             e.printStackTrace();
         }
 	}
+
+	/**
+	 *  Create a texture that draws part of a previously loaded image,
+	 *  so that the image file is only read once;
+	 *  used by {@link Animation} and {@link TileMap}.
+	 *  @param image the image to be drawn
+	 *  @param region the rectangular sub-area of the image to be drawn
+	 */
+	Texture(BufferedImage image, Rectangle region)
+	{
+		this.image  = image;
+		this.region = region;
+	}
+
+	/**
+	 *  Read and decode an image file, recording an {@link AssetLoadEvent} if enabled;
+	 *  labelled "Texture load" in {@link HitchDetector} reports.
+	 *  @param imageFileName name of image file
+	 *  @param assetType kind of asset being loaded ("texture", "animation", or "tileset")
+	 *  @return the decoded image
+	 *  @throws IOException if the file can not be read
+	 */
+	static BufferedImage readImage(String imageFileName, String assetType) throws IOException
+	{
+		File file = new File(imageFileName);
+		String previousSection = HitchDetector.enterSection("Texture load");
+		if ( !AssetLoadEvent.isTypeEnabled() )
+		{
+			try
+			{
+				return ImageIO.read(file);
+			}
+			finally
+			{
+				HitchDetector.exitSection(previousSection);
+			}
+		}
+
+		AssetLoadEvent event = new AssetLoadEvent();
+		event.begin();
+		BufferedImage result = null;
+		try
+		{
+			result = ImageIO.read(file);
+			return result;
+		}
+		finally
+		{
+			HitchDetector.exitSection(previousSection);
+			event.end();
+			event.fileName  = imageFileName;
+			event.assetType = assetType;
+			event.bytes     = file.length();
+			if (result != null)
+			{
+				event.width  = result.getWidth();
+				event.height = result.getHeight();
+			}
+			event.commit();
+		}
+	}
 }
@@ -1,13 +1,9 @@
 package bagel;
 
 import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.geom.AffineTransform;
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.util.Collections;
 
@@ -94,7 +90,7 @@ public class TileMap
 		this.tileTextureList = new ArrayList<Texture>();
 		BufferedImage tileSetImage = null;
 		try {
-			tileSetImage = ImageIO.read(new File(imageFileName));
+			tileSetImage = Texture.readImage(imageFileName, "tileset");
 		} catch (java.io.IOException e) {
 			e.printStackTrace();
 			return;
@@ -105,9 +101,7 @@ public class TileMap
 		{
 			for (int x = 0; x < tileImageCols; x++)
 			{
-				Texture texture = new Texture(imageFileName);
-				texture.image = tileSetImage;
-				texture.region = new Rectangle(x*tileWidth, y*tileHeight, tileWidth, tileHeight);
+				Texture texture = new Texture(tileSetImage, new Rectangle(x*tileWidth, y*tileHeight, tileWidth, tileHeight));
 				this.tileTextureList.add( texture );
 			}
 		}
@@ -256,19 +250,62 @@ public class TileMap
 		return positionList;
 	}
 
+	/**
+	 * Return the game world coordinates (in pixels) of every occurrence
+	 * of <code>symbol</code> in map data, stored in a single array
+	 * (faster than {@link #getSymbolPositionList(String)} when there are many occurrences,
+	 * for example with {@link Prefab#spawnAtSymbol(Group, TileMap, String)}).
+	 * @param symbol text character to locate in map data
+	 * @return x and y of the first occurrence, then x and y of the second occurrence, and so on
+	 */
+	public double[] getSymbolPositions(String symbol)
+	{
+		int count = 0;
+		for (int r = 0; r < this.mapRows; r++)
+		{
+			for (int c = 0; c < this.mapCols; c++)
+			{
+				if ( mapDataGrid[r][c].equals(symbol) )
+					count++;
+			}
+		}
+
+		double[] positions = new double[2 * count];
+		int i = 0;
+		for (int r = 0; r < this.mapRows; r++)
+		{
+			for (int c = 0; c < this.mapCols; c++)
+			{
+				if ( mapDataGrid[r][c].equals(symbol) )
+				{
+					positions[i++] = (c + 0.5) * this.tileWidth;
+					positions[i++] = (r + 0.5) * this.tileHeight;
+				}
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Draw all tiles in this TileMap, using the region of the tileset image
+	 * that corresponds to each tile's texture.
+	 * The graphics context is not changed (and may be used to draw sprites afterwards).
+	 * @param context graphics context to draw on
+	 */
 	public void draw(Graphics context)
 	{
+		String previousSection = HitchDetector.enterSection("TileMap.draw");
 		for (Tile tile : this.mapTileList )
 		{
-			Graphics2D g2d = (Graphics2D) context;
-			g2d.setRenderingHint(java.awt.RenderingHints.KEY_ANTIALIASING, java.awt.RenderingHints.VALUE_ANTIALIAS_ON);
-			g2d.setTransform(new AffineTransform(1, 0, 0, 1, tile.x, tile.y));
-			g2d.setComposite(java.awt.AlphaComposite.getInstance(java.awt.AlphaComposite.SRC_OVER, 1.0f));
-
 			Texture tex = this.tileTextureList.get(tile.tileTextureIndex);
-			g2d.drawImage(tex.image, (int)(tile.x - tile.width/2), (int)(tile.y - tile.height/2), null);
-			g2d.dispose();
+			Rectangle region = tex.region;
+			int left = (int)Math.round(tile.x - tile.width/2);
+			int top  = (int)Math.round(tile.y - tile.height/2);
+			context.drawImage(tex.image,
+				left, top, left + (int)tile.width, top + (int)tile.height,
+				(int)region.left, (int)region.top, (int)region.right, (int)region.bottom, null);
 		}
+		HitchDetector.exitSection(previousSection);
 	}
 
 	/**
@@ -278,13 +315,40 @@ public class TileMap
 	 */
 	public boolean checkSpriteOverlap(FinalSprite sprite)
 	{
+		CollisionQueryEvent event = null;
+		if ( CollisionQueryEvent.isTypeEnabled() )
+		{
+			event = new CollisionQueryEvent();
+			event.begin();
+		}
+
 		Rectangle spriteBoundary = sprite.getBoundary();
+		int candidates = 0;
+		boolean overlap = false;
 		for (Tile tile : mapTileList)
 		{
+			candidates++;
 			if ( spriteBoundary.isOverlapping( tile.boundary ) )
-				return true;
+			{
+				overlap = true;
+				break;
+			}
 		}
-		return false;
+
+		Rectangle.countOverlapChecks(candidates);
+		if (event != null)
+			commitCollisionQuery(event, "checkSpriteOverlap", candidates, overlap ? 1 : 0);
+		return overlap;
+	}
+
+	// record the result of a collision query (only called when events are enabled)
+	static void commitCollisionQuery(CollisionQueryEvent event, String query, int candidates, int hits)
+	{
+		event.end();
+		event.query      = query;
+		event.candidates = candidates;
+		event.hits       = hits;
+		event.commit();
 	}
 
 	/**
@@ -296,11 +360,23 @@ public class TileMap
 	 */
 	public void preventSpriteOverlap(FinalSprite sprite)
 	{
+		CollisionQueryEvent event = null;
+		if ( CollisionQueryEvent.isTypeEnabled() )
+		{
+			event = new CollisionQueryEvent();
+			event.begin();
+		}
+
 		Rectangle spriteBoundary = sprite.getBoundary();
+		int hits = 0;
+		int checks = mapTileList.size();
 		for (Tile tile : mapTileList)
 		{
 			if ( spriteBoundary.isOverlapping( tile.boundary ) )
 			{
+				hits++;
+				checks += (tile.edgeLeft != null ? 1 : 0) + (tile.edgeRight != null ? 1 : 0)
+				        + (tile.edgeTop != null ? 1 : 0) + (tile.edgeBottom != null ? 1 : 0);
 				ArrayList<Vector> differences = new ArrayList<Vector>();
 
 				if ( tile.edgeLeft != null && spriteBoundary.isOverlapping(tile.edgeLeft) )
@@ -338,5 +414,9 @@ public class TileMap
 				}
 			}
 		}
+
+		Rectangle.countOverlapChecks(checks);
+		if (event != null)
+			commitCollisionQuery(event, "preventSpriteOverlap", mapTileList.size(), hits);
 	}
-}
\ No newline at end of file
+}
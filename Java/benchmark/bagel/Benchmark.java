@@ -0,0 +1,231 @@
+package bagel;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  A small benchmark harness for measuring engine code, used by {@link EngineBenchmarks}.
+ *  Each benchmark is set up for a number of entities (sprites, rectangles, tiles, ...),
+ *  then {@link #run()} is called repeatedly: first to warm up (so that the JIT compiler
+ *  optimizes the code), then while measuring. Results are reported as time per operation
+ *  and time per entity, so that scaling with entity count can be compared.
+ *  <br><br>
+ *  Benchmarks are in the package <code>bagel</code> (in a separate source folder)
+ *  so that they can measure package-private methods. To compile and run, from the Java folder:
+ * <pre>{@code
+ * javac -d out bagel/*.java benchmark/bagel/*.java
+ * java -cp out bagel.EngineBenchmarks [options]
+ * }</pre>
+ */
+public abstract class Benchmark
+{
+    /**
+     * name used in reports and to select benchmarks
+     */
+    public final String name;
+
+    /**
+     * entity counts that this benchmark is run with; <code>null</code> to use the default counts
+     */
+    public int[] counts;
+
+    // results are added here, so that the work done by run() can not be removed by the compiler
+    static volatile long sink;
+
+    /**
+     * @param name name used in reports and to select benchmarks
+     */
+    public Benchmark(String name)
+    {
+        this.name = name;
+        this.counts = null;
+    }
+
+    /**
+     * Create the data used by {@link #run()}.
+     * @param count number of entities
+     */
+    public abstract void setup(int count);
+
+    /**
+     * Perform one operation (typically: process every entity once).
+     * @return any value computed by the operation, so that the work is not optimized away
+     */
+    public abstract long run();
+
+    /**
+     * Release the data created by {@link #setup(int)}.
+     */
+    public void teardown()
+    {
+    }
+
+    /**
+     * Result of measuring one benchmark with one entity count.
+     */
+    public static class Result
+    {
+        /**
+         * name of the benchmark
+         */
+        public String name;
+
+        /**
+         * number of entities
+         */
+        public int count;
+
+        /**
+         * number of operations measured
+         */
+        public long operations;
+
+        /**
+         * average time per operation (in nanoseconds)
+         */
+        public double meanNanos;
+
+        /**
+         * standard deviation of the time per operation between iterations (in nanoseconds)
+         */
+        public double errorNanos;
+
+        /**
+         * @return average time per entity (in nanoseconds)
+         */
+        public double getNanosPerEntity()
+        {
+            return meanNanos / Math.max(count, 1);
+        }
+    }
+
+    /**
+     * Warm up, then measure a benchmark.
+     * @param count number of entities
+     * @param warmupIterations number of warm up iterations (not measured)
+     * @param iterations number of measured iterations
+     * @param iterationMillis duration of each iteration
+     * @return the measured time per operation
+     */
+    public Result measure(int count, int warmupIterations, int iterations, long iterationMillis)
+    {
+        setup(count);
+        try
+        {
+            for (int i = 0; i < warmupIterations; i++)
+                runIteration(iterationMillis);
+
+            double[] nanosPerOp = new double[iterations];
+            long totalOps = 0;
+            for (int i = 0; i < iterations; i++)
+            {
+                long[] timing = runIteration(iterationMillis);
+                nanosPerOp[i] = (double)timing[0] / timing[1];
+                totalOps += timing[1];
+            }
+
+            double mean = 0;
+            for (double value : nanosPerOp)
+                mean += value;
+            mean /= iterations;
+            double variance = 0;
+            for (double value : nanosPerOp)
+                variance += (value - mean) * (value - mean);
+            double deviation = (iterations > 1) ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+            Result result = new Result();
+            result.name = name;
+            result.count = count;
+            result.operations = totalOps;
+            result.meanNanos = mean;
+            result.errorNanos = deviation;
+            return result;
+        }
+        finally
+        {
+            teardown();
+        }
+    }
+
+    // call run() repeatedly for the given time; returns elapsed nanoseconds and number of operations.
+    //   Operations run in batches between reads of the timer, so that fast operations
+    //   are not dominated by the cost of reading the timer.
+    long[] runIteration(long iterationMillis)
+    {
+        long limit = iterationMillis * 1_000_000L;
+        long value = 0;
+        long operations = 0;
+        int batch = 1;
+        long start = System.nanoTime();
+        long elapsed;
+        do
+        {
+            for (int i = 0; i < batch; i++)
+                value += run();
+            operations += batch;
+            elapsed = System.nanoTime() - start;
+            if (elapsed < limit / 64 && batch < (1 << 20))
+                batch *= 2;
+        } while (elapsed < limit);
+        sink += value;
+        return new long[] { elapsed, operations };
+    }
+
+    /**
+     * Measure each benchmark (whose name contains the filter) with each entity count,
+     *   printing results as they are completed.
+     * @param benchmarks benchmarks to run
+     * @param defaultCounts entity counts, for benchmarks that do not specify their own
+     * @param filter only benchmarks whose names contain this text are run; <code>null</code> to run all
+     * @param warmupIterations number of warm up iterations (not measured)
+     * @param iterations number of measured iterations
+     * @param iterationMillis duration of each iteration
+     * @return all results
+     */
+    public static List<Result> runAll(List<Benchmark> benchmarks, int[] defaultCounts, String filter,
+        int warmupIterations, int iterations, long iterationMillis)
+    {
+        ArrayList<Result> results = new ArrayList<Result>();
+        System.out.printf("%-36s %8s %14s %12s %12s%n", "benchmark", "count", "ns/op", "error", "ns/entity");
+        for (Benchmark benchmark : benchmarks)
+        {
+            if (filter != null && !benchmark.name.contains(filter))
+                continue;
+            int[] counts = (benchmark.counts != null) ? benchmark.counts : defaultCounts;
+            for (int count : counts)
+            {
+                Result result = benchmark.measure(count, warmupIterations, iterations, iterationMillis);
+                results.add(result);
+                System.out.printf("%-36s %8d %14.1f %12.1f %12.2f%n", result.name, result.count,
+                    result.meanNanos, result.errorNanos, result.getNanosPerEntity());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Write results to a CSV file: name, count, operations, ns/op, error, ns/entity.
+     * @param results results to write
+     * @param fileName name of file to write
+     */
+    public static void writeCsv(List<Result> results, String fileName)
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName)))
+        {
+            out.println("benchmark,count,operations,ns_per_op,error,ns_per_entity");
+            for (Result result : results)
+            {
+                out.printf("%s,%d,%d,%.3f,%.3f,%.4f%n", result.name, result.count, result.operations,
+                    result.meanNanos, result.errorNanos, result.getNanosPerEntity());
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error writing benchmark results to file: " + fileName);
+            e.printStackTrace();
+        }
+    }
+}
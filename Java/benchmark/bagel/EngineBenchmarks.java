@@ -0,0 +1,781 @@
+package bagel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *  Benchmarks of the engine methods that games spend most of their time in:
+ *  rectangle overlap tests, tile map collision, physics, group iteration,
+ *  actions, animation, and drawing (to an off-screen image).
+ *  Each benchmark is run with several entity counts, to show how its cost scales.
+ *  <br><br>
+ *  Options:
+ * <pre>
+ * --counts 10,100,1000   entity counts (default 10,100,1000,10000)
+ * --filter text          only run benchmarks whose names contain text
+ * --warmup n             warm up iterations (default 3)
+ * --iterations n         measured iterations (default 5)
+ * --time ms              duration of each iteration (default 200)
+ * --csv file             also write results to a CSV file
+ * --fork                 run each benchmark in a new JVM, so that benchmarks
+ *                        do not affect each other's JIT compilation
+ * </pre>
+ *  See {@link Benchmark} for how to compile and run.
+ */
+public class EngineBenchmarks
+{
+    // fixed seed, so that every run uses the same data
+    static final long SEED = 42;
+
+    // create a solid-colored texture
+    static Texture createTexture(int width, int height)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return new Texture(image, new Rectangle(0, 0, width, height));
+    }
+
+    // create an animation with the given number of frames, without reading a file
+    static Animation createAnimation(int frameCount, double frameDuration)
+    {
+        Texture sheet = createTexture(32 * frameCount, 32);
+        Animation anim = new Animation();
+        for (int i = 0; i < frameCount; i++)
+            anim.textureList.add( new Texture(sheet.image, new Rectangle(32 * i, 0, 32, 32)) );
+        anim.frameDuration = frameDuration;
+        anim.loop = true;
+        anim.totalDuration = frameDuration * frameCount;
+        anim.currentTexture = anim.textureList.get(0);
+        return anim;
+    }
+
+    // create a tile map (without tiles) whose map data contains the symbol in count cells
+    //   (and "." in the remaining cells of the last row)
+    static TileMap createSymbolMap(int count, String symbol)
+    {
+        int size = (int)Math.ceil( Math.sqrt(count) );
+        String[] mapData = new String[size];
+        for (int r = 0; r < size; r++)
+        {
+            StringBuilder row = new StringBuilder();
+            for (int c = 0; c < size; c++)
+                row.append( (r * size + c < count) ? symbol : "." );
+            mapData[r] = row.toString();
+        }
+        TileMap map = new TileMap(size, size, 32, 32);
+        map.loadMapData(mapData, new String[0], new int[0]);
+        return map;
+    }
+
+    /**
+     * Create the list of all benchmarks.
+     * @return list of benchmarks
+     */
+    public static List<Benchmark> createBenchmarks()
+    {
+        ArrayList<Benchmark> list = new ArrayList<Benchmark>();
+
+        // each rectangle is tested against the next one
+        list.add( new Benchmark("Rectangle.isOverlapping")
+        {
+            Rectangle[] rects;
+
+            public void setup(int count)
+            {
+                Random random = new Random(SEED);
+                rects = new Rectangle[count + 1];
+                for (int i = 0; i < rects.length; i++)
+                    rects[i] = new Rectangle(random.nextDouble() * 800, random.nextDouble() * 600, 32, 32);
+            }
+
+            public long run()
+            {
+                long overlaps = 0;
+                for (int i = 0; i < rects.length - 1; i++)
+                {
+                    if ( rects[i].isOverlapping(rects[i + 1]) )
+                        overlaps++;
+                }
+                return overlaps;
+            }
+        });
+
+        // each rectangle overlaps its partner
+        list.add( new Benchmark("Rectangle.getMinTranslationVector")
+        {
+            Rectangle[] rects;
+            Rectangle[] others;
+
+            public void setup(int count)
+            {
+                Random random = new Random(SEED);
+                rects = new Rectangle[count];
+                others = new Rectangle[count];
+                for (int i = 0; i < count; i++)
+                {
+                    double x = random.nextDouble() * 800;
+                    double y = random.nextDouble() * 600;
+                    rects[i] = new Rectangle(x, y, 32, 32);
+                    others[i] = new Rectangle(x + random.nextDouble() * 30, y + random.nextDouble() * 30, 32, 32);
+                }
+            }
+
+            public long run()
+            {
+                double total = 0;
+                for (int i = 0; i < rects.length; i++)
+                    total += rects[i].getMinTranslationVector(others[i]).x;
+                return (long)total;
+            }
+        });
+
+        // count = number of map cells; 64 sprites are kept out of the walls each operation
+        list.add( new Benchmark("TileMap.preventSpriteOverlap")
+        {
+            TileMap map;
+            FinalSprite[] sprites;
+            double[] startX;
+            double[] startY;
+
+            public void setup(int count)
+            {
+                Random random = new Random(SEED);
+                int size = Math.max( (int)Math.sqrt(count), 3 );
+                String[] mapData = new String[size];
+                for (int r = 0; r < size; r++)
+                {
+                    StringBuilder row = new StringBuilder();
+                    for (int c = 0; c < size; c++)
+                    {
+                        boolean border = (r == 0 || c == 0 || r == size - 1 || c == size - 1);
+                        row.append( (border || random.nextDouble() < 0.2) ? "X" : "." );
+                    }
+                    mapData[r] = row.toString();
+                }
+                map = new TileMap(size, size, 32, 32);
+                map.loadMapData(mapData, new String[] {"X"}, new int[] {0});
+
+                sprites = new FinalSprite[64];
+                startX = new double[sprites.length];
+                startY = new double[sprites.length];
+                for (int i = 0; i < sprites.length; i++)
+                {
+                    sprites[i] = new FinalSprite();
+                    sprites[i].setSize(24, 24);
+                    startX[i] = random.nextDouble() * size * 32;
+                    startY[i] = random.nextDouble() * size * 32;
+                }
+            }
+
+            public long run()
+            {
+                long total = 0;
+                for (int i = 0; i < sprites.length; i++)
+                {
+                    // sprites are moved back, so that every operation does the same work
+                    sprites[i].setPosition(startX[i], startY[i]);
+                    map.preventSpriteOverlap(sprites[i]);
+                    total += (long)sprites[i].x;
+                }
+                return total;
+            }
+        });
+
+        list.add( new Benchmark("Physics.update")
+        {
+            Physics[] physics;
+
+            public void setup(int count)
+            {
+                physics = new Physics[count];
+                for (int i = 0; i < count; i++)
+                {
+                    physics[i] = new Physics(400, 200, 100);
+                    physics[i].setSpeed(50);
+                    physics[i].setMotionAngle(i * 7);
+                }
+            }
+
+            public long run()
+            {
+                double total = 0;
+                for (int i = 0; i < physics.length; i++)
+                {
+                    physics[i].accelerateAtAngle(i);
+                    physics[i].update(1.0 / 60);
+                    total += physics[i].positionVector.x;
+                }
+                return (long)total;
+            }
+        });
+
+        // the same work as Physics.update, on an entity store
+        list.add( new Benchmark("EntityStore.updatePhysics")
+        {
+            EntityStore store;
+
+            public void setup(int count)
+            {
+                store = new EntityStore(count);
+                for (int i = 0; i < count; i++)
+                {
+                    int id = store.create();
+                    store.setPhysics(id, 400, 200, 100);
+                    store.setVelocity(id, 50, i * 7);
+                }
+            }
+
+            public long run()
+            {
+                for (int i = 0; i < store.getCount(); i++)
+                {
+                    store.accelerationX[i] += 400 * Math.cos(i * Math.PI/180);
+                    store.accelerationY[i] += 400 * Math.sin(i * Math.PI/180);
+                }
+                store.updatePhysics(1.0 / 60);
+                double total = 0;
+                for (int i = 0; i < store.getCount(); i++)
+                    total += store.x[i];
+                return (long)total;
+            }
+        });
+
+        // the same movement, on entity records stored outside the heap
+        list.add( new Benchmark("OffHeapEntityStore.updatePhysics")
+        {
+            OffHeapEntityStore store;
+
+            public void setup(int count)
+            {
+                store = new OffHeapEntityStore(count);
+                int first = store.spawn(count, new GroupHandle("entities", 0));
+                for (int i = first; i < first + count; i++)
+                    store.setVelocity(i, 50 * Math.cos(i * 7 * Math.PI/180), 50 * Math.sin(i * 7 * Math.PI/180), 200);
+            }
+
+            public long run()
+            {
+                store.updatePhysics(1.0 / 60, 0, 400);
+                return (long)store.getX(0);
+            }
+        });
+
+        list.add( new Benchmark("PlatformPhysics.update")
+        {
+            PlatformPhysics[] physics;
+
+            public void setup(int count)
+            {
+                physics = new PlatformPhysics[count];
+                for (int i = 0; i < count; i++)
+                    physics[i] = new PlatformPhysics(400, 200, 400, 450, 700, 1000);
+            }
+
+            public long run()
+            {
+                double total = 0;
+                for (int i = 0; i < physics.length; i++)
+                {
+                    physics[i].accelerateAtAngle( (i % 2 == 0) ? 0 : 180 );
+                    physics[i].update(1.0 / 60);
+                    // land again, so that every operation does the same work
+                    physics[i].velocityVector.y = 0;
+                    total += physics[i].positionVector.x;
+                }
+                return (long)total;
+            }
+        });
+
+        list.add( new Benchmark("Group.getSpriteList iteration")
+        {
+            Group group;
+
+            public void setup(int count)
+            {
+                group = new Group("sprites");
+                for (int i = 0; i < count; i++)
+                {
+                    Sprite sprite = new Sprite();
+                    sprite.setSize(i, i);
+                    group.addSprite(sprite);
+                }
+            }
+
+            public long run()
+            {
+                double total = 0;
+                for (Sprite sprite : group.getSpriteList())
+                    total += sprite.width;
+                return (long)total;
+            }
+        });
+
+        list.add( new Benchmark("Group.forEach iteration")
+        {
+            Group group;
+            double total;
+
+            public void setup(int count)
+            {
+                group = new Group("sprites");
+                for (int i = 0; i < count; i++)
+                {
+                    Sprite sprite = new Sprite();
+                    sprite.setSize(i, i);
+                    group.addSprite(sprite);
+                }
+            }
+
+            public long run()
+            {
+                total = 0;
+                group.forEach( sprite -> total += sprite.width );
+                return (long)total;
+            }
+        });
+
+        // add every sprite, then remove every sprite (first to last, the worst case for shifting);
+        //   time per sprite should not grow with the number of sprites
+        list.add( new Benchmark("Group.removeSprite mass removal")
+        {
+            Sprite[] sprites;
+            Group group;
+
+            {
+                counts = new int[] {1000, 10000, 100000};
+            }
+
+            public void setup(int count)
+            {
+                sprites = new Sprite[count];
+                for (int i = 0; i < count; i++)
+                    sprites[i] = new Sprite();
+                group = new Group("sprites");
+            }
+
+            public long run()
+            {
+                for (Sprite sprite : sprites)
+                    group.addSprite(sprite);
+                for (Sprite sprite : sprites)
+                    group.removeSprite(sprite);
+                return group.getSpriteCount();
+            }
+        });
+
+        // as above, keeping draw order: removals made during forEach are applied in a single pass
+        list.add( new Benchmark("Group.removeSprite stable forEach")
+        {
+            Sprite[] sprites;
+            Group group;
+
+            {
+                counts = new int[] {1000, 10000, 100000};
+            }
+
+            public void setup(int count)
+            {
+                sprites = new Sprite[count];
+                for (int i = 0; i < count; i++)
+                    sprites[i] = new Sprite();
+                group = new Group("sprites");
+                group.setStableOrder(true);
+            }
+
+            public long run()
+            {
+                for (Sprite sprite : sprites)
+                    group.addSprite(sprite);
+                group.forEach( sprite -> group.removeSprite(sprite) );
+                return group.getSpriteCount();
+            }
+        });
+
+        // create, add, remove and reap bullets, as a shooter does every frame;
+        //   compare with the pooled version below (run with -verbose:gc to see the difference in collections)
+        list.add( new Benchmark("FinalSprite spawn/remove churn")
+        {
+            Texture texture;
+            Group group;
+            int bulletCount;
+
+            public void setup(int count)
+            {
+                texture = createTexture(8, 8);
+                group = new Group("bullets");
+                bulletCount = count;
+            }
+
+            public long run()
+            {
+                for (int i = 0; i < bulletCount; i++)
+                {
+                    FinalSprite bullet = new FinalSprite();
+                    bullet.setTexture(texture);
+                    bullet.setPhysics(0, 800, 0);
+                    group.addSprite(bullet);
+                }
+                group.forEachFinalSprite( bullet -> bullet.remove() );
+                return group.reapRemovedSprites();
+            }
+        });
+
+        list.add( new Benchmark("SpritePool spawn/remove churn")
+        {
+            SpritePool pool;
+            Group group;
+
+            public void setup(int count)
+            {
+                Texture texture = createTexture(8, 8);
+                pool = new SpritePool( bullet -> {
+                    bullet.setTexture(texture);
+                    bullet.setPhysics(0, 800, 0);
+                }, count );
+                pool.prefill(count);
+                group = new Group("bullets");
+            }
+
+            public long run()
+            {
+                for (int i = 0; i < pool.getMaxSize(); i++)
+                    group.addSprite( pool.acquire() );
+                group.forEachFinalSprite( bullet -> bullet.remove() );
+                return group.reapRemovedSprites();
+            }
+        });
+
+        // load a level: create an enemy at each "E" in the map data, set up one call at a time
+        list.add( new Benchmark("Level load manual setup")
+        {
+            TileMap map;
+            Texture texture;
+            Animation animation;
+
+            public void setup(int count)
+            {
+                map = createSymbolMap(count, "E");
+                texture = createTexture(32, 32);
+                animation = createAnimation(4, 0.1);
+            }
+
+            public long run()
+            {
+                Group group = new Group("enemies");
+                for (Vector position : map.getSymbolPositionList("E"))
+                {
+                    FinalSprite enemy = new FinalSprite();
+                    enemy.setTexture(texture);
+                    enemy.setPhysics(0, 60, 0);
+                    enemy.setAnimation( animation.clone() );
+                    enemy.addAction( ActionFactory.forever(ActionFactory.rotateBy(360, 2)) );
+                    enemy.setPosition(position.x, position.y);
+                    group.addSprite(enemy);
+                }
+                return group.getSpriteCount();
+            }
+        });
+
+        // as above, with a prefab
+        list.add( new Benchmark("Level load Prefab.spawnAtSymbol")
+        {
+            TileMap map;
+            Prefab prefab;
+
+            public void setup(int count)
+            {
+                map = createSymbolMap(count, "E");
+                prefab = new Prefab("enemy")
+                    .setTexture( createTexture(32, 32) )
+                    .setPhysics(0, 60, 0)
+                    .setAnimation( createAnimation(4, 0.1) )
+                    .addAction( () -> ActionFactory.forever(ActionFactory.rotateBy(360, 2)) );
+            }
+
+            public long run()
+            {
+                Group group = new Group("enemies");
+                return prefab.spawnAtSymbol(group, map, "E");
+            }
+        });
+
+        list.add( new Benchmark("FinalSprite.act nested sequence")
+        {
+            FinalSprite[] sprites;
+
+            public void setup(int count)
+            {
+                sprites = new FinalSprite[count];
+                for (int i = 0; i < count; i++)
+                {
+                    sprites[i] = new FinalSprite();
+                    sprites[i].addAction( ActionFactory.forever(
+                        ActionFactory.sequence(
+                            ActionFactory.moveBy(100, 0, 0.5),
+                            ActionFactory.sequence(
+                                ActionFactory.rotateBy(90, 0.25),
+                                ActionFactory.delay(0.25) ),
+                            ActionFactory.moveBy(-100, 0, 0.5) ) ) );
+                }
+            }
+
+            public long run()
+            {
+                double total = 0;
+                for (int i = 0; i < sprites.length; i++)
+                {
+                    sprites[i].act(1.0 / 60);
+                    total += sprites[i].x;
+                }
+                return (long)total;
+            }
+        });
+
+        list.add( new Benchmark("Animation.update")
+        {
+            Animation[] animations;
+
+            public void setup(int count)
+            {
+                Animation original = createAnimation(8, 0.1);
+                animations = new Animation[count];
+                for (int i = 0; i < count; i++)
+                    animations[i] = original.clone();
+            }
+
+            public long run()
+            {
+                long total = 0;
+                for (int i = 0; i < animations.length; i++)
+                {
+                    animations[i].update(1.0 / 60);
+                    total += animations[i].currentTexture.image.getWidth();
+                }
+                return total;
+            }
+        });
+
+        list.add( new Benchmark("Sprite.draw off-screen")
+        {
+            BufferedImage target;
+            Graphics2D g;
+            Sprite[] sprites;
+
+            public void setup(int count)
+            {
+                Random random = new Random(SEED);
+                Texture texture = createTexture(32, 32);
+                target = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+                g = target.createGraphics();
+                sprites = new Sprite[count];
+                for (int i = 0; i < count; i++)
+                {
+                    sprites[i] = new Sprite();
+                    sprites[i].setTexture(texture);
+                    sprites[i].setPosition(random.nextDouble() * 800, random.nextDouble() * 600);
+                    sprites[i].angle = random.nextDouble() * 360;
+                }
+            }
+
+            public long run()
+            {
+                for (int i = 0; i < sprites.length; i++)
+                    sprites[i].draw(g);
+                return target.getRGB(400, 300);
+            }
+
+            public void teardown()
+            {
+                g.dispose();
+            }
+        });
+
+        list.add( new Benchmark("FinalSprite.draw off-screen")
+        {
+            BufferedImage target;
+            Graphics2D g;
+            FinalSprite[] sprites;
+
+            public void setup(int count)
+            {
+                Random random = new Random(SEED);
+                Texture texture = createTexture(32, 32);
+                target = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+                g = target.createGraphics();
+                sprites = new FinalSprite[count];
+                for (int i = 0; i < count; i++)
+                {
+                    sprites[i] = new FinalSprite();
+                    sprites[i].setTexture(texture);
+                    sprites[i].setPosition(random.nextDouble() * 800, random.nextDouble() * 600);
+                    sprites[i].angle = random.nextDouble() * 360;
+                    sprites[i].opacity = 0.5 + random.nextDouble() * 0.5;
+                }
+            }
+
+            public long run()
+            {
+                for (int i = 0; i < sprites.length; i++)
+                    sprites[i].draw(g);
+                return target.getRGB(400, 300);
+            }
+
+            public void teardown()
+            {
+                g.dispose();
+            }
+        });
+
+        // the same sprites as FinalSprite.draw off-screen, on an entity store (culled to the image)
+        list.add( new Benchmark("EntityStore.draw off-screen")
+        {
+            BufferedImage target;
+            Graphics2D g;
+            EntityStore store;
+
+            public void setup(int count)
+            {
+                Random random = new Random(SEED);
+                Texture texture = createTexture(32, 32);
+                target = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+                g = target.createGraphics();
+                store = new EntityStore(count);
+                for (int i = 0; i < count; i++)
+                {
+                    int id = store.create();
+                    store.setTexture(id, texture);
+                    store.setPosition(id, random.nextDouble() * 800, random.nextDouble() * 600);
+                    int index = store.getIndex(id);
+                    store.angle[index] = random.nextDouble() * 360;
+                    store.opacity[index] = 0.5 + random.nextDouble() * 0.5;
+                }
+            }
+
+            public long run()
+            {
+                store.draw(g, 800, 600);
+                return target.getRGB(400, 300);
+            }
+
+            public void teardown()
+            {
+                g.dispose();
+            }
+        });
+
+        return list;
+    }
+
+    // parse a comma-separated list of numbers
+    static int[] parseCounts(String text)
+    {
+        String[] parts = text.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            counts[i] = Integer.parseInt( parts[i].trim() );
+        return counts;
+    }
+
+    // run each selected benchmark in a new JVM with the same options, printing its output
+    static void runForked(List<Benchmark> benchmarks, String filter, List<String> options)
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (Benchmark benchmark : benchmarks)
+        {
+            if (filter != null && !benchmark.name.contains(filter))
+                continue;
+            ArrayList<String> command = new ArrayList<String>( Arrays.asList(
+                java, "-cp", System.getProperty("java.class.path"), EngineBenchmarks.class.getName(),
+                "--only", benchmark.name) );
+            command.addAll(options);
+            try
+            {
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream())))
+                {
+                    String line;
+                    while ( (line = in.readLine()) != null )
+                        System.out.println(line);
+                }
+                process.waitFor();
+            }
+            catch (IOException | InterruptedException e)
+            {
+                System.err.println("Error running benchmark: " + benchmark.name);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Run the benchmarks.
+     * @param args options (see class description)
+     */
+    public static void main(String[] args)
+    {
+        int[] counts = {10, 100, 1000, 10000};
+        String filter = null;
+        String only = null;
+        String csvFile = null;
+        int warmup = 3;
+        int iterations = 5;
+        long iterationMillis = 200;
+        boolean fork = false;
+
+        // options passed on to forked JVMs
+        ArrayList<String> options = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--counts":     counts = parseCounts(args[++i]);    options.add(args[i-1]); options.add(args[i]); break;
+                case "--warmup":     warmup = Integer.parseInt(args[++i]);     options.add(args[i-1]); options.add(args[i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); options.add(args[i-1]); options.add(args[i]); break;
+                case "--time":       iterationMillis = Long.parseLong(args[++i]); options.add(args[i-1]); options.add(args[i]); break;
+                case "--filter":     filter = args[++i];  break;
+                case "--only":       only = args[++i];    break;
+                case "--csv":        csvFile = args[++i]; break;
+                case "--fork":       fork = true;         break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        List<Benchmark> benchmarks = createBenchmarks();
+        if (only != null)
+        {
+            ArrayList<Benchmark> selected = new ArrayList<Benchmark>();
+            for (Benchmark benchmark : benchmarks)
+            {
+                if (benchmark.name.equals(only))
+                    selected.add(benchmark);
+            }
+            benchmarks = selected;
+        }
+
+        if (fork && only == null)
+        {
+            if (csvFile != null)
+                System.err.println("--csv is ignored with --fork");
+            runForked(benchmarks, filter, options);
+            return;
+        }
+
+        List<Benchmark.Result> results = Benchmark.runAll(benchmarks, counts, filter, warmup, iterations, iterationMillis);
+        if (csvFile != null)
+            Benchmark.writeCsv(results, csvFile);
+    }
+}
@@ -0,0 +1,97 @@
+package bagel;
+
+import java.util.function.Supplier;
+
+/**
+ *  Measures the heap memory used by each kind of sprite, including the objects it owns
+ *  (boundary rectangle, action list, physics, ...), by creating many sprites and dividing
+ *  the number of bytes allocated (see {@link AllocationTracker#getThreadAllocatedBytes()}) by their number.
+ *  Allocated bytes include object headers and alignment padding, so the results match
+ *  the sizes reported by object layout tools for the same JVM and options
+ *  (for example, compressed object pointers are disabled above 32 GB of heap).
+ *  <br><br>
+ *  Options:
+ * <pre>
+ * --count 100000          sprites created for each measurement
+ * </pre>
+ *  See {@link Benchmark} for how to compile.
+ */
+public class FootprintBenchmark
+{
+    // keeps the sprites being measured reachable
+    static Object[] sprites;
+
+    /**
+     * Measure the average number of bytes allocated when creating an object.
+     * @param count number of objects to create
+     * @param factory creates (and sets up) one object
+     * @return average number of bytes allocated per object
+     */
+    static double measure(int count, Supplier<Object> factory)
+    {
+        sprites = new Object[count];
+        // create some objects first, so that loading classes is not measured
+        for (int i = 0; i < Math.min(count, 1000); i++)
+            sprites[i] = factory.get();
+
+        long start = AllocationTracker.getThreadAllocatedBytes();
+        for (int i = 0; i < count; i++)
+            sprites[i] = factory.get();
+        long bytes = AllocationTracker.getThreadAllocatedBytes() - start;
+        sprites = null;
+        return (double)bytes / count;
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args options (see class description)
+     */
+    public static void main(String[] args)
+    {
+        int count = 100_000;
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--count": count = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        if (AllocationTracker.getThreadAllocatedBytes() < 0)
+        {
+            System.err.println("Allocated bytes are not available on this JVM.");
+            System.exit(1);
+        }
+
+        Texture texture = EngineBenchmarks.createTexture(32, 32);
+        Group group = new Group("sprites");
+        Group other = new Group("other");
+
+        String format = "%-44s %10.1f%n";
+        System.out.printf("%-44s %10s%n", "sprite", "bytes");
+        System.out.printf(format, "Sprite", measure(count, () -> new Sprite()));
+        System.out.printf(format, "FinalSprite", measure(count, () -> new FinalSprite()));
+        System.out.printf(format, "FinalSprite with texture and physics", measure(count, () -> {
+            FinalSprite s = new FinalSprite();
+            s.setTexture(texture);
+            s.setPhysics(0, 100, 0);
+            return s;
+        }));
+        System.out.printf(format, "FinalSprite after collision check", measure(count, () -> {
+            FinalSprite s = new FinalSprite();
+            s.setTexture(texture);
+            s.getBoundary();
+            return s;
+        }));
+        // group arrays grow by doubling, so part of the cost of adding is the group's array
+        System.out.printf(format, "FinalSprite in two groups", measure(count, () -> {
+            FinalSprite s = new FinalSprite();
+            group.addSprite(s);
+            other.addSprite(s);
+            return s;
+        }));
+    }
+}
@@ -0,0 +1,142 @@
+package bagel;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ *  Measures drawing without a window, using {@link OffscreenRenderer}, and checks
+ *  the images drawn against reference images using {@link GoldenImage}.
+ *  <br><br>
+ *  The scene is a {@link StressScene} (which always uses the same random seed,
+ *  so the same scene is drawn every run). After each tick, the scene is drawn
+ *  directly from the sprite groups and from a {@link RenderSnapshot}
+ *  (as drawn when threaded rendering is enabled); the time taken by each is reported.
+ *  The final frame of each is then compared with its reference image. Options:
+ * <pre>
+ * --sprites 1000          moving sprites
+ * --collectibles 100      collectibles
+ * --map 20x30             tile map rows x columns, drawn behind the sprites (default: no tile map)
+ * --size 800x600          image size
+ * --ticks 600             measured ticks
+ * --warmup 120            ticks run before measuring
+ * --golden dir            folder of reference images (default: benchmark/golden)
+ * --no-golden             do not compare images
+ * --tolerance 2           largest channel difference for pixels to be considered equal
+ * --update                save the images drawn as the new references
+ * </pre>
+ *  The program exits with status 1 if any image does not match its reference, or has no reference.
+ *  References for the default options, with and without a 20x30 tile map, are in benchmark/golden;
+ *  other options need references created with <code>--update</code> first.
+ *  See {@link Benchmark} for how to compile.
+ */
+public class RenderBenchmark
+{
+    /**
+     * Run the benchmark.
+     * @param args options (see class description)
+     */
+    public static void main(String[] args)
+    {
+        StressScene scene = new StressScene();
+        scene.warmupTicks = 120;
+        scene.measuredTicks = 600;
+        int width = 800;
+        int height = 600;
+        String goldenDirectory = "benchmark/golden";
+        int tolerance = 2;
+        boolean update = false;
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--sprites":      scene.spriteCount = Integer.parseInt(args[++i]); break;
+                case "--collectibles": scene.collectibleCount = Integer.parseInt(args[++i]); break;
+                case "--ticks":        scene.measuredTicks = Integer.parseInt(args[++i]); break;
+                case "--warmup":       scene.warmupTicks = Integer.parseInt(args[++i]); break;
+                case "--golden":       goldenDirectory = args[++i]; break;
+                case "--no-golden":    goldenDirectory = null; break;
+                case "--tolerance":    tolerance = Integer.parseInt(args[++i]); break;
+                case "--update":       update = true; break;
+                case "--map":
+                {
+                    String[] size = args[++i].toLowerCase().split("x");
+                    scene.mapRows = Integer.parseInt(size[0]);
+                    scene.mapCols = Integer.parseInt(size[1]);
+                    break;
+                }
+                case "--size":
+                {
+                    String[] size = args[++i].toLowerCase().split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        scene.windowWidth = width;
+        scene.windowHeight = height;
+        HeadlessRunner runner = new HeadlessRunner(scene, 1.0 / 60);
+        runner.initialize();
+        if (scene.map != null)
+        {
+            // the scene's map is only used for collision; give it a tile image so that it can be drawn
+            scene.map.tileTextureList = new ArrayList<Texture>();
+            scene.map.tileTextureList.add( StressScene.createTexture(scene.map.tileWidth, scene.map.tileHeight, Color.DARK_GRAY) );
+        }
+
+        OffscreenRenderer direct = new OffscreenRenderer(width, height);
+        OffscreenRenderer snapshotted = new OffscreenRenderer(width, height);
+        direct.tileMap = scene.map;
+        snapshotted.tileMap = scene.map;
+        RenderSnapshot snapshot = new RenderSnapshot();
+
+        for (int i = 0; i < scene.warmupTicks + scene.measuredTicks; i++)
+        {
+            if (i == scene.warmupTicks)
+            {
+                direct.getFrameTimes().reset();
+                snapshotted.getFrameTimes().reset();
+            }
+            runner.tick();
+            direct.render(scene);
+            snapshot.capture(scene.groupList, scene.interpolationAlpha);
+            snapshotted.render(snapshot);
+        }
+
+        System.out.printf("%-10s %8s %10s %10s %10s %10s%n", "path", "frames", "mean_us", "p50_us", "p99_us", "max_us");
+        printFrameTimes("direct", direct.getFrameTimes());
+        printFrameTimes("snapshot", snapshotted.getFrameTimes());
+
+        if (goldenDirectory != null)
+        {
+            GoldenImage golden = new GoldenImage(goldenDirectory);
+            golden.channelTolerance = tolerance;
+            golden.updateReferences = golden.updateReferences || update;
+            String name = "stress-" + scene.spriteCount + "-" + scene.mapRows + "x" + scene.mapCols
+                + "-" + width + "x" + height + "-" + (scene.warmupTicks + scene.measuredTicks);
+            boolean passed = check(golden, direct.image, name + "-direct");
+            passed = check(golden, snapshotted.image, name + "-snapshot") && passed;
+            if (!passed)
+                System.exit(1);
+        }
+    }
+
+    static void printFrameTimes(String path, Histogram times)
+    {
+        System.out.printf("%-10s %8d %10.1f %10.1f %10.1f %10.1f%n", path, times.getCount(),
+            times.getMean() / 1000.0, times.getPercentile(50) / 1000.0,
+            times.getPercentile(99) / 1000.0, times.getMax() / 1000.0);
+    }
+
+    static boolean check(GoldenImage golden, BufferedImage image, String name)
+    {
+        GoldenImage.Result result = golden.check(image, name);
+        System.out.println(result.message);
+        return result.passed;
+    }
+}
@@ -0,0 +1,534 @@
+package bagel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ *  A synthetic scene, modelled on the Starfish Collector example, used for soak tests:
+ *  moving sprites with physics, collectibles that the moving sprites collect
+ *  (and that reappear elsewhere), an optional {@link TileMap} of walls,
+ *  and a number of actions on each moving sprite.
+ *  <br><br>
+ *  The scene runs for a fixed number of ticks (after warming up), either headless
+ *  (using {@link HeadlessRunner}, optionally drawing each frame to an off-screen image)
+ *  or in a window, then reports frame time percentiles, the peak of the total used heap
+ *  (sampled after each tick and just before each garbage collection),
+ *  and garbage collection counts, as CSV and/or JSON. Options:
+ * <pre>
+ * --sprites 1000          moving sprites (a comma-separated list runs one scene per count)
+ * --collectibles 100      collectibles
+ * --map 20x30             tile map rows x columns (default: no tile map)
+ * --actions 2             actions per moving sprite
+ * --ticks 3600            measured ticks
+ * --warmup 600            ticks run before measuring
+ * --window                run in a window (default: headless)
+ * --render                when headless, also draw each frame to an off-screen image
+ * --parallel              update sprites on several threads
+ * --csv file              append one line per scene to a CSV file
+ * --json file             write results to a JSON file
+ * </pre>
+ *  For example, to find the sprite count at which updates take longer than a 60 FPS frame:
+ * <pre>{@code
+ * java -cp out bagel.StressScene --sprites 1000,2000,4000,8000 --render --csv stress.csv
+ * }</pre>
+ *  See {@link Benchmark} for how to compile.
+ */
+public class StressScene extends FinalGame
+{
+    // scene size
+    int spriteCount;
+    int collectibleCount;
+    int mapRows;
+    int mapCols;
+    int actionsPerSprite;
+
+    // run length
+    int warmupTicks;
+    int measuredTicks;
+    boolean headless;
+    boolean renderHeadless;
+
+    // file output; null for none
+    String csvFile;
+    String jsonFile;
+
+    // fixed seed, so that every run uses the same scene
+    Random random;
+
+    TileMap map;
+    Group movers;
+    Group collectibles;
+    long collectedCount;
+    int tickCount;
+
+    // measurement; headless, the time taken by each tick (update and render)
+    Histogram tickTimes;
+    long gcCountStart;
+    long gcMillisStart;
+    long startNanos;
+
+    // highest total used heap seen while measuring; also updated by the garbage collection listener
+    AtomicLong heapPeak = new AtomicLong();
+    NotificationListener gcListener;
+
+    /**
+     * Create a scene; sizes are set before running.
+     */
+    public StressScene()
+    {
+        this.spriteCount = 1000;
+        this.collectibleCount = 100;
+        this.mapRows = 0;
+        this.mapCols = 0;
+        this.actionsPerSprite = 2;
+        this.warmupTicks = 600;
+        this.measuredTicks = 3600;
+        this.headless = true;
+        this.renderHeadless = false;
+        this.random = new Random(42);
+        this.tickTimes = new Histogram();
+    }
+
+    // create a solid-colored texture, so that the scene does not depend on asset files
+    static Texture createTexture(int width, int height, Color color)
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillOval(0, 0, width, height);
+        g.dispose();
+        return new Texture(image, new Rectangle(0, 0, width, height));
+    }
+
+    // the k-th action added to a moving sprite
+    Action createAction(int k)
+    {
+        switch (k % 4)
+        {
+            case 0:  return ActionFactory.wrapToScreen(windowWidth, windowHeight);
+            case 1:  return ActionFactory.forever( ActionFactory.sequence(
+                         ActionFactory.rotateBy(90, 1), ActionFactory.delay(0.5) ) );
+            case 2:  return ActionFactory.forever( ActionFactory.sequence(
+                         ActionFactory.fadeOut(0.5), ActionFactory.fadeIn(0.5) ) );
+            default: return ActionFactory.forever( ActionFactory.sequence(
+                         ActionFactory.moveBy(20, 0, 0.5), ActionFactory.moveBy(-20, 0, 0.5) ) );
+        }
+    }
+
+    /**
+     * Not used; the scene is created by {@link #create()}.
+     */
+    @Override
+    public void initialize()
+    {
+    }
+
+    /**
+     * Create the tile map, moving sprites, and collectibles.
+     */
+    @Override
+    public void create()
+    {
+        if (mapRows > 0 && mapCols > 0)
+        {
+            String[] mapData = new String[mapRows];
+            for (int r = 0; r < mapRows; r++)
+            {
+                StringBuilder row = new StringBuilder();
+                for (int c = 0; c < mapCols; c++)
+                {
+                    boolean border = (r == 0 || c == 0 || r == mapRows - 1 || c == mapCols - 1);
+                    row.append( (border || random.nextDouble() < 0.1) ? "X" : "." );
+                }
+                mapData[r] = row.toString();
+            }
+            map = new TileMap(mapRows, mapCols, windowWidth / mapCols, windowHeight / mapRows);
+            map.loadMapData(mapData, new String[] {"X"}, new int[] {0});
+        }
+
+        movers = createGroup("movers");
+        collectibles = createGroup("collectibles");
+
+        Texture moverTexture = createTexture(32, 32, Color.GREEN);
+        for (int i = 0; i < spriteCount; i++)
+        {
+            FinalSprite sprite = new FinalSprite();
+            sprite.setTexture(moverTexture);
+            sprite.setPosition( random.nextDouble() * windowWidth, random.nextDouble() * windowHeight );
+            sprite.physics = new Physics(0, 150, 0);
+            sprite.physics.setSpeed( 50 + random.nextDouble() * 100 );
+            sprite.physics.setMotionAngle( random.nextDouble() * 360 );
+            for (int k = 0; k < actionsPerSprite; k++)
+                sprite.addAction( createAction(k) );
+            movers.addFinalSprite(sprite);
+        }
+
+        Texture collectibleTexture = createTexture(24, 24, Color.ORANGE);
+        for (int i = 0; i < collectibleCount; i++)
+        {
+            FinalSprite sprite = new FinalSprite();
+            sprite.setTexture(collectibleTexture);
+            sprite.setPosition( random.nextDouble() * windowWidth, random.nextDouble() * windowHeight );
+            collectibles.addFinalSprite(sprite);
+        }
+    }
+
+    /**
+     * Move sprites, collect collectibles, keep sprites out of walls,
+     *   and finish once enough ticks have run.
+     * @param dt amount of time that has passed since the last iteration of the game loop
+     */
+    @Override
+    public void update(double dt)
+    {
+        actGroups(dt, movers.getHandle());
+
+        int moverCount = movers.getSpriteCount();
+        int collectibleTotal = collectibles.getSpriteCount();
+        for (int i = 0; i < moverCount; i++)
+        {
+            FinalSprite mover = (FinalSprite)movers.getSprite(i);
+            if (map != null)
+                map.preventSpriteOverlap(mover);
+
+            for (int j = 0; j < collectibleTotal; j++)
+            {
+                FinalSprite collectible = (FinalSprite)collectibles.getSprite(j);
+                if ( mover.isOverlapping(collectible) )
+                {
+                    // collected: reappear elsewhere, so that the scene size stays the same
+                    collectible.setPosition( random.nextDouble() * windowWidth, random.nextDouble() * windowHeight );
+                    collectedCount++;
+                }
+            }
+        }
+
+        tickCount++;
+        if (tickCount > warmupTicks)
+            recordHeapUsed( ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() );
+        if (tickCount == warmupTicks)
+            startMeasuring();
+        else if (!headless && tickCount == warmupTicks + measuredTicks)
+        {
+            finish();
+            System.exit(0);
+        }
+    }
+
+    // discard warm up data and record the starting garbage collection and memory state
+    void startMeasuring()
+    {
+        metrics.reset();
+        tickTimes.reset();
+        heapPeak.set( ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() );
+        listenForCollections();
+        gcCountStart = 0;
+        gcMillisStart = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            gcCountStart += Math.max(gc.getCollectionCount(), 0);
+            gcMillisStart += Math.max(gc.getCollectionTime(), 0);
+        }
+        startNanos = System.nanoTime();
+    }
+
+    // keep the highest total used heap
+    void recordHeapUsed(long used)
+    {
+        heapPeak.accumulateAndGet(used, Math::max);
+    }
+
+    // record the total used heap just before each collection, when it is usually highest;
+    //   the pools are summed from one notification, so the values are from the same instant
+    void listenForCollections()
+    {
+        if (gcListener != null)
+            return;
+        HashSet<String> heapPools = new HashSet<String>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                heapPools.add( pool.getName() );
+        }
+        gcListener = (Notification notification, Object handback) ->
+        {
+            if ( !notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION) )
+                return;
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from( (CompositeData)notification.getUserData() );
+            long used = 0;
+            for (Map.Entry<String, MemoryUsage> entry : info.getGcInfo().getMemoryUsageBeforeGc().entrySet())
+            {
+                if ( heapPools.contains(entry.getKey()) )
+                    used += entry.getValue().getUsed();
+            }
+            recordHeapUsed(used);
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            if (gc instanceof NotificationEmitter)
+                ((NotificationEmitter)gc).addNotificationListener(gcListener, null, null);
+        }
+    }
+
+    // stop listening for collections
+    void stopListening()
+    {
+        if (gcListener == null)
+            return;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            if (gc instanceof NotificationEmitter)
+            {
+                try
+                {
+                    ((NotificationEmitter)gc).removeNotificationListener(gcListener);
+                }
+                catch (ListenerNotFoundException e)
+                {
+                    // not registered with this collector
+                }
+            }
+        }
+        gcListener = null;
+    }
+
+    /**
+     * Run the scene headless for the warm up and measured ticks, then write results.
+     */
+    public void runHeadless()
+    {
+        HeadlessRunner runner = new HeadlessRunner(this, 1.0 / 60);
+        BufferedImage image = null;
+        Graphics2D g = null;
+        if (renderHeadless)
+        {
+            image = new BufferedImage(windowWidth, windowHeight, BufferedImage.TYPE_INT_ARGB);
+            g = image.createGraphics();
+        }
+
+        if (warmupTicks == 0)
+        {
+            runner.initialize();
+            startMeasuring();
+        }
+        for (int i = 0; i < warmupTicks + measuredTicks; i++)
+        {
+            long tickStart = System.nanoTime();
+            runner.tick();
+            if (g != null)
+            {
+                metrics.beginPhase(FrameMetrics.RENDER);
+                render(g);
+                metrics.endPhase(FrameMetrics.RENDER);
+            }
+            tickTimes.record( System.nanoTime() - tickStart );
+        }
+        // end the last frame, so that it is recorded
+        metrics.beginFrame();
+        if (g != null)
+            g.dispose();
+        finish();
+    }
+
+    // collect results and write them to the console and files
+    void finish()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        stopListening();
+        long gcCount = -gcCountStart;
+        long gcMillis = -gcMillisStart;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            gcCount += Math.max(gc.getCollectionCount(), 0);
+            gcMillis += Math.max(gc.getCollectionTime(), 0);
+        }
+
+        // frame time: in a window, the whole frame; headless, the work done each tick
+        Histogram frame = headless ? tickTimes : metrics.getHistogram(FrameMetrics.FRAME);
+
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<String> values = new ArrayList<String>();
+        addValue(names, values, "mode", headless ? (renderHeadless ? "headless-render" : "headless") : "window");
+        addValue(names, values, "sprites", spriteCount);
+        addValue(names, values, "collectibles", collectibleCount);
+        addValue(names, values, "map", mapRows + "x" + mapCols);
+        addValue(names, values, "actions", actionsPerSprite);
+        addValue(names, values, "parallel", parallelUpdate);
+        addValue(names, values, "ticks", measuredTicks);
+        addValue(names, values, "seconds", String.format("%.3f", seconds));
+        addHistogram(names, values, "frame", frame);
+        addHistogram(names, values, "update", metrics.getHistogram(FrameMetrics.UPDATE));
+        addHistogram(names, values, "render", metrics.getHistogram(FrameMetrics.RENDER));
+        addValue(names, values, "meets_60fps_p99", frame.getPercentile(99) <= 1_000_000_000L / 60);
+        addValue(names, values, "heap_peak_mb", String.format("%.1f", heapPeak.get() / (1024.0 * 1024.0)));
+        addValue(names, values, "gc_count", gcCount);
+        addValue(names, values, "gc_ms", gcMillis);
+        addValue(names, values, "collected", collectedCount);
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < names.size(); i++)
+            line.append(names.get(i)).append("=").append(values.get(i)).append(i < names.size() - 1 ? " " : "");
+        System.out.println(line);
+
+        if (csvFile != null)
+            writeCsv(names, values);
+        if (jsonFile != null)
+            writeJson(names, values);
+    }
+
+    static void addValue(ArrayList<String> names, ArrayList<String> values, String name, Object value)
+    {
+        names.add(name);
+        values.add( String.valueOf(value) );
+    }
+
+    // percentiles and maximum of a histogram, in milliseconds
+    static void addHistogram(ArrayList<String> names, ArrayList<String> values, String prefix, Histogram h)
+    {
+        addValue(names, values, prefix + "_p50_ms",  String.format("%.3f", h.getPercentile(50) / 1e6));
+        addValue(names, values, prefix + "_p95_ms",  String.format("%.3f", h.getPercentile(95) / 1e6));
+        addValue(names, values, prefix + "_p99_ms",  String.format("%.3f", h.getPercentile(99) / 1e6));
+        addValue(names, values, prefix + "_p999_ms", String.format("%.3f", h.getPercentile(99.9) / 1e6));
+        addValue(names, values, prefix + "_max_ms",  String.format("%.3f", h.getMax() / 1e6));
+    }
+
+    // append a line to the CSV file, writing the column names first if the file is new
+    void writeCsv(ArrayList<String> names, ArrayList<String> values)
+    {
+        boolean newFile = !new File(csvFile).exists();
+        try (PrintWriter out = new PrintWriter(new FileWriter(csvFile, true)))
+        {
+            if (newFile)
+                out.println( String.join(",", names) );
+            out.println( String.join(",", values) );
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error writing results to file: " + csvFile);
+            e.printStackTrace();
+        }
+    }
+
+    // write results as a JSON object (numbers unquoted); several scenes are written as an array
+    void writeJson(ArrayList<String> names, ArrayList<String> values)
+    {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < names.size(); i++)
+        {
+            String value = values.get(i);
+            boolean plain = value.equals("true") || value.equals("false") || value.matches("-?[0-9.]+");
+            json.append( String.format("%s\"%s\": %s", (i > 0 ? ", " : ""), names.get(i),
+                plain ? value : "\"" + value + "\"") );
+        }
+        json.append("}");
+
+        // add to the array in the file, if there is one
+        File file = new File(jsonFile);
+        String text = "[" + System.lineSeparator() + json + System.lineSeparator() + "]";
+        try
+        {
+            if (file.exists())
+            {
+                String previous = new String( java.nio.file.Files.readAllBytes(file.toPath()) ).trim();
+                if (previous.endsWith("]"))
+                    text = previous.substring(0, previous.length() - 1).trim() + ","
+                        + System.lineSeparator() + json + System.lineSeparator() + "]";
+            }
+            try (PrintWriter out = new PrintWriter(new FileWriter(file)))
+            {
+                out.println(text);
+            }
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error writing results to file: " + jsonFile);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Run stress scenes with the given options (see class description).
+     * @param args options
+     */
+    public static void main(String[] args)
+    {
+        String spriteCounts = "1000";
+        StressScene settings = new StressScene();
+        boolean parallel = false;
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--sprites":      spriteCounts = args[++i]; break;
+                case "--collectibles": settings.collectibleCount = Integer.parseInt(args[++i]); break;
+                case "--actions":      settings.actionsPerSprite = Integer.parseInt(args[++i]); break;
+                case "--ticks":        settings.measuredTicks = Integer.parseInt(args[++i]); break;
+                case "--warmup":       settings.warmupTicks = Integer.parseInt(args[++i]); break;
+                case "--window":       settings.headless = false; break;
+                case "--render":       settings.renderHeadless = true; break;
+                case "--parallel":     parallel = true; break;
+                case "--csv":          settings.csvFile = args[++i]; break;
+                case "--json":         settings.jsonFile = args[++i]; break;
+                case "--map":
+                    String[] size = args[++i].toLowerCase().split("x");
+                    settings.mapRows = Integer.parseInt(size[0]);
+                    settings.mapCols = Integer.parseInt(size[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        String[] counts = spriteCounts.split(",");
+        if (!settings.headless && counts.length > 1)
+            throw new IllegalArgumentException("Only one sprite count can be used with --window");
+
+        for (String count : counts)
+        {
+            StressScene scene = new StressScene();
+            scene.spriteCount = Integer.parseInt( count.trim() );
+            scene.collectibleCount = settings.collectibleCount;
+            scene.mapRows = settings.mapRows;
+            scene.mapCols = settings.mapCols;
+            scene.actionsPerSprite = settings.actionsPerSprite;
+            scene.warmupTicks = settings.warmupTicks;
+            scene.measuredTicks = settings.measuredTicks;
+            scene.headless = settings.headless;
+            scene.renderHeadless = settings.renderHeadless;
+            scene.csvFile = settings.csvFile;
+            scene.jsonFile = settings.jsonFile;
+            scene.setParallelUpdate(parallel);
+
+            if (scene.headless)
+                scene.runHeadless();
+            else
+            {
+                scene.setWindowTitle("Stress Scene: " + scene.spriteCount + " sprites");
+                scene.start();
+            }
+        }
+    }
+}